@@ -122,6 +122,22 @@ public static void setCallIdAndRetryCount(int cid, int rc) {
     retryCount.set(rc);
   }
 
+  private static final ThreadLocal<AlignmentContext> alignmentContext =
+      new ThreadLocal<AlignmentContext>();
+
+  /**
+   * Set the alignment context of the calls subsequently made by the current
+   * thread, or null to stop sending state ids.
+   */
+  public static void setAlignmentContext(AlignmentContext context) {
+    alignmentContext.set(context);
+  }
+
+  /** @return the alignment context of the current thread, may be null. */
+  public static AlignmentContext getAlignmentContext() {
+    return alignmentContext.get();
+  }
+
   private Hashtable<ConnectionId, Connection> connections =
     new Hashtable<ConnectionId, Connection>();
 
@@ -308,10 +324,12 @@ static class Call {
     IOException error;          // exception, null if success
     final RPC.RpcKind rpcKind;      // Rpc EngineKind
     boolean done;               // true when call is done
+    final AlignmentContext alignmentContext; // may be null
 
     private Call(RPC.RpcKind rpcKind, Writable param) {
       this.rpcKind = rpcKind;
       this.rpcRequest = param;
+      this.alignmentContext = Client.alignmentContext.get();
 
       final Integer id = callId.get();
       if (id == null) {
@@ -990,7 +1008,7 @@ public void sendRpcRequest(final Call call)
       final DataOutputBuffer d = new DataOutputBuffer();
       RpcRequestHeaderProto header = ProtoUtil.makeRpcRequestHeader(
           call.rpcKind, OperationProto.RPC_FINAL_PACKET, call.id, call.retry,
-          clientId);
+          clientId, call.alignmentContext);
       header.writeDelimitedTo(d);
       call.rpcRequest.write(d);
 
@@ -1065,6 +1083,9 @@ private void receiveRpcResponse() {
           LOG.debug(getName() + " got value #" + callId);
 
         Call call = calls.get(callId);
+        if (call.alignmentContext != null) {
+          call.alignmentContext.receiveResponseState(header);
+        }
         RpcStatusProto status = header.getStatus();
         if (status == RpcStatusProto.SUCCESS) {
           Writable value = ReflectionUtils.newInstance(valueClass, conf);
@@ -135,6 +135,7 @@ public abstract class Server {
   private List<AuthMethod> enabledAuthMethods;
   private RpcSaslProto negotiateResponse;
   private ExceptionsHandler exceptionsHandler = new ExceptionsHandler();
+  private volatile AlignmentContext alignmentContext = null;
   
   public void addTerseExceptions(Class<?>... exceptionClass) {
     exceptionsHandler.addTerseExceptions(exceptionClass);
@@ -506,6 +507,10 @@ public static class Call implements Schedulable {
     private ByteBuffer rpcResponse;       // the response for this call
     private final RPC.RpcKind rpcKind;
     private final byte[] clientId;
+    // the response is sent once this drops to zero; the handler holds one
+    private final AtomicInteger responseWaitCount = new AtomicInteger(1);
+    // the last server state id seen by the client, -1 if not sent
+    private long clientStateId = -1;
 
     public Call(int id, int retryCount, Writable param, 
         Connection connection) {
@@ -535,6 +540,47 @@ public void setResponse(ByteBuffer response) {
       this.rpcResponse = response;
     }
 
+    /**
+     * @return the last server state id seen by the client, as sent in the
+     *         request header, or -1 if the client did not send one.
+     */
+    public long getClientStateId() {
+      return clientStateId;
+    }
+
+    /**
+     * Hold back the response of this call until {@link #sendResponse()} is
+     * called, so that the handler can move on to the next call while the
+     * server finishes the work needed to answer this one (e.g. a journal
+     * sync). Each successful postponement must be paired with exactly one
+     * call to {@link #sendResponse()}.
+     *
+     * @return false if the response may not be postponed, in which case the
+     *         caller must complete its work before returning from the call.
+     */
+    public boolean postponeResponse() {
+      if (connection.useWrap) {
+        // SASL wrapped responses have to go out in the order they are wrapped
+        return false;
+      }
+      int count = responseWaitCount.incrementAndGet();
+      assert count > 1 : "response has already been sent";
+      return true;
+    }
+
+    /**
+     * Release one hold on the response of this call. The response is queued
+     * for the responder once the handler and every postponement have
+     * released theirs.
+     */
+    public void sendResponse() throws IOException {
+      int count = responseWaitCount.decrementAndGet();
+      assert count >= 0 : "response has already been sent";
+      if (count == 0) {
+        connection.sendResponse(this);
+      }
+    }
+
     // For Schedulable
     @Override
     public UserGroupInformation getUserGroupInformation() {
@@ -1924,6 +1970,9 @@ private void processRpcRequest(RpcRequestHeaderProto header,
       Call call = new Call(header.getCallId(), header.getRetryCount(),
           rpcRequest, this, ProtoUtil.convert(header.getRpcKind()), header
               .getClientId().toByteArray());
+      if (header.hasStateId()) {
+        call.clientStateId = header.getStateId();
+      }
       callQueue.put(call);              // queue the call; maybe blocked here
       incRpcCount();  // Increment the rpc count
     }
@@ -2037,6 +2086,10 @@ public void setServiceClass(int serviceClass) {
       this.serviceClass = serviceClass;
     }
 
+    private void sendResponse(Call call) throws IOException {
+      responder.doRespond(call);
+    }
+
     private synchronized void close() {
       disposeSasl();
       data = null;
@@ -2151,7 +2204,7 @@ public Writable run() throws Exception {
                   + call.toString());
               buf = new ByteArrayOutputStream(INITIAL_RESP_BUF_SIZE);
             }
-            responder.doRespond(call);
+            call.sendResponse();
           }
         } catch (InterruptedException e) {
           if (running) {                          // unexpected -- log it
@@ -2346,6 +2399,9 @@ private void setupResponse(ByteArrayOutputStream responseBuf,
     headerBuilder.setRetryCount(call.retryCount);
     headerBuilder.setStatus(status);
     headerBuilder.setServerIpcVersionNum(CURRENT_VERSION);
+    if (alignmentContext != null) {
+      alignmentContext.updateResponseState(headerBuilder);
+    }
 
     if (status == RpcStatusProto.SUCCESS) {
       RpcResponseHeaderProto header = headerBuilder.build();
@@ -2467,6 +2523,14 @@ Configuration getConf() {
   /** Sets the socket buffer size used for responding to RPCs */
   public void setSocketSendBufSize(int size) { this.socketSendBufferSize = size; }
 
+  /**
+   * Set the context used to send the server's state id with every response,
+   * see {@link AlignmentContext}.
+   */
+  public void setAlignmentContext(AlignmentContext alignmentContext) {
+    this.alignmentContext = alignmentContext;
+  }
+
   /** Starts the service.  Must be called before any calls will be handled. */
   public synchronized void start() {
     responder.start();
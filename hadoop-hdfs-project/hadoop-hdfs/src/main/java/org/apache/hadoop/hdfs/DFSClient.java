@@ -140,6 +140,8 @@
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.TcpPeerServer;
 import org.apache.hadoop.hdfs.protocol.AclException;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOp;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveIterator;
@@ -1845,6 +1847,54 @@ public boolean delete(String src, boolean recursive) throws IOException {
     }
   }
   
+  /**
+   * Execute a batch of mkdirs, rename and delete operations in a single
+   * call to the NameNode. The client umask is applied to the permission of
+   * each mkdirs, as {@link #mkdirs(String, FsPermission, boolean)} does.
+   *
+   * @see ClientProtocol#batchMetadataOps(List)
+   */
+  public List<BatchedMetadataOpResult> batchMetadataOps(
+      List<BatchedMetadataOp> ops) throws IOException {
+    checkOpen();
+    List<BatchedMetadataOp> masked = new ArrayList<BatchedMetadataOp>(
+        ops.size());
+    for (BatchedMetadataOp op : ops) {
+      if (op.getType() == BatchedMetadataOp.Type.MKDIRS) {
+        FsPermission permission = op.getPermission() != null ?
+            op.getPermission() : FsPermission.getDefault();
+        op = op.withPermission(permission.applyUMask(dfsClientConf.uMask));
+      }
+      masked.add(op);
+    }
+    List<BatchedMetadataOpResult> results;
+    try {
+      results = namenode.batchMetadataOps(masked);
+    } catch(RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+                                     InvalidPathException.class,
+                                     SafeModeException.class);
+    }
+    List<BatchedMetadataOpResult> unwrapped =
+        new ArrayList<BatchedMetadataOpResult>(results.size());
+    for (BatchedMetadataOpResult result : results) {
+      if (result.getException() instanceof RemoteException) {
+        result = new BatchedMetadataOpResult(
+            ((RemoteException) result.getException()).unwrapRemoteException(
+                AccessControlException.class,
+                DSQuotaExceededException.class,
+                FileAlreadyExistsException.class,
+                FileNotFoundException.class,
+                ParentNotDirectoryException.class,
+                NSQuotaExceededException.class,
+                UnresolvedPathException.class,
+                SnapshotAccessControlException.class));
+      }
+      unwrapped.add(result);
+    }
+    return unwrapped;
+  }
+
   /** Implemented using getFileInfo(src)
    */
   public boolean exists(String src) throws IOException {
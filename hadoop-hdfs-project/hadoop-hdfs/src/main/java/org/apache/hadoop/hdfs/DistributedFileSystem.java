@@ -62,6 +62,8 @@
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.hdfs.client.HdfsAdmin;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOp;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
 import org.apache.hadoop.hdfs.protocol.CachePoolEntry;
@@ -547,6 +549,34 @@ public Boolean next(final FileSystem fs, final Path p)
     }
   }
 
+  /**
+   * Execute a batch of mkdirs, rename and delete operations with a single
+   * NameNode RPC. The NameNode applies the operations in order under one
+   * lock acquisition and syncs their edits together, stopping at the first
+   * operation that fails. The batch is not atomic.
+   * <p>
+   * Relative paths are resolved against the working directory. Symlinks
+   * are not followed; an operation on a path through a symlink fails with
+   * an {@link UnresolvedLinkException}.
+   *
+   * @param ops the operations to execute
+   * @return one result per executed operation, in order
+   * @throws IOException if the batch could not be executed
+   */
+  public List<BatchedMetadataOpResult> batchMetadataOps(
+      List<BatchedMetadataOp> ops) throws IOException {
+    statistics.incrementWriteOps(ops.size());
+    List<BatchedMetadataOp> resolved =
+        new ArrayList<BatchedMetadataOp>(ops.size());
+    for (BatchedMetadataOp op : ops) {
+      String src = getPathName(fixRelativePart(new Path(op.getSrc())));
+      String dst = op.getDst() == null ? null :
+          getPathName(fixRelativePart(new Path(op.getDst())));
+      resolved.add(op.withPaths(src, dst));
+    }
+    return dfs.batchMetadataOps(resolved);
+  }
+
   /** 
    * This rename operation is guaranteed to be atomic.
    */
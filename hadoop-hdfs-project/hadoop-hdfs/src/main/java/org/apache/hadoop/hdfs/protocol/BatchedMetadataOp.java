@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+/**
+ * A namespace operation to be executed as part of a batch, see
+ * {@link ClientProtocol#batchMetadataOps(java.util.List)}.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class BatchedMetadataOp {
+  public enum Type {
+    MKDIRS,
+    RENAME,
+    DELETE
+  }
+
+  private final Type type;
+  private final String src;
+  private final String dst;
+  private final Options.Rename[] renameOptions;
+  private final FsPermission permission;
+  private final boolean createParent;
+  private final boolean recursive;
+
+  private BatchedMetadataOp(Type type, String src, String dst,
+      Options.Rename[] renameOptions, FsPermission permission,
+      boolean createParent, boolean recursive) {
+    this.type = type;
+    this.src = src;
+    this.dst = dst;
+    this.renameOptions = renameOptions;
+    this.permission = permission;
+    this.createParent = createParent;
+    this.recursive = recursive;
+  }
+
+  /**
+   * Create a directory, as {@link ClientProtocol#mkdirs}.
+   * @param permission the permission of the directory, or null for the
+   *        default; the client applies its umask.
+   */
+  public static BatchedMetadataOp mkdirs(String src, FsPermission permission,
+      boolean createParent) {
+    return new BatchedMetadataOp(Type.MKDIRS, src, null, null, permission,
+        createParent, false);
+  }
+
+  /** Rename src to dst, as {@link ClientProtocol#rename2}. */
+  public static BatchedMetadataOp rename(String src, String dst,
+      Options.Rename... options) {
+    return new BatchedMetadataOp(Type.RENAME, src, dst, options, null,
+        false, false);
+  }
+
+  /** Delete src, as {@link ClientProtocol#delete}. */
+  public static BatchedMetadataOp delete(String src, boolean recursive) {
+    return new BatchedMetadataOp(Type.DELETE, src, null, null, null,
+        false, recursive);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getSrc() {
+    return src;
+  }
+
+  /** @return the destination of a rename */
+  public String getDst() {
+    return dst;
+  }
+
+  /** @return the options of a rename */
+  public Options.Rename[] getRenameOptions() {
+    return renameOptions;
+  }
+
+  /** @return the permission of a new directory, may be null */
+  public FsPermission getPermission() {
+    return permission;
+  }
+
+  public boolean isCreateParent() {
+    return createParent;
+  }
+
+  public boolean isRecursive() {
+    return recursive;
+  }
+
+  /** @return a copy of this operation with the given paths */
+  public BatchedMetadataOp withPaths(String src, String dst) {
+    return new BatchedMetadataOp(type, src, dst, renameOptions, permission,
+        createParent, recursive);
+  }
+
+  /** @return a copy of this operation with the given permission */
+  public BatchedMetadataOp withPermission(FsPermission permission) {
+    return new BatchedMetadataOp(type, src, dst, renameOptions, permission,
+        createParent, recursive);
+  }
+
+  @Override
+  public String toString() {
+    return type + " " + src + (dst == null ? "" : " " + dst);
+  }
+}
@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * The outcome of a {@link BatchedMetadataOp}: the value the equivalent
+ * single operation would have returned, or the exception it would have
+ * thrown.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class BatchedMetadataOpResult {
+  private final boolean result;
+  private final IOException exception;
+
+  public BatchedMetadataOpResult(boolean result) {
+    this.result = result;
+    this.exception = null;
+  }
+
+  public BatchedMetadataOpResult(IOException exception) {
+    this.result = false;
+    this.exception = exception;
+  }
+
+  /** @return the result of the operation; false if it failed */
+  public boolean getResult() {
+    return result;
+  }
+
+  /** @return the exception the operation failed with, or null */
+  public IOException getException() {
+    return exception;
+  }
+
+  public boolean isSuccess() {
+    return exception == null;
+  }
+
+  @Override
+  public String toString() {
+    return exception == null ? String.valueOf(result) : exception.toString();
+  }
+}
@@ -553,6 +553,32 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
       ParentNotDirectoryException, SafeModeException, UnresolvedLinkException,
       SnapshotAccessControlException, IOException;
 
+  /**
+   * Execute a list of namespace operations in a single call.
+   * <p>
+   * The operations are applied in order under one acquisition of the
+   * namesystem lock and their edits are synced together, so a batch of
+   * small operations costs about as much as one of them. Each operation
+   * behaves as the equivalent {@link #mkdirs}, {@link #rename2} or
+   * {@link #delete} call. Execution stops at the first operation that
+   * fails; the batch is not atomic and the operations applied before the
+   * failure are not rolled back.
+   * <p>
+   * The call is not retry-safe. It is neither idempotent nor at-most-once:
+   * a call retried after a failover or a lost response executes the batch
+   * again, and its result describes that second execution.
+   *
+   * @param ops the operations to execute
+   *
+   * @return one result per executed operation, in order. If an operation
+   *         failed, its result is the last one and carries its exception.
+   *
+   * @throws SafeModeException batch not allowed in safemode
+   * @throws IOException If an I/O error occurred
+   */
+  public List<BatchedMetadataOpResult> batchMetadataOps(
+      List<BatchedMetadataOp> ops) throws SafeModeException, IOException;
+
   /**
    * Get a partial listing of the indicated directory
    *
@@ -26,6 +26,8 @@
 import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.FsServerDefaults;
 import org.apache.hadoop.fs.Options.Rename;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOp;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
 import org.apache.hadoop.hdfs.protocol.CachePoolEntry;
@@ -63,6 +65,10 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AllowSnapshotResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AppendRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AppendResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchMetadataOpsRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchMetadataOpsResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchedMetadataOpProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchedMetadataOpResultProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ConcatRequestProto;
@@ -206,6 +212,7 @@
 import org.apache.hadoop.security.proto.SecurityProtos.RenewDelegationTokenResponseProto;
 import org.apache.hadoop.security.token.Token;
 
+import com.google.common.collect.Lists;
 import com.google.protobuf.RpcController;
 import com.google.protobuf.ServiceException;
 
@@ -593,6 +600,28 @@ public MkdirsResponseProto mkdirs(RpcController controller,
     }
   }
 
+  @Override
+  public BatchMetadataOpsResponseProto batchMetadataOps(
+      RpcController controller, BatchMetadataOpsRequestProto req)
+      throws ServiceException {
+    List<BatchedMetadataOp> ops =
+        Lists.newArrayListWithCapacity(req.getOpsCount());
+    for (BatchedMetadataOpProto op : req.getOpsList()) {
+      ops.add(PBHelper.convert(op));
+    }
+    try {
+      List<BatchedMetadataOpResult> results = server.batchMetadataOps(ops);
+      BatchMetadataOpsResponseProto.Builder builder =
+          BatchMetadataOpsResponseProto.newBuilder();
+      for (BatchedMetadataOpResult result : results) {
+        builder.addResults(PBHelper.convert(result));
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   @Override
   public GetListingResponseProto getListing(RpcController controller,
       GetListingRequestProto req) throws ServiceException {
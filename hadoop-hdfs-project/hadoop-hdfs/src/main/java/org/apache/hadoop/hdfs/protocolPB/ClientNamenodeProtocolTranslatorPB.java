@@ -44,6 +44,8 @@
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOp;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
 import org.apache.hadoop.hdfs.protocol.CachePoolEntry;
@@ -79,6 +81,9 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AllowSnapshotRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AppendRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AppendResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchMetadataOpsRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchMetadataOpsResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchedMetadataOpResultProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolEntryProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ConcatRequestProto;
@@ -531,6 +536,28 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
     }
   }
 
+  @Override
+  public List<BatchedMetadataOpResult> batchMetadataOps(
+      List<BatchedMetadataOp> ops) throws IOException {
+    BatchMetadataOpsRequestProto.Builder builder =
+        BatchMetadataOpsRequestProto.newBuilder();
+    for (BatchedMetadataOp op : ops) {
+      builder.addOps(PBHelper.convert(op));
+    }
+    try {
+      BatchMetadataOpsResponseProto response =
+          rpcProxy.batchMetadataOps(null, builder.build());
+      List<BatchedMetadataOpResult> results =
+          Lists.newArrayListWithCapacity(response.getResultsCount());
+      for (BatchedMetadataOpResultProto result : response.getResultsList()) {
+        results.add(PBHelper.convert(result));
+      }
+      return results;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public DirectoryListing getListing(String src, byte[] startAfter,
       boolean needLocation) throws AccessControlException,
@@ -33,6 +33,7 @@
 import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.CreateFlag;
 import org.apache.hadoop.fs.FsServerDefaults;
+import org.apache.hadoop.fs.Options.Rename;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.XAttr;
 import org.apache.hadoop.fs.XAttrSetFlag;
@@ -46,6 +47,8 @@
 import org.apache.hadoop.ha.proto.HAServiceProtocolProtos;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.StorageType;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOp;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -85,6 +88,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.AclProtos.AclStatusProto;
 import org.apache.hadoop.hdfs.protocol.proto.AclProtos.GetAclStatusResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchedMetadataOpProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchedMetadataOpResultProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveEntryProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoExpirationProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
@@ -207,6 +212,7 @@
 import org.apache.hadoop.hdfs.util.ExactSizeInputStream;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.security.proto.SecurityProtos.TokenProto;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.DataChecksum;
@@ -1262,6 +1268,86 @@ public static FsPermissionProto convert(FsPermission p) {
   public static FsPermission convert(FsPermissionProto p) {
     return new FsAclPermission((short)p.getPerm());
   }
+
+  public static BatchedMetadataOpProto convert(BatchedMetadataOp op) {
+    BatchedMetadataOpProto.Builder builder = BatchedMetadataOpProto.newBuilder()
+        .setSrc(op.getSrc());
+    switch (op.getType()) {
+    case MKDIRS:
+      builder.setType(BatchedMetadataOpProto.OpType.MKDIRS)
+          .setCreateParent(op.isCreateParent());
+      if (op.getPermission() != null) {
+        builder.setMasked(convert(op.getPermission()));
+      }
+      break;
+    case RENAME:
+      boolean overwrite = false;
+      if (op.getRenameOptions() != null) {
+        for (Rename option : op.getRenameOptions()) {
+          if (option == Rename.OVERWRITE) {
+            overwrite = true;
+          }
+        }
+      }
+      builder.setType(BatchedMetadataOpProto.OpType.RENAME)
+          .setDst(op.getDst())
+          .setOverwriteDest(overwrite);
+      break;
+    case DELETE:
+      builder.setType(BatchedMetadataOpProto.OpType.DELETE)
+          .setRecursive(op.isRecursive());
+      break;
+    default:
+      throw new IllegalArgumentException("Unexpected operation " + op);
+    }
+    return builder.build();
+  }
+
+  public static BatchedMetadataOp convert(BatchedMetadataOpProto proto) {
+    switch (proto.getType()) {
+    case MKDIRS:
+      return BatchedMetadataOp.mkdirs(proto.getSrc(),
+          proto.hasMasked() ? convert(proto.getMasked()) : null,
+          proto.getCreateParent());
+    case RENAME:
+      return BatchedMetadataOp.rename(proto.getSrc(), proto.getDst(),
+          proto.getOverwriteDest() ? Rename.OVERWRITE : Rename.NONE);
+    case DELETE:
+      return BatchedMetadataOp.delete(proto.getSrc(), proto.getRecursive());
+    default:
+      throw new IllegalArgumentException("Unexpected operation type "
+          + proto.getType());
+    }
+  }
+
+  public static BatchedMetadataOpResultProto convert(
+      BatchedMetadataOpResult result) {
+    BatchedMetadataOpResultProto.Builder builder =
+        BatchedMetadataOpResultProto.newBuilder()
+        .setResult(result.getResult());
+    IOException e = result.getException();
+    if (e != null) {
+      builder.setExceptionClassName(e.getClass().getName());
+      if (e.getMessage() != null) {
+        builder.setExceptionMessage(e.getMessage());
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * A failed operation is converted to a {@link RemoteException}, the same
+   * way the RPC layer reports the failure of a single call.
+   */
+  public static BatchedMetadataOpResult convert(
+      BatchedMetadataOpResultProto proto) {
+    if (proto.hasExceptionClassName()) {
+      return new BatchedMetadataOpResult(new RemoteException(
+          proto.getExceptionClassName(),
+          proto.hasExceptionMessage() ? proto.getExceptionMessage() : null));
+    }
+    return new BatchedMetadataOpResult(proto.getResult());
+  }
   
   
   // The creatFlag field in PB is a bitmask whose values are the same a the 
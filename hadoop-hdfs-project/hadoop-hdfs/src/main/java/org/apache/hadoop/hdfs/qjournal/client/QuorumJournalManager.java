@@ -36,6 +36,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -77,6 +78,10 @@ public class QuorumJournalManager implements JournalManager {
   private final int newEpochTimeoutMs;
   private final int writeTxnsTimeoutMs;
 
+  // Whether in-progress edits are fetched over RPC, and how many at once.
+  private final boolean inProgressTailingEnabled;
+  private final int maxTxnsPerRpc;
+
   // Since these don't occur during normal operation, we can
   // use rather lengthy timeouts, and don't need to make them
   // configurable.
@@ -142,6 +147,12 @@ public QuorumJournalManager(Configuration conf,
     this.writeTxnsTimeoutMs = conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_DEFAULT);
+    this.inProgressTailingEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    this.maxTxnsPerRpc = conf.getInt(
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT);
   }
   
   protected List<AsyncLogger> createLoggers(
@@ -465,7 +476,61 @@ public void close() throws IOException {
   @Override
   public void selectInputStreams(Collection<EditLogInputStream> streams,
       long fromTxnId, boolean inProgressOk) throws IOException {
+    if (inProgressOk && inProgressTailingEnabled) {
+      try {
+        selectRpcInputStreams(streams, fromTxnId);
+        return;
+      } catch (IOException ioe) {
+        LOG.debug("Could not fetch edits from txid " + fromTxnId
+            + " over RPC, reading finalized segments instead: " + ioe);
+      }
+      // Unlike the RPC responses, an in-progress segment may hold edits
+      // which are not durable yet, so only read finalized segments.
+      inProgressOk = false;
+    }
+    selectStreamingInputStreams(streams, fromTxnId, inProgressOk);
+  }
+
+  /**
+   * Select a stream of the edits from fromTxnId onwards which have been
+   * written to a majority of the JournalNodes, as fetched from their
+   * in-memory caches. Nothing is added if there are no such edits yet.
+   */
+  private void selectRpcInputStreams(Collection<EditLogInputStream> streams,
+      long fromTxnId) throws IOException {
+    QuorumCall<AsyncLogger, GetJournaledEditsResponseProto> q =
+        loggers.getJournaledEdits(fromTxnId, maxTxnsPerRpc);
+    Map<AsyncLogger, GetJournaledEditsResponseProto> responseMap =
+        loggers.waitForWriteQuorum(q, selectInputStreamsTimeoutMs,
+            "selectRpcInputStreams");
+
+    // Every node returns whole batches from fromTxnId, as written by the
+    // same writer, so the responses only differ in how far they reach. A
+    // transaction is durable once a majority of the nodes returned it.
+    List<Integer> txnCounts = Lists.newArrayList();
+    for (GetJournaledEditsResponseProto response : responseMap.values()) {
+      txnCounts.add(response.getTxnCount());
+    }
+    Collections.sort(txnCounts);
+    int durableTxnCount =
+        txnCounts.get(txnCounts.size() - loggers.getMajoritySize());
+    if (durableTxnCount <= 0) {
+      return;
+    }
+    for (Map.Entry<AsyncLogger, GetJournaledEditsResponseProto> e :
+        responseMap.entrySet()) {
+      if (e.getValue().getTxnCount() >= durableTxnCount) {
+        streams.add(EditLogFileInputStream.fromByteString(
+            e.getValue().getEditLog(), "RPC edits from " + e.getKey(),
+            fromTxnId, fromTxnId + durableTxnCount - 1, true));
+        return;
+      }
+    }
+  }
 
+  private void selectStreamingInputStreams(
+      Collection<EditLogInputStream> streams, long fromTxnId,
+      boolean inProgressOk) throws IOException {
     QuorumCall<AsyncLogger, RemoteEditLogManifest> q =
         loggers.getEditLogManifest(fromTxnId, inProgressOk);
     Map<AsyncLogger, RemoteEditLogManifest> resps =
@@ -25,6 +25,7 @@
 import java.io.OutputStreamWriter;
 import java.net.URL;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -33,11 +34,13 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalNotFormattedException;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalOutOfSyncException;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PersistedRecoveryPaxosData;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
@@ -69,6 +72,7 @@
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Range;
 import com.google.common.collect.Ranges;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.TextFormat;
 
 /**
@@ -133,6 +137,9 @@ public class Journal implements Closeable {
 
   private final JournalMetrics metrics;
 
+  /** Recently written edits, served to readers tailing the journal. */
+  private final JournaledEditsCache cache;
+
   /**
    * Time threshold for sync calls, beyond which a warning should be logged to the console.
    */
@@ -149,6 +156,10 @@ public class Journal implements Closeable {
     this.fjm = storage.getJournalManager();
     
     this.metrics = JournalMetrics.create(this);
+
+    this.cache = new JournaledEditsCache(conf.getInt(
+        DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT));
     
     EditLogFile latest = scanStorageForLatestEdits();
     if (latest != null) {
@@ -217,6 +228,7 @@ void format(NamespaceInfo nsInfo) throws IOException {
         nsInfo);
     storage.format(nsInfo);
     refreshCachedData();
+    cache.reset();
   }
 
   /**
@@ -322,6 +334,8 @@ private void updateLastPromisedEpoch(long newEpoch) throws IOException {
   }
 
   private void abortCurSegment() throws IOException {
+    // the cache may hold edits which are about to be recovered or discarded
+    cache.reset();
     if (curSegment == null) {
       return;
     }
@@ -397,6 +411,7 @@ synchronized void journal(RequestInfo reqInfo,
     
     highestWrittenTxId = lastTxnId;
     nextTxId = lastTxnId + 1;
+    cache.storeEdits(records, firstTxnId, lastTxnId);
   }
 
   public void heartbeat(RequestInfo reqInfo) throws IOException {
@@ -544,6 +559,7 @@ public synchronized void startLogSegment(RequestInfo reqInfo, long txid,
     curSegment = fjm.startLogSegment(txid, layoutVersion);
     curSegmentTxId = txid;
     nextTxId = txid;
+    cache.startSegment(txid, layoutVersion);
   }
   
   /**
@@ -630,6 +646,28 @@ private void purgePaxosDecision(long segmentTxId) throws IOException {
     }
   }
 
+  /**
+   * @see QJournalProtocol#getJournaledEdits(String, long, int)
+   */
+  public GetJournaledEditsResponseProto getJournaledEdits(long sinceTxId,
+      int maxTxns) throws IOException {
+    // No need to checkRequest() here - anyone may read the edits. This does
+    // not synchronize on the journal, so that readers are not held up by a
+    // writer waiting on fsync; an unformatted journal has nothing cached.
+    List<byte[]> buffers = new ArrayList<byte[]>();
+    int txnCount = cache.retrieveEdits(sinceTxId, maxTxns, buffers);
+    GetJournaledEditsResponseProto.Builder builder =
+        GetJournaledEditsResponseProto.newBuilder().setTxnCount(txnCount);
+    if (txnCount > 0) {
+      ByteString editLog = ByteString.EMPTY;
+      for (byte[] buf : buffers) {
+        editLog = editLog.concat(ByteString.copyFrom(buf));
+      }
+      builder.setEditLog(editLog);
+    }
+    return builder.build();
+  }
+
   /**
    * @see QJournalProtocol#getEditLogManifest(String, long, boolean)
    */
@@ -1037,10 +1075,12 @@ public Boolean canRollBack(StorageInfo storage, StorageInfo prevStorage,
   }
 
   public void doRollback() throws IOException {
+    cache.reset();
     storage.getJournalManager().doRollback();
   }
 
   synchronized void discardSegments(long startTxId) throws IOException {
+    cache.reset();
     storage.getJournalManager().discardSegments(startTxId);
     // we delete all the segments after the startTxId. let's reset committedTxnId 
     committedTxnId.set(startTxId - 1);
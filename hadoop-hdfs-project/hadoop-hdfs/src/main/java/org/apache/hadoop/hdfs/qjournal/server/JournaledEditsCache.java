@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * An in-memory cache of the edits most recently written to a
+ * {@link Journal}, used to serve
+ * {@link QJournalProtocol#getJournaledEdits(String, long, int)} without
+ * reading the edit log files.
+ *
+ * The cache keeps the batches of edits passed to
+ * {@link Journal#journal}, as they were received, and evicts the oldest
+ * batches once it holds more than its capacity. It only ever holds a
+ * contiguous range of transactions of a single layout version; anything
+ * else clears it.
+ */
+class JournaledEditsCache {
+
+  /** Thrown when the requested transactions are not in the cache. */
+  static class CacheMissException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    CacheMissException(String msg) {
+      super(msg);
+    }
+  }
+
+  private static class Batch {
+    final long lastTxId;
+    final byte[] records;
+
+    Batch(long lastTxId, byte[] records) {
+      this.lastTxId = lastTxId;
+      this.records = records;
+    }
+  }
+
+  private final int capacity;
+
+  /** Cached batches, by the id of their first transaction. */
+  private final TreeMap<Long, Batch> batches = new TreeMap<Long, Batch>();
+  private int size = 0;
+
+  /** Edit log header of the cached edits; null until a segment starts. */
+  private byte[] header = null;
+  private long highestTxId = HdfsConstants.INVALID_TXID;
+
+  JournaledEditsCache(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Called when a new log segment starts. The cache carries on across
+   * segments with the same layout version, as long as no transactions
+   * are missing in between.
+   */
+  synchronized void startSegment(long txid, int layoutVersion)
+      throws IOException {
+    final byte[] newHeader = createHeader(layoutVersion);
+    if (!Arrays.equals(header, newHeader) || txid != highestTxId + 1) {
+      clear();
+      header = newHeader;
+    }
+    highestTxId = txid - 1;
+  }
+
+  /**
+   * Add a batch of edits, as written to the current log segment.
+   */
+  synchronized void storeEdits(byte[] records, long firstTxId,
+      long lastTxId) {
+    if (header == null) {
+      // we do not know the layout version of the current segment
+      return;
+    }
+    if (firstTxId != highestTxId + 1 || records.length > capacity) {
+      clear();
+    } else {
+      batches.put(firstTxId, new Batch(lastTxId, records));
+      size += records.length;
+      while (size > capacity) {
+        size -= batches.pollFirstEntry().getValue().records.length;
+      }
+    }
+    highestTxId = lastTxId;
+  }
+
+  /**
+   * Fetch cached edits.
+   *
+   * @param sinceTxId the first transaction to return
+   * @param maxTxns stop adding batches once this many transactions have
+   *        been added
+   * @param buffers to add the edit log header and the batches to, in order;
+   *        left unchanged if no transactions are returned
+   * @return the number of transactions added to buffers
+   * @throws CacheMissException if the cache does not contain sinceTxId,
+   *         or sinceTxId is not the first transaction of a batch
+   */
+  synchronized int retrieveEdits(long sinceTxId, int maxTxns,
+      List<byte[]> buffers) throws CacheMissException {
+    if (header == null) {
+      throw new CacheMissException("No edits cached yet");
+    }
+    if (sinceTxId > highestTxId) {
+      return 0;
+    }
+    if (batches.get(sinceTxId) == null) {
+      throw new CacheMissException("Transaction " + sinceTxId
+          + " is not the start of a cached batch; cached transactions are "
+          + (batches.isEmpty() ? "none" :
+              batches.firstKey() + "-" + highestTxId));
+    }
+    buffers.add(header);
+    int txnCount = 0;
+    for (Map.Entry<Long, Batch> e : batches.tailMap(sinceTxId).entrySet()) {
+      buffers.add(e.getValue().records);
+      txnCount += (int) (e.getValue().lastTxId - e.getKey() + 1);
+      if (txnCount >= maxTxns) {
+        break;
+      }
+    }
+    return txnCount;
+  }
+
+  /** Drop all cached edits, e.g. when the journal is recovered. */
+  synchronized void clear() {
+    batches.clear();
+    size = 0;
+  }
+
+  /** Forget the current segment: no edits are cached until the next one. */
+  synchronized void reset() {
+    clear();
+    header = null;
+    highestTxId = HdfsConstants.INVALID_TXID;
+  }
+
+  @VisibleForTesting
+  synchronized int getSize() {
+    return size;
+  }
+
+  private static byte[] createHeader(int layoutVersion) throws IOException {
+    DataOutputBuffer buf = new DataOutputBuffer();
+    EditLogFileOutputStream.writeHeader(layoutVersion, buf);
+    return Arrays.copyOf(buf.getData(), buf.getLength());
+  }
+}
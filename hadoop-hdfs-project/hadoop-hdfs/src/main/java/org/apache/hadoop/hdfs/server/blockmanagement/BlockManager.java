@@ -35,6 +35,10 @@
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
@@ -89,6 +93,7 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Keeps information related to the blocks stored in the Hadoop cluster.
@@ -228,6 +233,19 @@ public int getPendingDataNodeMessageCount() {
   // Max number of blocks to log info about during a block report.
   private final long maxNumBlocksToLog;
 
+  // Number of reported blocks processed per hold of the write lock, 0 to
+  // process a storage's report in one go.
+  private final int blockReportBatchSize;
+
+  // Number of threads choosing replication targets. With more than one,
+  // targets are chosen in parallel by chooseTargetExecutor, which is
+  // created on activation.
+  private final int chooseTargetThreads;
+  private ExecutorService chooseTargetExecutor;
+
+  // Located blocks of recently opened files; null if disabled.
+  private final LocatedBlocksCache locatedBlocksCache;
+
   /**
    * When running inside a Standby node, the node may receive block reports
    * from datanodes before receiving the corresponding namespace edits from
@@ -270,9 +288,17 @@ public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
     invalidateBlocks = new InvalidateBlocks(
         datanodeManager.blockInvalidateLimit, pendingPeriod);
 
-    // Compute the map capacity by allocating 2% of total memory
+    // Compute the map capacity by allocating a percentage (2% by default) of
+    // total memory
+    final float blocksMapPercent = conf.getFloat(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKS_MAP_CAPACITY_PERCENT_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKS_MAP_CAPACITY_PERCENT_DEFAULT);
+    Preconditions.checkArgument(blocksMapPercent > 0
+        && blocksMapPercent <= 100, "%s must be in (0, 100], but was %s",
+        DFSConfigKeys.DFS_NAMENODE_BLOCKS_MAP_CAPACITY_PERCENT_KEY,
+        blocksMapPercent);
     blocksMap = new BlocksMap(
-        LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+        LightWeightGSet.computeCapacity(blocksMapPercent, "BlocksMap"));
     blockplacement = BlockPlacementPolicy.getInstance(
         conf, stats, datanodeManager.getNetworkTopology(), 
         datanodeManager.getHost2DatanodeMap());
@@ -337,6 +363,17 @@ public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
     this.numBlocksPerIteration = conf.getInt(
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT,
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT_DEFAULT);
+    this.blockReportBatchSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_DEFAULT);
+    this.chooseTargetThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_CHOOSE_TARGET_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_CHOOSE_TARGET_THREADS_DEFAULT);
+    final int locatedBlocksCacheSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_LOCATED_BLOCKS_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LOCATED_BLOCKS_CACHE_SIZE_DEFAULT);
+    this.locatedBlocksCache = locatedBlocksCacheSize > 0 ?
+        new LocatedBlocksCache(locatedBlocksCacheSize) : null;
     
     LOG.info("defaultReplication         = " + defaultReplication);
     LOG.info("maxReplication             = " + maxReplication);
@@ -346,6 +383,7 @@ public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
     LOG.info("replicationRecheckInterval = " + replicationRecheckInterval);
     LOG.info("encryptDataTransfer        = " + encryptDataTransfer);
     LOG.info("maxNumBlocksToLog          = " + maxNumBlocksToLog);
+    LOG.info("blockReportBatchSize       = " + blockReportBatchSize);
   }
 
   private static BlockTokenSecretManager createBlockTokenSecretManager(
@@ -426,6 +464,11 @@ boolean shouldUpdateBlockKey(final long updateTime) throws IOException {
   public void activate(Configuration conf) {
     pendingReplications.start();
     datanodeManager.activate(conf);
+    if (chooseTargetThreads > 1) {
+      chooseTargetExecutor = Executors.newFixedThreadPool(chooseTargetThreads,
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("ReplicationTargetChooser-%d").build());
+    }
     this.replicationThread.start();
   }
 
@@ -435,6 +478,9 @@ public void close() {
       replicationThread.join(3000);
     } catch (InterruptedException ie) {
     }
+    if (chooseTargetExecutor != null) {
+      chooseTargetExecutor.shutdownNow();
+    }
     datanodeManager.close();
     pendingReplications.stop();
     blocksMap.close();
@@ -643,6 +689,7 @@ private BlockInfo completeBlock(final BlockCollection bc,
     namesystem.incrementSafeBlockCount(
         Math.min(numNodes, minReplication));
     
+    invalidateLocatedBlocks(bc);
     // replace block in the blocksMap
     return blocksMap.replaceBlock(completeBlock);
   }
@@ -695,6 +742,7 @@ public LocatedBlock convertLastBlockToUnderConstruction(
 
     BlockInfoUnderConstruction ucBlock = bc.setLastBlock(oldBlock, targets);
     blocksMap.replaceBlock(ucBlock);
+    invalidateLocatedBlocks(bc);
 
     // Remove block from replication queue.
     NumberReplicas replicas = countNodes(ucBlock);
@@ -837,6 +885,37 @@ private LocatedBlock createLocatedBlock(final BlockInfo blk, final long pos
     return new LocatedBlock(eb, machines, pos, isCorrupt);
   }
 
+  /**
+   * Create a LocatedBlocks for a range of the given file. Complete files
+   * read without block tokens are served from the located blocks cache when
+   * it is enabled.
+   */
+  public LocatedBlocks createLocatedBlocks(final BlockCollection bc,
+      final long fileSizeExcludeBlocksUnderConstruction,
+      final boolean isFileUnderConstruction, final long offset,
+      final long length, final boolean needBlockToken,
+      final boolean inSnapshot, FileEncryptionInfo feInfo)
+      throws IOException {
+    final boolean cacheable = locatedBlocksCache != null
+        && !isFileUnderConstruction && !inSnapshot && feInfo == null
+        && !(needBlockToken && isBlockTokenEnabled());
+    if (cacheable) {
+      final LocatedBlocks cached = locatedBlocksCache.get(bc,
+          fileSizeExcludeBlocksUnderConstruction, offset, length);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    final LocatedBlocks blocks = createLocatedBlocks(bc.getBlocks(),
+        fileSizeExcludeBlocksUnderConstruction, isFileUnderConstruction,
+        offset, length, needBlockToken, inSnapshot, feInfo);
+    if (cacheable && blocks != null) {
+      locatedBlocksCache.put(bc, fileSizeExcludeBlocksUnderConstruction,
+          offset, length, blocks);
+    }
+    return blocks;
+  }
+
   /** Create a LocatedBlocks. */
   public LocatedBlocks createLocatedBlocks(final BlockInfo[] blocks,
       final long fileSizeExcludeBlocksUnderConstruction,
@@ -878,6 +957,20 @@ public LocatedBlocks createLocatedBlocks(final BlockInfo[] blocks,
     }
   }
 
+  /**
+   * @return the cache of located blocks of complete files, or null if it is
+   *         disabled.
+   */
+  public LocatedBlocksCache getLocatedBlocksCache() {
+    return locatedBlocksCache;
+  }
+
+  private void invalidateLocatedBlocks(BlockCollection bc) {
+    if (locatedBlocksCache != null && bc != null) {
+      locatedBlocksCache.invalidate(bc);
+    }
+  }
+
   /** @return current access keys. */
   public ExportedBlockKeys getBlockKeys() {
     return isBlockTokenEnabled()? blockTokenSecretManager.exportKeys()
@@ -1139,6 +1232,7 @@ private void markBlockAsCorrupt(BlockToMarkCorrupt b,
     // Add this replica to corruptReplicas Map
     corruptReplicas.addToCorruptReplicasMap(b.corrupted, node, b.reason,
         b.reasonCode);
+    invalidateLocatedBlocks(bc);
 
     NumberReplicas numberOfReplicas = countNodes(b.stored);
     boolean hasEnoughLiveReplicas = numberOfReplicas.liveReplicas() >= bc
@@ -1276,6 +1370,12 @@ int computeReplicationWork(int blocksToProcess) {
   }
 
   /** Replicate a set of blocks
+   *
+   * In parallel mode, i.e. with more than one choose-target thread, the
+   * sources are selected under the read lock, and blocks found not to need
+   * replication are only removed from {@link #neededReplications} once the
+   * write lock is taken to schedule the work. Targets are then chosen
+   * concurrently, without the lock.
    *
    * @param blocksToReplicate blocks to be replicated, for each priority
    * @return the number of blocks scheduled for replication
@@ -1291,7 +1391,19 @@ int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate) {
     int scheduledWork = 0;
     List<ReplicationWork> work = new LinkedList<ReplicationWork>();
 
-    namesystem.writeLock();
+    final boolean parallel = chooseTargetExecutor != null;
+    // blocks to remove from neededReplications, per priority, if they
+    // still do not need replication once the write lock is held
+    final List<List<Block>> unneeded = parallel ?
+        new ArrayList<List<Block>>(blocksToReplicate.size()) : null;
+    if (parallel) {
+      for (int i = 0; i < blocksToReplicate.size(); i++) {
+        unneeded.add(new ArrayList<Block>());
+      }
+      namesystem.readLock();
+    } else {
+      namesystem.writeLock();
+    }
     try {
       synchronized (neededReplications) {
         for (int priority = 0; priority < blocksToReplicate.size(); priority++) {
@@ -1302,7 +1414,11 @@ int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate) {
             if (bc == null
                 || (bc.isUnderConstruction() && block.equals(bc.getLastBlock()))) {
               // remove from neededReplications
-              neededReplications.remove(block, priority);
+              if (parallel) {
+                unneeded.get(priority).add(block);
+              } else {
+                neededReplications.remove(block, priority);
+              }
               continue;
             }
 
@@ -1331,6 +1447,10 @@ int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate) {
             if (numEffectiveReplicas >= requiredReplication) {
               if ( (pendingReplications.getNumReplicas(block) > 0) ||
                    (blockHasEnoughRacks(block)) ) {
+                if (parallel) {
+                  unneeded.get(priority).add(block);
+                  continue;
+                }
                 neededReplications.remove(block, priority); // remove from neededReplications
                 blockLog.info("BLOCK* Removing " + block
                     + " from neededReplications as it has enough replicas");
@@ -1351,26 +1471,33 @@ int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate) {
         }
       }
     } finally {
-      namesystem.writeUnlock();
+      if (parallel) {
+        namesystem.readUnlock();
+      } else {
+        namesystem.writeUnlock();
+      }
     }
 
-    final Set<Node> excludedNodes = new HashSet<Node>();
-    for(ReplicationWork rw : work){
-      // Exclude all of the containing nodes from being targets.
-      // This list includes decommissioning or corrupt nodes.
-      excludedNodes.clear();
-      for (DatanodeDescriptor dn : rw.containingNodes) {
-        excludedNodes.add(dn);
+    // choose replication targets: NOT HOLDING THE GLOBAL LOCK
+    if (parallel) {
+      chooseTargetsInParallel(work);
+    } else {
+      for(ReplicationWork rw : work){
+        chooseTargets(rw);
       }
-
-      // choose replication targets: NOT HOLDING THE GLOBAL LOCK
-      // It is costly to extract the filename for which chooseTargets is called,
-      // so for now we pass in the block collection itself.
-      rw.chooseTargets(blockplacement, excludedNodes);
     }
 
     namesystem.writeLock();
     try {
+      if (parallel) {
+        synchronized (neededReplications) {
+          for (int priority = 0; priority < unneeded.size(); priority++) {
+            for (Block block : unneeded.get(priority)) {
+              removeFromNeededReplicationsIfUnneeded(block, priority);
+            }
+          }
+        }
+      }
       for(ReplicationWork rw : work){
         final DatanodeStorageInfo[] targets = rw.targets;
         if(targets == null || targets.length == 0){
@@ -1731,6 +1858,11 @@ public boolean processReport(final DatanodeID nodeID,
         // We handle this for backwards compatibility.
         storageInfo = node.updateStorage(storage);
       }
+      if (storageInfo.isBlockReportInProgress()) {
+        throw new IOException("ProcessReport from " + nodeID + " for storage "
+            + storage.getStorageID() + " while an earlier report of the "
+            + "storage is still being processed");
+      }
       if (namesystem.isInStartupSafeMode()
           && storageInfo.getBlockReportCount() > 0) {
         blockLog.info("BLOCK* processReport: "
@@ -1743,6 +1875,9 @@ public boolean processReport(final DatanodeID nodeID,
         // The first block report can be processed a lot more efficiently than
         // ordinary block reports.  This shortens restart times.
         processFirstBlockReport(storageInfo, newReport);
+      } else if (blockReportBatchSize > 0
+          && newReport.getNumberOfBlocks() > blockReportBatchSize) {
+        processReportInBatches(storageInfo, newReport);
       } else {
         processReport(storageInfo, newReport);
       }
@@ -1819,7 +1954,102 @@ private void processReport(final DatanodeStorageInfo storageInfo,
     Collection<StatefulBlockInfo> toUC = new LinkedList<StatefulBlockInfo>();
     reportDiff(storageInfo, report,
         toAdd, toRemove, toInvalidate, toCorrupt, toUC);
-   
+    applyReportDiff(storageInfo, toAdd, toRemove, toInvalidate, toCorrupt,
+        toUC);
+  }
+
+  /**
+   * Process a report like {@link #processReport(DatanodeStorageInfo,
+   * BlockListAsLongs)}, but release the write lock after every
+   * {@link #blockReportBatchSize} reported blocks, so that the report of a
+   * large storage does not hold up all other operations.
+   *
+   * The delimiter of {@link #reportDiff} stays in the storage's block list
+   * between batches. Blocks added to the storage in the meantime are
+   * inserted at the head of the list, ahead of the delimiter, so they are
+   * never taken as unreported.
+   */
+  private void processReportInBatches(final DatanodeStorageInfo storageInfo,
+      final BlockListAsLongs report) throws IOException {
+    assert namesystem.hasWriteLock();
+    final DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+    final BlockInfo delimiter = new BlockInfo(new Block(), 1);
+    boolean added = storageInfo.addBlock(delimiter);
+    assert added : "Delimiting block cannot be present in the node";
+    boolean delimiterInList = true;
+    storageInfo.setBlockReportInProgress(true);
+    try {
+      final BlockReportIterator itBR = report.getBlockReportIterator();
+      while (itBR.hasNext()) {
+        Collection<BlockInfo> toAdd = new LinkedList<BlockInfo>();
+        Collection<Block> toInvalidate = new LinkedList<Block>();
+        Collection<BlockToMarkCorrupt> toCorrupt =
+            new LinkedList<BlockToMarkCorrupt>();
+        Collection<StatefulBlockInfo> toUC =
+            new LinkedList<StatefulBlockInfo>();
+        // the head may have changed while the lock was released
+        int headIndex = storageInfo.getBlockListHeadIndex();
+        int curIndex;
+        for (int i = 0; i < blockReportBatchSize && itBR.hasNext(); i++) {
+          Block iblk = itBR.next();
+          ReplicaState iState = itBR.getCurrentReplicaState();
+          BlockInfo storedBlock = processReportedBlock(storageInfo,
+              iblk, iState, toAdd, toInvalidate, toCorrupt, toUC);
+          if (storedBlock != null &&
+              (curIndex = storedBlock.findStorageInfo(storageInfo)) >= 0) {
+            headIndex =
+                storageInfo.moveBlockToHead(storedBlock, curIndex, headIndex);
+          }
+        }
+        applyReportDiff(storageInfo, toAdd, Collections.<Block>emptyList(),
+            toInvalidate, toCorrupt, toUC);
+        yieldWriteLock(storageInfo);
+      }
+
+      // blocks that have not been reported are all next to the delimiter
+      List<Block> toRemove = new ArrayList<Block>();
+      Iterator<BlockInfo> it =
+          storageInfo.new BlockIterator(delimiter.getNext(0));
+      while (it.hasNext()) {
+        toRemove.add(it.next());
+      }
+      storageInfo.removeBlock(delimiter);
+      delimiterInList = false;
+      for (int i = 0; i < toRemove.size(); i++) {
+        if (i > 0 && i % blockReportBatchSize == 0) {
+          yieldWriteLock(storageInfo);
+        }
+        removeStoredBlock(toRemove.get(i), node);
+      }
+    } finally {
+      if (delimiterInList) {
+        storageInfo.removeBlock(delimiter);
+      }
+      storageInfo.setBlockReportInProgress(false);
+    }
+  }
+
+  /**
+   * Let other operations take the write lock, and make sure the storage
+   * being reported is still live once it has been re-acquired.
+   */
+  private void yieldWriteLock(final DatanodeStorageInfo storageInfo)
+      throws IOException {
+    namesystem.writeUnlock();
+    namesystem.writeLock();
+    final DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+    if (!node.isAlive
+        || node.getStorageInfo(storageInfo.getStorageID()) != storageInfo) {
+      throw new IOException("Storage " + storageInfo + " of " + node
+          + " was removed while its block report was being processed");
+    }
+  }
+
+  /** Apply the changes computed from the diff of a block report. */
+  private void applyReportDiff(final DatanodeStorageInfo storageInfo,
+      Collection<BlockInfo> toAdd, Collection<Block> toRemove,
+      Collection<Block> toInvalidate, Collection<BlockToMarkCorrupt> toCorrupt,
+      Collection<StatefulBlockInfo> toUC) throws IOException {
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     // Process the blocks on each queue
     for (StatefulBlockInfo b : toUC) { 
@@ -2278,6 +2508,7 @@ private void addStoredBlockImmediate(BlockInfo storedBlock,
 
     // just add it
     storageInfo.addBlock(storedBlock);
+    invalidateLocatedBlocks(storedBlock.getBlockCollection());
 
     // Now check for completion of blocks and safe block count
     int numCurrentReplica = countLiveNodes(storedBlock);
@@ -2326,6 +2557,7 @@ private Block addStoredBlock(final BlockInfo block,
 
     // add block to the datanode
     boolean added = storageInfo.addBlock(storedBlock);
+    invalidateLocatedBlocks(bc);
 
     int curReplicaDelta;
     if (added) {
@@ -2448,6 +2680,7 @@ private void invalidateCorruptReplicas(BlockInfo blk) {
     // Remove the block from corruptReplicasMap
     if (removedFromBlocksMap) {
       corruptReplicas.removeFromCorruptReplicasMap(blk);
+      invalidateLocatedBlocks(blk.getBlockCollection());
     }
   }
 
@@ -2814,6 +3047,7 @@ public void removeStoredBlock(Block block, DatanodeDescriptor node) {
       // be-replicated list.
       //
       BlockCollection bc = blocksMap.getBlockCollection(block);
+      invalidateLocatedBlocks(bc);
       if (bc != null) {
         namesystem.decrementSafeBlockCount(block);
         updateNeededReplications(block, -1, 0);
@@ -3101,6 +3335,10 @@ void processOverReplicatedBlocksOnReCommission(
     while(it.hasNext()) {
       final Block block = it.next();
       BlockCollection bc = blocksMap.getBlockCollection(block);
+      if (bc == null) {
+        // the delimiter of a block report being processed in batches
+        continue;
+      }
       short expectedReplication = bc.getBlockReplication();
       NumberReplicas num = countNodes(block);
       int numCurrentReplica = num.liveReplicas();
@@ -3119,12 +3357,24 @@ void processOverReplicatedBlocksOnReCommission(
    * yet reached their replication factor. Otherwise returns false.
    */
   boolean isReplicationInProgress(DatanodeDescriptor srcNode) {
+    return isReplicationInProgress(srcNode, srcNode.getBlockIterator(), null);
+  }
+
+  /**
+   * Like {@link #isReplicationInProgress(DatanodeDescriptor)}, but only
+   * considers the given blocks of srcNode.
+   *
+   * @param it the blocks of srcNode to check
+   * @param neededBlocks if not null, the checked blocks that still need
+   *        replication are added to it
+   */
+  boolean isReplicationInProgress(DatanodeDescriptor srcNode,
+      Iterator<? extends Block> it, List<Block> neededBlocks) {
     boolean status = false;
     boolean firstReplicationLog = true;
     int underReplicatedBlocks = 0;
     int decommissionOnlyReplicas = 0;
     int underReplicatedInOpenFiles = 0;
-    final Iterator<? extends Block> it = srcNode.getBlockIterator();
     while(it.hasNext()) {
       final Block block = it.next();
       BlockCollection bc = blocksMap.getBlockCollection(block);
@@ -3135,6 +3385,9 @@ boolean isReplicationInProgress(DatanodeDescriptor srcNode) {
         int curExpectedReplicas = getReplication(block);
                 
         if (isNeededReplication(block, curExpectedReplicas, curReplicas)) {
+          if (neededBlocks != null) {
+            neededBlocks.add(block);
+          }
           if (curExpectedReplicas > curReplicas) {
             if (bc.isUnderConstruction()) {
               if (block.equals(bc.getLastBlock()) && curReplicas > minReplication) {
@@ -3216,6 +3469,7 @@ public void removeBlock(Block block) {
     // file already removes them from the block map below.
     block.setNumBytes(BlockCommand.NO_ACK);
     addToInvalidates(block);
+    invalidateLocatedBlocks(blocksMap.getBlockCollection(block));
     corruptReplicas.removeFromCorruptReplicasMap(block);
     blocksMap.removeBlock(block);
     // Remove the block from pendingReplications and neededReplications
@@ -3466,6 +3720,72 @@ public void run() {
   }
 
 
+  private void chooseTargets(ReplicationWork rw) {
+    // Exclude all of the containing nodes from being targets.
+    // This list includes decommissioning or corrupt nodes.
+    final Set<Node> excludedNodes = new HashSet<Node>(rw.containingNodes);
+    // It is costly to extract the filename for which chooseTargets is called,
+    // so for now we pass in the block collection itself.
+    rw.chooseTargets(blockplacement, excludedNodes);
+  }
+
+  /**
+   * Choose the targets of the given work on the choose-target threads. The
+   * placement policy is already called concurrently by client RPCs choosing
+   * the targets of new blocks, and the topology guards itself with its own
+   * lock, so no namesystem lock is needed.
+   */
+  private void chooseTargetsInParallel(List<ReplicationWork> work) {
+    List<Future<?>> futures = new ArrayList<Future<?>>(work.size());
+    for (final ReplicationWork rw : work) {
+      futures.add(chooseTargetExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          chooseTargets(rw);
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        // Work without targets is skipped; the replication monitor will see
+        // the interrupt.
+        for (Future<?> f : futures) {
+          f.cancel(true);
+        }
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        LOG.warn("Failed to choose replication targets", e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Remove a block from neededReplications if it does not belong to a
+   * complete file any more, or if it has enough replicas counting the
+   * pending ones.
+   */
+  private void removeFromNeededReplicationsIfUnneeded(Block block,
+      int priority) {
+    assert namesystem.hasWriteLock();
+    BlockCollection bc = blocksMap.getBlockCollection(block);
+    if (bc == null
+        || (bc.isUnderConstruction() && block.equals(bc.getLastBlock()))) {
+      neededReplications.remove(block, priority);
+      return;
+    }
+    NumberReplicas numReplicas = countNodes(block);
+    int pending = pendingReplications.getNumReplicas(block);
+    if (numReplicas.liveReplicas() + pending >= bc.getBlockReplication()
+        && (pending > 0 || blockHasEnoughRacks(block))) {
+      neededReplications.remove(block, priority);
+      blockLog.info("BLOCK* Removing " + block
+          + " from neededReplications as it has enough replicas");
+    }
+  }
+
   /**
    * Compute block replication and block invalidation work that can be scheduled
    * on data-nodes. The datanode will be informed of this work at the next
@@ -87,6 +87,13 @@ public class CacheReplicationMonitor extends Thread implements Closeable {
    */
   private final long intervalMs;
 
+  /**
+   * The longest time the directive scan holds the namesystem write lock
+   * before letting other operations in, or 0 to scan all directives under a
+   * single hold of the lock.
+   */
+  private final long maxLockHoldMs;
+
   /**
    * The CacheReplicationMonitor (CRM) lock. Used to synchronize starting and
    * waiting for rescan operations.
@@ -142,11 +149,18 @@ public class CacheReplicationMonitor extends Thread implements Closeable {
 
   public CacheReplicationMonitor(FSNamesystem namesystem,
       CacheManager cacheManager, long intervalMs, ReentrantLock lock) {
+    this(namesystem, cacheManager, intervalMs, 0, lock);
+  }
+
+  public CacheReplicationMonitor(FSNamesystem namesystem,
+      CacheManager cacheManager, long intervalMs, long maxLockHoldMs,
+      ReentrantLock lock) {
     this.namesystem = namesystem;
     this.blockManager = namesystem.getBlockManager();
     this.cacheManager = cacheManager;
     this.cachedBlocks = cacheManager.getCachedBlocks();
     this.intervalMs = intervalMs;
+    this.maxLockHoldMs = maxLockHoldMs;
     this.lock = lock;
     this.doRescan = this.lock.newCondition();
     this.scanFinished = this.lock.newCondition();
@@ -317,14 +331,52 @@ private void resetStatistics() {
     }
   }
 
+  /**
+   * Release the namesystem write lock so that waiting operations can run,
+   * then take it again.
+   *
+   * @throws InterruptedException if the monitor was shut down meanwhile.
+   */
+  private void yieldWriteLock() throws InterruptedException {
+    namesystem.writeUnlock();
+    namesystem.writeLock();
+    lock.lock();
+    try {
+      if (shutdown) {
+        throw new InterruptedException("CacheReplicationMonitor was " +
+            "shut down.");
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
   /**
    * Scan all CacheDirectives.  Use the information to figure out
    * what cache replication factor each block should have.
+   * <p>
+   * If {@link #maxLockHoldMs} is set, the write lock is released between
+   * directives once it has been held that long. Directives removed in the
+   * meantime are skipped; files moved between directives in the meantime
+   * are handled by the next scan.
    */
-  private void rescanCacheDirectives() {
+  private void rescanCacheDirectives() throws InterruptedException {
     FSDirectory fsDir = namesystem.getFSDirectory();
     final long now = new Date().getTime();
-    for (CacheDirective directive : cacheManager.getCacheDirectives()) {
+    final CacheDirective[] directives = cacheManager.getCacheDirectives()
+        .toArray(new CacheDirective[0]);
+    long lockAcquiredMs = Time.monotonicNow();
+    boolean yielded = false;
+    for (CacheDirective directive : directives) {
+      if (maxLockHoldMs > 0
+          && Time.monotonicNow() - lockAcquiredMs > maxLockHoldMs) {
+        yieldWriteLock();
+        lockAcquiredMs = Time.monotonicNow();
+        yielded = true;
+      }
+      if (yielded && !cacheManager.hasDirective(directive)) {
+        continue;
+      }
       scannedDirectives++;
       // Skip processing this entry if it has expired
       if (directive.getExpiryTime() > 0 && directive.getExpiryTime() <= now) {
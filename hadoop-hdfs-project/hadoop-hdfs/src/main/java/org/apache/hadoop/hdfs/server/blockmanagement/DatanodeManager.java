@@ -67,6 +67,7 @@ public class DatanodeManager {
   private final BlockManager blockManager;
   private final HeartbeatManager heartbeatManager;
   private Daemon decommissionthread = null;
+  private volatile DecommissionManager decommissionManager = null;
 
   /**
    * Stores the datanode -> block map.  
@@ -298,11 +299,14 @@ private static long getStaleIntervalFromConf(Configuration conf,
   
   void activate(final Configuration conf) {
     final DecommissionManager dm = new DecommissionManager(namesystem, blockManager);
+    this.decommissionManager = dm;
     this.decommissionthread = new Daemon(dm.new Monitor(
         conf.getInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INTERVAL_KEY, 
                     DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INTERVAL_DEFAULT),
         conf.getInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_NODES_PER_INTERVAL_KEY, 
-                    DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_NODES_PER_INTERVAL_DEFAULT)));
+                    DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_NODES_PER_INTERVAL_DEFAULT),
+        conf.getInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_INTERVAL_KEY,
+                    DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_INTERVAL_DEFAULT)));
     decommissionthread.start();
 
     heartbeatManager.activate(conf);
@@ -319,6 +323,15 @@ void close() {
     heartbeatManager.close();
   }
 
+  /**
+   * @return the number of blocks on decommissioning nodes that still needed
+   *         replication when their nodes were last checked
+   */
+  public long getNumPendingDecommissionBlocks() {
+    final DecommissionManager dm = decommissionManager;
+    return dm == null ? 0 : dm.getNumNeededBlocks();
+  }
+
   /** @return the network topology. */
   public NetworkTopology getNetworkTopology() {
     return networktopology;
@@ -1355,15 +1368,27 @@ private void setDatanodeDead(DatanodeDescriptor node) {
     node.setLastUpdate(0);
   }
 
-  /** Handle heartbeat from datanodes. */
+  /**
+   * Handle heartbeat from datanodes.
+   *
+   * Only the datanode lookup, the statistics update and the commands whose
+   * state is guarded by the heartbeat manager or the datanode map (block key
+   * and balancer bandwidth updates) are done while holding those locks.
+   * Recovery, replication, invalidation and caching commands are built
+   * afterwards, synchronized only on the reporting datanode, so that
+   * heartbeats from different datanodes do not serialize on command
+   * generation.
+   */
   public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
       StorageReport[] reports, final String blockPoolId,
       long cacheCapacity, long cacheUsed, int xceiverCount, 
       int maxTransfers, int failedVolumes
       ) throws IOException {
+    final DatanodeDescriptor nodeinfo;
+    final BlockInfoUnderConstruction[] blocks;
+    final List<DatanodeCommand> sharedCmds = new ArrayList<DatanodeCommand>();
     synchronized (heartbeatManager) {
       synchronized (datanodeMap) {
-        DatanodeDescriptor nodeinfo = null;
         try {
           nodeinfo = getDatanode(nodeReg);
         } catch(UnregisteredNodeException e) {
@@ -1391,98 +1416,110 @@ public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
         }
 
         //check lease recovery
-        BlockInfoUnderConstruction[] blocks = nodeinfo
-            .getLeaseRecoveryCommand(Integer.MAX_VALUE);
-        if (blocks != null) {
-          BlockRecoveryCommand brCommand = new BlockRecoveryCommand(
-              blocks.length);
-          for (BlockInfoUnderConstruction b : blocks) {
-            final DatanodeStorageInfo[] storages = b.getExpectedStorageLocations();
-            // Skip stale nodes during recovery - not heart beated for some time (30s by default).
-            final List<DatanodeStorageInfo> recoveryLocations =
-                new ArrayList<DatanodeStorageInfo>(storages.length);
-            for (int i = 0; i < storages.length; i++) {
-              if (!storages[i].getDatanodeDescriptor().isStale(staleInterval)) {
-                recoveryLocations.add(storages[i]);
-              }
-            }
-            // If we only get 1 replica after eliminating stale nodes, then choose all
-            // replicas for recovery and let the primary data node handle failures.
-            if (recoveryLocations.size() > 1) {
-              if (recoveryLocations.size() != storages.length) {
-                LOG.info("Skipped stale nodes for recovery : " +
-                    (storages.length - recoveryLocations.size()));
-              }
-              brCommand.add(new RecoveringBlock(
-                  new ExtendedBlock(blockPoolId, b),
-                  DatanodeStorageInfo.toDatanodeInfos(recoveryLocations),
-                  b.getBlockRecoveryId()));
-            } else {
-              // If too many replicas are stale, then choose all replicas to participate
-              // in block recovery.
-              brCommand.add(new RecoveringBlock(
-                  new ExtendedBlock(blockPoolId, b),
-                  DatanodeStorageInfo.toDatanodeInfos(storages),
-                  b.getBlockRecoveryId()));
-            }
+        blocks = nodeinfo.getLeaseRecoveryCommand(Integer.MAX_VALUE);
+        if (blocks == null) {
+          // needKeyUpdate is set by the heartbeat monitor and the balancer
+          // bandwidth by setBalancerBandwidth, both under these locks.
+          blockManager.addKeyUpdateCommand(sharedCmds, nodeinfo);
+
+          // check for balancer bandwidth update
+          if (nodeinfo.getBalancerBandwidth() > 0) {
+            sharedCmds.add(new BalancerBandwidthCommand(
+                nodeinfo.getBalancerBandwidth()));
+            // set back to 0 to indicate that datanode has been sent the new value
+            nodeinfo.setBalancerBandwidth(0);
           }
-          return new DatanodeCommand[] { brCommand };
         }
+      }
+    }
+
+    if (blocks != null) {
+      return new DatanodeCommand[] {
+          getBlockRecoveryCommand(blocks, blockPoolId) };
+    }
 
-        final List<DatanodeCommand> cmds = new ArrayList<DatanodeCommand>();
-        //check pending replication
-        List<BlockTargetPair> pendingList = nodeinfo.getReplicationCommand(
-              maxTransfers);
-        if (pendingList != null) {
-          cmds.add(new BlockCommand(DatanodeProtocol.DNA_TRANSFER, blockPoolId,
-              pendingList));
+    final List<DatanodeCommand> cmds = new ArrayList<DatanodeCommand>();
+    synchronized (nodeinfo) {
+      //check pending replication
+      List<BlockTargetPair> pendingList = nodeinfo.getReplicationCommand(
+            maxTransfers);
+      if (pendingList != null) {
+        cmds.add(new BlockCommand(DatanodeProtocol.DNA_TRANSFER, blockPoolId,
+            pendingList));
+      }
+      //check block invalidation
+      Block[] blks = nodeinfo.getInvalidateBlocks(blockInvalidateLimit);
+      if (blks != null) {
+        cmds.add(new BlockCommand(DatanodeProtocol.DNA_INVALIDATE,
+            blockPoolId, blks));
+      }
+      boolean sendingCachingCommands = false;
+      long nowMs = Time.monotonicNow();
+      if (shouldSendCachingCommands && 
+          ((nowMs - nodeinfo.getLastCachingDirectiveSentTimeMs()) >=
+              timeBetweenResendingCachingDirectivesMs)) {
+        DatanodeCommand pendingCacheCommand =
+            getCacheCommand(nodeinfo.getPendingCached(), nodeinfo,
+              DatanodeProtocol.DNA_CACHE, blockPoolId);
+        if (pendingCacheCommand != null) {
+          cmds.add(pendingCacheCommand);
+          sendingCachingCommands = true;
         }
-        //check block invalidation
-        Block[] blks = nodeinfo.getInvalidateBlocks(blockInvalidateLimit);
-        if (blks != null) {
-          cmds.add(new BlockCommand(DatanodeProtocol.DNA_INVALIDATE,
-              blockPoolId, blks));
+        DatanodeCommand pendingUncacheCommand =
+            getCacheCommand(nodeinfo.getPendingUncached(), nodeinfo,
+              DatanodeProtocol.DNA_UNCACHE, blockPoolId);
+        if (pendingUncacheCommand != null) {
+          cmds.add(pendingUncacheCommand);
+          sendingCachingCommands = true;
         }
-        boolean sendingCachingCommands = false;
-        long nowMs = Time.monotonicNow();
-        if (shouldSendCachingCommands && 
-            ((nowMs - nodeinfo.getLastCachingDirectiveSentTimeMs()) >=
-                timeBetweenResendingCachingDirectivesMs)) {
-          DatanodeCommand pendingCacheCommand =
-              getCacheCommand(nodeinfo.getPendingCached(), nodeinfo,
-                DatanodeProtocol.DNA_CACHE, blockPoolId);
-          if (pendingCacheCommand != null) {
-            cmds.add(pendingCacheCommand);
-            sendingCachingCommands = true;
-          }
-          DatanodeCommand pendingUncacheCommand =
-              getCacheCommand(nodeinfo.getPendingUncached(), nodeinfo,
-                DatanodeProtocol.DNA_UNCACHE, blockPoolId);
-          if (pendingUncacheCommand != null) {
-            cmds.add(pendingUncacheCommand);
-            sendingCachingCommands = true;
-          }
-          if (sendingCachingCommands) {
-            nodeinfo.setLastCachingDirectiveSentTimeMs(nowMs);
-          }
+        if (sendingCachingCommands) {
+          nodeinfo.setLastCachingDirectiveSentTimeMs(nowMs);
         }
+      }
+    }
+    cmds.addAll(sharedCmds);
 
-        blockManager.addKeyUpdateCommand(cmds, nodeinfo);
+    if (!cmds.isEmpty()) {
+      return cmds.toArray(new DatanodeCommand[cmds.size()]);
+    }
+    return new DatanodeCommand[0];
+  }
 
-        // check for balancer bandwidth update
-        if (nodeinfo.getBalancerBandwidth() > 0) {
-          cmds.add(new BalancerBandwidthCommand(nodeinfo.getBalancerBandwidth()));
-          // set back to 0 to indicate that datanode has been sent the new value
-          nodeinfo.setBalancerBandwidth(0);
+  /** Build the recovery command for the given under construction blocks. */
+  private BlockRecoveryCommand getBlockRecoveryCommand(
+      BlockInfoUnderConstruction[] blocks, String blockPoolId) {
+    BlockRecoveryCommand brCommand = new BlockRecoveryCommand(blocks.length);
+    for (BlockInfoUnderConstruction b : blocks) {
+      final DatanodeStorageInfo[] storages = b.getExpectedStorageLocations();
+      // Skip stale nodes during recovery - not heart beated for some time (30s by default).
+      final List<DatanodeStorageInfo> recoveryLocations =
+          new ArrayList<DatanodeStorageInfo>(storages.length);
+      for (int i = 0; i < storages.length; i++) {
+        if (!storages[i].getDatanodeDescriptor().isStale(staleInterval)) {
+          recoveryLocations.add(storages[i]);
         }
-
-        if (!cmds.isEmpty()) {
-          return cmds.toArray(new DatanodeCommand[cmds.size()]);
+      }
+      // If we only get 1 replica after eliminating stale nodes, then choose all
+      // replicas for recovery and let the primary data node handle failures.
+      if (recoveryLocations.size() > 1) {
+        if (recoveryLocations.size() != storages.length) {
+          LOG.info("Skipped stale nodes for recovery : " +
+              (storages.length - recoveryLocations.size()));
         }
+        brCommand.add(new RecoveringBlock(
+            new ExtendedBlock(blockPoolId, b),
+            DatanodeStorageInfo.toDatanodeInfos(recoveryLocations),
+            b.getBlockRecoveryId()));
+      } else {
+        // If too many replicas are stale, then choose all replicas to participate
+        // in block recovery.
+        brCommand.add(new RecoveringBlock(
+            new ExtendedBlock(blockPoolId, b),
+            DatanodeStorageInfo.toDatanodeInfos(storages),
+            b.getBlockRecoveryId()));
       }
     }
-
-    return new DatanodeCommand[0];
+    return brCommand;
   }
 
   /**
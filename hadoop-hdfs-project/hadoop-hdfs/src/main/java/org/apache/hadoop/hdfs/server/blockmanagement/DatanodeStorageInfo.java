@@ -134,6 +134,12 @@ public void remove() {
    */
   private boolean blockContentsStale = true;
 
+  /**
+   * Set while a block report of this storage is processed in batches, during
+   * which the storage's block list holds the report's delimiter.
+   */
+  private boolean blockReportInProgress = false;
+
   DatanodeStorageInfo(DatanodeDescriptor dn, DatanodeStorage s) {
     this.dn = dn;
     this.storageID = s.getStorageID();
@@ -260,6 +266,22 @@ int moveBlockToHead(BlockInfo b, int curIndex, int headIndex) {
     return curIndex;
   }
 
+  /**
+   * @return the index of this storage in the triplets of the block at the
+   *         head of the blockList, or -1 if the list is empty
+   */
+  int getBlockListHeadIndex() {
+    return blockList == null ? -1 : blockList.findStorageInfo(this);
+  }
+
+  boolean isBlockReportInProgress() {
+    return blockReportInProgress;
+  }
+
+  void setBlockReportInProgress(boolean inProgress) {
+    this.blockReportInProgress = inProgress;
+  }
+
   /**
    * Used for testing only
    * @return the head of the blockList
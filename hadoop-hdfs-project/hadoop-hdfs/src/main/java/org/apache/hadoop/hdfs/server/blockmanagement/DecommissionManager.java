@@ -17,16 +17,31 @@
  */
 package org.apache.hadoop.hdfs.server.blockmanagement;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.Namesystem;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+import org.apache.hadoop.hdfs.util.ChunkedArrayList;
+import org.apache.hadoop.util.Time;
 
 /**
  * Manage node decommissioning.
+ * <p>
+ * The first check of a decommissioning node scans all of its blocks and
+ * remembers those that still need replication. Later checks only look at
+ * the remembered blocks, dropping the ones that have been replicated in the
+ * meantime. Once none of them holds up the decommission any more, the node
+ * is scanned in full once more, to include blocks it received since its
+ * previous full scan, before it is marked decommissioned.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Evolving
@@ -36,12 +51,30 @@ class DecommissionManager {
   private final Namesystem namesystem;
   private final BlockManager blockmanager;
 
+  /**
+   * The blocks of each decommissioning node that needed replication when
+   * the node was last checked. Only accessed by the {@link Monitor}, under
+   * the namesystem write lock.
+   */
+  private final Map<DatanodeDescriptor, List<Block>> neededBlocks =
+      new HashMap<DatanodeDescriptor, List<Block>>();
+  /** The total number of blocks in {@link #neededBlocks}. */
+  private volatile long numNeededBlocks = 0;
+
   DecommissionManager(final Namesystem namesystem,
       final BlockManager blockmanager) {
     this.namesystem = namesystem;
     this.blockmanager = blockmanager;
   }
 
+  /**
+   * @return the number of blocks on decommissioning nodes that still needed
+   *         replication when their nodes were last checked
+   */
+  long getNumNeededBlocks() {
+    return numNeededBlocks;
+  }
+
   /** Periodically check decommission status. */
   class Monitor implements Runnable {
     /** recheckInterval is how often namenode checks
@@ -50,12 +83,16 @@ class Monitor implements Runnable {
     private final long recheckInterval;
     /** The number of decommission nodes to check for each interval */
     private final int numNodesPerCheck;
+    /** The number of blocks to check for each interval */
+    private final int numBlocksPerCheck;
     /** firstkey can be initialized to anything. */
     private String firstkey = "";
 
-    Monitor(int recheckIntervalInSecond, int numNodesPerCheck) {
+    Monitor(int recheckIntervalInSecond, int numNodesPerCheck,
+        int numBlocksPerCheck) {
       this.recheckInterval = recheckIntervalInSecond * 1000L;
       this.numNodesPerCheck = numNodesPerCheck;
+      this.numBlocksPerCheck = numBlocksPerCheck;
     }
 
     /**
@@ -65,12 +102,19 @@ class Monitor implements Runnable {
     @Override
     public void run() {
       for(; namesystem.isRunning(); ) {
+        long lockHeld;
         namesystem.writeLock();
         try {
+          final long start = Time.monotonicNow();
           check();
+          lockHeld = Time.monotonicNow() - start;
         } finally {
           namesystem.writeUnlock();
         }
+        final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+        if (metrics != null) {
+          metrics.addDecommissionCheck(lockHeld);
+        }
   
         try {
           Thread.sleep(recheckInterval);
@@ -80,25 +124,90 @@ public void run() {
       }
     }
     
+    /**
+     * Check up to numNodesPerCheck decommissioning nodes, stopping early
+     * once numBlocksPerCheck blocks have been checked. The next check
+     * resumes with the first node that was not checked.
+     */
     private void check() {
+      // Forget the nodes which are no longer decommissioning.
+      for (Iterator<DatanodeDescriptor> it = neededBlocks.keySet().iterator();
+          it.hasNext(); ) {
+        if (!it.next().isDecommissionInProgress()) {
+          it.remove();
+        }
+      }
+
       final DatanodeManager dm = blockmanager.getDatanodeManager();
       int count = 0;
+      int numBlocksChecked = 0;
       for(Map.Entry<String, DatanodeDescriptor> entry
           : dm.getDatanodeCyclicIteration(firstkey)) {
         final DatanodeDescriptor d = entry.getValue();
-        firstkey = entry.getKey();
 
         if (d.isDecommissionInProgress()) {
+          if (count > 0 && numBlocksChecked >= numBlocksPerCheck) {
+            break;
+          }
           try {
-            dm.checkDecommissionState(d);
+            numBlocksChecked += checkNode(d);
           } catch(Exception e) {
             LOG.warn("entry=" + entry, e);
           }
+          firstkey = entry.getKey();
           if (++count == numNodesPerCheck) {
-            return;
+            break;
           }
+        } else {
+          firstkey = entry.getKey();
+        }
+      }
+
+      long total = 0;
+      for (List<Block> blocks : neededBlocks.values()) {
+        total += blocks.size();
+      }
+      numNeededBlocks = total;
+      if (LOG.isDebugEnabled() && count > 0) {
+        LOG.debug("Checked " + numBlocksChecked + " blocks of " + count
+            + " decommissioning nodes, " + total
+            + " blocks still need replication");
+      }
+    }
+
+    /**
+     * Check the decommission status of a node, marking it decommissioned
+     * if all of its blocks are sufficiently replicated.
+     * @return the number of blocks checked
+     */
+    private int checkNode(DatanodeDescriptor d) {
+      if (!d.checkBlockReportReceived()) {
+        return 0;
+      }
+      int numChecked = 0;
+      List<Block> blocks = neededBlocks.get(d);
+      if (blocks != null) {
+        final List<Block> stillNeeded = new ChunkedArrayList<Block>();
+        numChecked += blocks.size();
+        final boolean inProgress = blockmanager.isReplicationInProgress(d,
+            blocks.iterator(), stillNeeded);
+        neededBlocks.put(d, stillNeeded);
+        if (inProgress) {
+          return numChecked;
         }
       }
+
+      final List<Block> stillNeeded = new ChunkedArrayList<Block>();
+      numChecked += d.numBlocks();
+      if (blockmanager.isReplicationInProgress(d, d.getBlockIterator(),
+          stillNeeded)) {
+        neededBlocks.put(d, stillNeeded);
+      } else {
+        neededBlocks.remove(d);
+        d.setDecommissioned();
+        LOG.info("Decommission complete for " + d);
+      }
+      return numChecked;
     }
   }
 }
@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.StorageType;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches the {@link LocatedBlocks} last built for a range of a complete file,
+ * so that repeated opens of a popular file do not look up every block and
+ * replica again.
+ * <p>
+ * Entries are keyed by the {@link BlockCollection} instance and are dropped
+ * by the {@link BlockManager} whenever a replica of one of the file's blocks
+ * is added, removed or marked corrupt, or a block of the file changes state.
+ * An entry is also only used while the file's block array, length and the
+ * requested range are the same as when it was built. Both population and
+ * invalidation happen under the namesystem lock (read and write
+ * respectively), so an entry can not miss an invalidation.
+ * <p>
+ * Callers get a copy of the cached {@link LocatedBlocks}, since the replica
+ * locations are sorted per client and cached locations are added per call.
+ * Block tokens are not cached; files read with block tokens are not cached.
+ */
+@InterfaceAudience.Private
+public class LocatedBlocksCache {
+
+  private static class Entry {
+    final BlockInfo[] blocks;
+    final long fileSize;
+    final long offset;
+    final long length;
+    final LocatedBlocks locatedBlocks;
+
+    Entry(BlockInfo[] blocks, long fileSize, long offset, long length,
+        LocatedBlocks locatedBlocks) {
+      this.blocks = blocks;
+      this.fileSize = fileSize;
+      this.offset = offset;
+      this.length = length;
+      this.locatedBlocks = locatedBlocks;
+    }
+  }
+
+  private final Cache<BlockCollection, Entry> cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  LocatedBlocksCache(int maxSize) {
+    // weak keys are compared by identity, and entries of deleted files go
+    // away with the inode
+    this.cache = CacheBuilder.newBuilder()
+        .weakKeys()
+        .maximumSize(maxSize)
+        .build();
+  }
+
+  /**
+   * @return a copy of the cached locations of the given range of the file,
+   *         or null if there is no valid entry.
+   */
+  public LocatedBlocks get(BlockCollection bc, long fileSize, long offset,
+      long length) {
+    final Entry e = cache.getIfPresent(bc);
+    if (e == null || e.blocks != bc.getBlocks() || e.fileSize != fileSize
+        || e.offset != offset || e.length != length) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return copy(e.locatedBlocks);
+  }
+
+  /** Cache a copy of the located blocks built for the range of the file. */
+  public void put(BlockCollection bc, long fileSize, long offset, long length,
+      LocatedBlocks locatedBlocks) {
+    cache.put(bc, new Entry(bc.getBlocks(), fileSize, offset, length,
+        copy(locatedBlocks)));
+  }
+
+  void invalidate(BlockCollection bc) {
+    cache.invalidate(bc);
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private static LocatedBlocks copy(LocatedBlocks lbs) {
+    final List<LocatedBlock> blocks = lbs.getLocatedBlocks();
+    final List<LocatedBlock> copies =
+        new ArrayList<LocatedBlock>(blocks.size());
+    for (LocatedBlock lb : blocks) {
+      copies.add(copy(lb));
+    }
+    return new LocatedBlocks(lbs.getFileLength(), lbs.isUnderConstruction(),
+        copies, copy(lbs.getLastLocatedBlock()), lbs.isLastBlockComplete(),
+        lbs.getFileEncryptionInfo());
+  }
+
+  private static LocatedBlock copy(LocatedBlock lb) {
+    if (lb == null) {
+      return null;
+    }
+    final String[] storageIDs = lb.getStorageIDs();
+    final StorageType[] storageTypes = lb.getStorageTypes();
+    return new LocatedBlock(lb.getBlock(), lb.getLocations().clone(),
+        storageIDs == null ? null : storageIDs.clone(),
+        storageTypes == null ? null : storageTypes.clone(),
+        lb.getStartOffset(), lb.isCorrupt(), null);
+  }
+}
@@ -47,8 +47,10 @@
 import org.apache.hadoop.hdfs.protocol.datatransfer.PipelineAck;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BlockOpResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaInputStreams;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeIoStats;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInPipeline;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.util.DataTransferThrottler;
@@ -84,6 +86,12 @@ class BlockReceiver implements Closeable {
   private boolean needsChecksumTranslation;
   private OutputStream out = null; // to block file at local disk
   private FileDescriptor outFd;
+  /** write load of the volume holding the replica, if known */
+  private VolumeIoStats volumeIoStats;
+  /** bytes counted as pending in volumeIoStats until this is closed */
+  private long pendingIoBytes = 0;
+  /** whether the replica is counted as open in volumeIoStats */
+  private boolean openReplicaCounted = false;
   private DataOutputStream checksumOut = null; // to crc file at local disk
   private int bytesPerChecksum;
   private int checksumSize;
@@ -117,6 +125,8 @@ class BlockReceiver implements Closeable {
   private final ExtendedBlock block; 
   /** the replica to write */
   private final ReplicaInPipelineInterface replicaInfo;
+  /** the thread receiving the block, set as the replica's writer */
+  private final Thread writer = Thread.currentThread();
   /** pipeline stage */
   private final BlockConstructionStage stage;
   private final boolean isTransfer;
@@ -218,6 +228,16 @@ class BlockReceiver implements Closeable {
               " while receiving block " + block + " from " + inAddr);
         }
       }
+      if (replicaInfo instanceof ReplicaInfo) {
+        FsVolumeSpi volume = ((ReplicaInfo)replicaInfo).getVolume();
+        if (volume != null) {
+          this.volumeIoStats = volume.getIoStats();
+        }
+      }
+      // A replica created here was counted as open on its volume, so that
+      // the volume choosing policy sees it before any byte is written.
+      this.openReplicaCounted = volumeIoStats != null && (isDatanode
+          || isTransfer || stage == BlockConstructionStage.PIPELINE_SETUP_CREATE);
       this.dropCacheBehindWrites = (cachingStrategy.getDropBehind() == null) ?
         datanode.getDnConf().dropCacheBehindWrites :
           cachingStrategy.getDropBehind();
@@ -339,6 +359,18 @@ public void close() throws IOException {
     if (measuredFlushTime) {
       datanode.metrics.addFlushNanos(flushTotalNanos);
     }
+    if (volumeIoStats != null) {
+      volumeIoStats.removePendingWriteBytes(pendingIoBytes);
+      pendingIoBytes = 0;
+      if (openReplicaCounted) {
+        volumeIoStats.removeOpenReplica();
+        openReplicaCounted = false;
+      }
+    }
+    if (replicaInfo != null) {
+      // the writer thread may be pooled and go on to serve other requests
+      replicaInfo.releaseWriter(writer);
+    }
     // disk check
     if(ioe != null) {
       datanode.checkDiskErrorAsync();
@@ -603,6 +635,11 @@ private int receivePacket() throws IOException {
           
           // Write data to disk.
           long begin = Time.monotonicNow();
+          final long ioStartNanos = System.nanoTime();
+          if (volumeIoStats != null) {
+            volumeIoStats.addPendingWriteBytes(numBytesToDisk);
+            pendingIoBytes += numBytesToDisk;
+          }
           out.write(dataBuf.array(), startByteToDisk, numBytesToDisk);
           long duration = Time.monotonicNow() - begin;
           if (duration > datanodeSlowLogThresholdMs) {
@@ -641,6 +678,9 @@ private int receivePacket() throws IOException {
           }
           /// flush entire packet, sync if requested
           flushOrSync(syncBlock);
+          if (volumeIoStats != null) {
+            volumeIoStats.addWriteLatency(System.nanoTime() - ioStartNanos);
+          }
           
           replicaInfo.setLastChecksumAndDataLen(
             offsetInBlock, lastChunkChecksum
@@ -222,12 +222,10 @@ class BlockSender implements java.io.Closeable {
             "If verifying checksum, currently must also send it.");
       }
       
-      final Replica replica;
-      final long replicaVisibleLength;
-      synchronized(datanode.data) { 
-        replica = getReplica(block, datanode);
-        replicaVisibleLength = replica.getVisibleLength();
-      }
+      // The replica lookup does not need the dataset lock, which may be
+      // held by a write blocked on a slow disk.
+      final Replica replica = getReplica(block, datanode);
+      final long replicaVisibleLength = replica.getVisibleLength();
       // if there is a write in progress
       ChunkChecksum chunkChecksum = null;
       if (replica instanceof ReplicaBeingWritten) {
@@ -622,7 +620,8 @@ private void readChecksum(byte[] buf, final int checksumOffset,
   
   /**
    * Compute checksum for chunks and verify the checksum that is read from
-   * the metadata file is correct.
+   * the metadata file is correct. All chunks of the packet are verified in
+   * one call, which uses the native CRC implementation when it is loaded.
    * 
    * @param buf buffer that has checksum and data
    * @param dataOffset position where data is written in the buf
@@ -634,23 +633,9 @@ private void readChecksum(byte[] buf, final int checksumOffset,
   public void verifyChecksum(final byte[] buf, final int dataOffset,
       final int datalen, final int numChunks, final int checksumOffset)
       throws ChecksumException {
-    int dOff = dataOffset;
-    int cOff = checksumOffset;
-    int dLeft = datalen;
-
-    for (int i = 0; i < numChunks; i++) {
-      checksum.reset();
-      int dLen = Math.min(dLeft, chunkSize);
-      checksum.update(buf, dOff, dLen);
-      if (!checksum.compare(buf, cOff)) {
-        long failedPos = offset + datalen - dLeft;
-        throw new ChecksumException("Checksum failed at " + failedPos,
-            failedPos);
-      }
-      dLeft -= dLen;
-      dOff += dLen;
-      cOff += checksumSize;
-    }
+    checksum.verifyChunkedSums(ByteBuffer.wrap(buf, dataOffset, datalen),
+        ByteBuffer.wrap(buf, checksumOffset, numChunks * checksumSize),
+        block.getBlockName(), offset);
   }
   
   /**
@@ -76,6 +76,10 @@
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.ObjectName;
@@ -274,6 +278,8 @@ public static InetSocketAddress createSocketAddr(String target) {
   Daemon localDataXceiverServer = null;
   ShortCircuitRegistry shortCircuitRegistry = null;
   ThreadGroup threadGroup = null;
+  /** Runs DataXceivers if transfer threads are pooled, otherwise null. */
+  ThreadPoolExecutor xceiverPool = null;
   private DNConf dnConf;
   private volatile boolean heartbeatsDisabledForTests = false;
   private DataStorage storage = null;
@@ -650,6 +656,14 @@ private void initDataXceiver(Configuration conf) throws IOException {
     streamingAddr = tcpPeerServer.getStreamingAddr();
     LOG.info("Opened streaming server at " + streamingAddr);
     this.threadGroup = new ThreadGroup("dataXceiverServer");
+    long poolKeepAliveMs = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_THREADS_POOL_KEEPALIVE_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_THREADS_POOL_KEEPALIVE_MS_DEFAULT);
+    if (poolKeepAliveMs > 0) {
+      this.xceiverPool = newXceiverPool(threadGroup, poolKeepAliveMs);
+      LOG.info("Pooling transfer threads, idle threads exit after " +
+          poolKeepAliveMs + " ms");
+    }
     xserver = new DataXceiverServer(tcpPeerServer, conf, this);
     this.dataXceiverServer = new Daemon(threadGroup, xserver);
     this.threadGroup.setDaemon(true); // auto destroy when empty
@@ -670,6 +684,34 @@ private void initDataXceiver(Configuration conf) throws IOException {
     this.shortCircuitRegistry = new ShortCircuitRegistry(conf);
   }
 
+  /**
+   * Create a pool which reuses the threads of finished DataXceivers for new
+   * connections. Like the unpooled threads, they belong to the given thread
+   * group. The pool does not bound the number of threads itself; the
+   * DataXceiverServers enforce the transfer thread limit.
+   */
+  private static ThreadPoolExecutor newXceiverPool(final ThreadGroup group,
+      long keepAliveMs) {
+    return new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+        keepAliveMs, TimeUnit.MILLISECONDS,
+        new SynchronousQueue<Runnable>(),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            return new Daemon(group, r);
+          }
+        }) {
+      @Override
+      protected void afterExecute(Runnable r, Throwable t) {
+        // DataXceivers name their thread after the client they serve
+        Thread.currentThread().setName("DataXceiver idle");
+        // An interrupt meant for the finished task, e.g. from a recovery
+        // stopping a writer, must not reach the next task on this thread.
+        Thread.interrupted();
+      }
+    };
+  }
+
   static DomainPeerServer getDomainPeerServer(Configuration conf,
       int port) throws IOException {
     String domainSocketPath =
@@ -1438,6 +1480,11 @@ public void shutdown() {
     // before the restart prep is done.
     this.shouldRun = false;
     
+    // let idle pooled threads exit; busy ones finish their transfer first
+    if (this.xceiverPool != null) {
+      this.xceiverPool.shutdown();
+    }
+
     // wait for all data receiver threads to exit
     if (this.threadGroup != null) {
       int sleepMs = 2;
@@ -1562,7 +1609,16 @@ private void handleDiskError(String errMsgr) {
   /** Number of concurrent xceivers per node. */
   @Override // DataNodeMXBean
   public int getXceiverCount() {
-    return threadGroup == null ? 0 : threadGroup.activeCount();
+    if (threadGroup == null) {
+      return 0;
+    }
+    int count = threadGroup.activeCount();
+    ThreadPoolExecutor pool = xceiverPool;
+    if (pool != null) {
+      // Idle pooled threads are not serving any transfer
+      count -= pool.getPoolSize() - pool.getActiveCount();
+    }
+    return Math.max(count, 0);
   }
   
   int getXmitsInProgress() {
@@ -21,6 +21,7 @@
 import java.net.SocketTimeoutException;
 import java.nio.channels.AsynchronousCloseException;
 import java.util.HashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.logging.Log;
 import org.apache.hadoop.conf.Configuration;
@@ -142,9 +143,12 @@ public void run() {
               + maxXceiverCount);
         }
 
-        new Daemon(datanode.threadGroup,
-            DataXceiver.create(peer, datanode, this))
-            .start();
+        DataXceiver xceiver = DataXceiver.create(peer, datanode, this);
+        if (datanode.xceiverPool != null) {
+          datanode.xceiverPool.execute(xceiver);
+        } else {
+          new Daemon(datanode.threadGroup, xceiver).start();
+        }
       } catch (SocketTimeoutException ignored) {
         // wake up to see if should continue to run
       } catch (AsynchronousCloseException ace) {
@@ -156,6 +160,12 @@ public void run() {
       } catch (IOException ie) {
         IOUtils.cleanup(null, peer);
         LOG.warn(datanode.getDisplayName() + ":DataXceiverServer: ", ie);
+      } catch (RejectedExecutionException ree) {
+        // the transfer thread pool is shut down with the DataNode
+        IOUtils.cleanup(null, peer);
+        if (datanode.shouldRun && !datanode.shutdownForUpgrade) {
+          LOG.warn(datanode.getDisplayName() + ":DataXceiverServer: ", ree);
+        }
       } catch (OutOfMemoryError ie) {
         IOUtils.cleanup(null, peer);
         // DataNode can run out of memory if there is too many transfers.
@@ -61,6 +61,10 @@ public class DirectoryScanner implements Runnable {
   private final ExecutorService reportCompileThreadPool;
   private final ScheduledExecutorService masterThread;
   private final long scanPeriodMsecs;
+  /** Longest time the dataset lock is held while comparing, 0 for no limit */
+  private final long maxLockHoldMs;
+  /** Milliseconds per second each report compiler may spend scanning */
+  private final int throttleLimitMsPerSec;
   private volatile boolean shouldRun = false;
   private boolean retainDiffs = false;
 
@@ -315,6 +319,18 @@ public long getGenStamp() {
     int threads = 
         conf.getInt(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_KEY,
                     DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THREADS_DEFAULT);
+    maxLockHoldMs = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_MAX_LOCK_HOLD_MS_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_MAX_LOCK_HOLD_MS_DEFAULT);
+    throttleLimitMsPerSec = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY,
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_DEFAULT);
+    if (throttleLimitMsPerSec <= 0 || throttleLimitMsPerSec > 1000) {
+      throw new IllegalArgumentException(
+          DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY
+          + " must be in the range (0, 1000], but is "
+          + throttleLimitMsPerSec);
+    }
 
     reportCompileThreadPool = Executors.newFixedThreadPool(threads, 
         new Daemon.DaemonFactory());
@@ -421,69 +437,93 @@ void scan() {
     clear();
     Map<String, ScanInfo[]> diskReport = getDiskReport();
 
-    // Hold FSDataset lock to prevent further changes to the block map
-    synchronized(dataset) {
-      for (Entry<String, ScanInfo[]> entry : diskReport.entrySet()) {
-        String bpid = entry.getKey();
-        ScanInfo[] blockpoolReport = entry.getValue();
-        
-        Stats statsRecord = new Stats(bpid);
-        stats.put(bpid, statsRecord);
-        LinkedList<ScanInfo> diffRecord = new LinkedList<ScanInfo>();
-        diffs.put(bpid, diffRecord);
-        
-        statsRecord.totalBlocks = blockpoolReport.length;
-        List<FinalizedReplica> bl = dataset.getFinalizedBlocks(bpid);
-        FinalizedReplica[] memReport = bl.toArray(new FinalizedReplica[bl.size()]);
-        Arrays.sort(memReport); // Sort based on blockId
-  
-        int d = 0; // index for blockpoolReport
-        int m = 0; // index for memReprot
-        while (m < memReport.length && d < blockpoolReport.length) {
-          Block memBlock = memReport[Math.min(m, memReport.length - 1)];
-          ScanInfo info = blockpoolReport[Math.min(
-              d, blockpoolReport.length - 1)];
-          if (info.getBlockId() < memBlock.getBlockId()) {
-            // Block is missing in memory
-            statsRecord.missingMemoryBlocks++;
-            addDifference(diffRecord, statsRecord, info);
+    if (maxLockHoldMs > 0) {
+      // The dataset lock is taken for each chunk of the comparison
+      compareBlockPools(diskReport);
+    } else {
+      // Hold FSDataset lock to prevent further changes to the block map
+      synchronized(dataset) {
+        compareBlockPools(diskReport);
+      } //end synchronized
+    }
+  }
+
+  private void compareBlockPools(Map<String, ScanInfo[]> diskReport) {
+    for (Entry<String, ScanInfo[]> entry : diskReport.entrySet()) {
+      String bpid = entry.getKey();
+      ScanInfo[] blockpoolReport = entry.getValue();
+
+      Stats statsRecord = new Stats(bpid);
+      stats.put(bpid, statsRecord);
+      LinkedList<ScanInfo> diffRecord = new LinkedList<ScanInfo>();
+      diffs.put(bpid, diffRecord);
+
+      statsRecord.totalBlocks = blockpoolReport.length;
+      List<FinalizedReplica> bl = dataset.getFinalizedBlocks(bpid);
+      FinalizedReplica[] memReport = bl.toArray(new FinalizedReplica[bl.size()]);
+      Arrays.sort(memReport); // Sort based on blockId
+
+      int d = 0; // index for blockpoolReport
+      int m = 0; // index for memReprot
+      while (m < memReport.length || d < blockpoolReport.length) {
+        // Compare in chunks, so that the lock is released at least every
+        // maxLockHoldMs when the comparison runs without an outer lock
+        synchronized(dataset) {
+          final long lockStart = Time.monotonicNow();
+          int steps = 0;
+          while (m < memReport.length || d < blockpoolReport.length) {
+            if (maxLockHoldMs > 0 && (++steps % 1024) == 0 &&
+                Time.monotonicNow() - lockStart > maxLockHoldMs) {
+              break;
+            }
+            if (m >= memReport.length) {
+              // Block is missing in memory
+              statsRecord.missingMemoryBlocks++;
+              addDifference(diffRecord, statsRecord, blockpoolReport[d++]);
+              continue;
+            }
+            if (d >= blockpoolReport.length) {
+              // Block is missing on the disk
+              FinalizedReplica current = memReport[m++];
+              addDifference(diffRecord, statsRecord,
+                            current.getBlockId(), current.getVolume());
+              continue;
+            }
+            Block memBlock = memReport[m];
+            ScanInfo info = blockpoolReport[d];
+            if (info.getBlockId() < memBlock.getBlockId()) {
+              // Block is missing in memory
+              statsRecord.missingMemoryBlocks++;
+              addDifference(diffRecord, statsRecord, info);
+              d++;
+              continue;
+            }
+            if (info.getBlockId() > memBlock.getBlockId()) {
+              // Block is missing on the disk
+              addDifference(diffRecord, statsRecord,
+                            memBlock.getBlockId(), info.getVolume());
+              m++;
+              continue;
+            }
+            // Block file and/or metadata file exists on the disk
+            // Block exists in memory
+            if (info.getBlockFile() == null) {
+              // Block metadata file exits and block file is missing
+              addDifference(diffRecord, statsRecord, info);
+            } else if (info.getGenStamp() != memBlock.getGenerationStamp()
+                || info.getBlockFileLength() != memBlock.getNumBytes()) {
+              // Block metadata file is missing or has wrong generation stamp,
+              // or block file length is different than expected
+              statsRecord.mismatchBlocks++;
+              addDifference(diffRecord, statsRecord, info);
+            }
             d++;
-            continue;
-          }
-          if (info.getBlockId() > memBlock.getBlockId()) {
-            // Block is missing on the disk
-            addDifference(diffRecord, statsRecord,
-                          memBlock.getBlockId(), info.getVolume());
             m++;
-            continue;
-          }
-          // Block file and/or metadata file exists on the disk
-          // Block exists in memory
-          if (info.getBlockFile() == null) {
-            // Block metadata file exits and block file is missing
-            addDifference(diffRecord, statsRecord, info);
-          } else if (info.getGenStamp() != memBlock.getGenerationStamp()
-              || info.getBlockFileLength() != memBlock.getNumBytes()) {
-            // Block metadata file is missing or has wrong generation stamp,
-            // or block file length is different than expected
-            statsRecord.mismatchBlocks++;
-            addDifference(diffRecord, statsRecord, info);
           }
-          d++;
-          m++;
         }
-        while (m < memReport.length) {
-          FinalizedReplica current = memReport[m++];
-          addDifference(diffRecord, statsRecord,
-                        current.getBlockId(), current.getVolume());
-        }
-        while (d < blockpoolReport.length) {
-          statsRecord.missingMemoryBlocks++;
-          addDifference(diffRecord, statsRecord, blockpoolReport[d++]);
-        }
-        LOG.info(statsRecord.toString());
-      } //end for
-    } //end synchronized
+      }
+      LOG.info(statsRecord.toString());
+    } //end for
   }
 
   /**
@@ -532,7 +572,7 @@ private Map<String, ScanInfo[]> getDiskReport() {
     for (int i = 0; i < volumes.size(); i++) {
       if (isValid(dataset, volumes.get(i))) {
         ReportCompiler reportCompiler =
-          new ReportCompiler(volumes.get(i));
+          new ReportCompiler(volumes.get(i), throttleLimitMsPerSec);
         Future<ScanInfoPerBlockPool> result = 
           reportCompileThreadPool.submit(reportCompiler);
         compilersInProgress.put(i, result);
@@ -570,26 +610,63 @@ private static boolean isBlockMetaFile(String blockId, String metaFile) {
   private static class ReportCompiler 
   implements Callable<ScanInfoPerBlockPool> {
     private final FsVolumeSpi volume;
+    private final int throttleLimitMsPerSec;
+    /** Start of the current one second throttling period */
+    private long periodStart;
+    /** Time spent throttled, for the per-volume report */
+    private long throttledMs = 0;
 
-    public ReportCompiler(FsVolumeSpi volume) {
+    public ReportCompiler(FsVolumeSpi volume, int throttleLimitMsPerSec) {
       this.volume = volume;
+      this.throttleLimitMsPerSec = throttleLimitMsPerSec;
     }
 
     @Override
     public ScanInfoPerBlockPool call() throws Exception {
+      final long start = Time.monotonicNow();
+      periodStart = start;
       String[] bpList = volume.getBlockPoolList();
       ScanInfoPerBlockPool result = new ScanInfoPerBlockPool(bpList.length);
+      int numEntries = 0;
       for (String bpid : bpList) {
         LinkedList<ScanInfo> report = new LinkedList<ScanInfo>();
         File bpFinalizedDir = volume.getFinalizedDir(bpid);
         result.put(bpid, compileReport(volume, bpFinalizedDir, report));
+        numEntries += report.size();
       }
+      LOG.info("Compiled report for volume " + volume.getBasePath() + ": "
+          + numEntries + " entries in " + (Time.monotonicNow() - start)
+          + " ms, " + throttledMs + " ms of which throttled");
       return result;
     }
 
+    /**
+     * Sleep for the rest of the current second once this compiler has
+     * been scanning for throttleLimitMsPerSec in it.
+     */
+    private void throttle() {
+      if (throttleLimitMsPerSec >= 1000) {
+        return;
+      }
+      long now = Time.monotonicNow();
+      long elapsed = now - periodStart;
+      if (elapsed >= 1000) {
+        periodStart = now;
+      } else if (elapsed >= throttleLimitMsPerSec) {
+        try {
+          Thread.sleep(1000 - elapsed);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        periodStart = Time.monotonicNow();
+        throttledMs += periodStart - now;
+      }
+    }
+
     /** Compile list {@link ScanInfo} for the blocks in the directory <dir> */
     private LinkedList<ScanInfo> compileReport(FsVolumeSpi vol, File dir,
         LinkedList<ScanInfo> report) {
+      throttle();
       File[] files;
       try {
         files = FileUtil.listFiles(dir);
@@ -29,6 +29,7 @@
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Time;
 
 /** 
  * This class defines a replica in a pipeline, which
@@ -40,9 +41,13 @@
  */
 public class ReplicaInPipeline extends ReplicaInfo
                         implements ReplicaInPipelineInterface {
+  /** How often {@link #stopWriter(long)} checks that the writer is alive */
+  private static final long WRITER_POLL_MS = 100;
+
   private long bytesAcked;
   private long bytesOnDisk;
   private byte[] lastChecksum;  
+  /** The thread running the task writing to this replica, if any */
   private Thread writer;
   
   /**
@@ -135,12 +140,21 @@ public synchronized ChunkChecksum getLastChecksumAndDataLen() {
   }
 
   /**
-   * Set the thread that is writing to this replica
+   * Set the thread that is writing to this replica. It remains the writer
+   * until the writing task releases it with {@link #releaseWriter(Thread)}.
    * @param writer a thread writing to this replica
    */
-  public void setWriter(Thread writer) {
+  public synchronized void setWriter(Thread writer) {
     this.writer = writer;
   }
+
+  @Override // ReplicaInPipelineInterface
+  public synchronized void releaseWriter(Thread writer) {
+    if (this.writer == writer) {
+      this.writer = null;
+      notifyAll();
+    }
+  }
   
   @Override  // Object
   public boolean equals(Object o) {
@@ -148,22 +162,34 @@ public boolean equals(Object o) {
   }
   
   /**
-   * Interrupt the writing thread and wait until it dies
-   * @throws IOException the waiting is interrupted
+   * Interrupt the writing task and wait until it ends.
+   * The writer may be a pooled transfer thread that outlives the task, so
+   * this waits for the task to release the replica, not for the thread to
+   * die, and never interrupts a thread that has moved on to other work.
+   * @throws IOException the waiting is interrupted or times out
    */
-  public void stopWriter(long xceiverStopTimeout) throws IOException {
-    if (writer != null && writer != Thread.currentThread() && writer.isAlive()) {
-      writer.interrupt();
-      try {
-        writer.join(xceiverStopTimeout);
-        if (writer.isAlive()) {
-          final String msg = "Join on writer thread " + writer + " timed out";
-          DataNode.LOG.warn(msg + "\n" + StringUtils.getStackTrace(writer));
+  public synchronized void stopWriter(long xceiverStopTimeout)
+      throws IOException {
+    final Thread stopping = writer;
+    if (stopping == null || stopping == Thread.currentThread()) {
+      return;
+    }
+    stopping.interrupt();
+    final long deadline = Time.monotonicNow() + xceiverStopTimeout;
+    try {
+      while (writer == stopping && stopping.isAlive()) {
+        final long remaining = deadline - Time.monotonicNow();
+        if (remaining <= 0) {
+          final String msg = "Join on writer thread " + stopping
+              + " timed out";
+          DataNode.LOG.warn(msg + "\n" + StringUtils.getStackTrace(stopping));
           throw new IOException(msg);
         }
-      } catch (InterruptedException e) {
-        throw new IOException("Waiting for writer thread is interrupted.");
+        // a writer that died without releasing the replica does not notify
+        wait(Math.min(remaining, WRITER_POLL_MS));
       }
+    } catch (InterruptedException e) {
+      throw new IOException("Waiting for writer thread is interrupted.");
     }
   }
   
@@ -56,6 +56,13 @@ public interface ReplicaInPipelineInterface extends Replica {
    * to that checksum
    */
   public ChunkChecksum getLastChecksumAndDataLen();
+
+  /**
+   * Called when the task writing to this replica ends. The thread that ran
+   * it is no longer this replica's writer, and a recovery does not stop it.
+   * @param writer the thread that ran the writing task
+   */
+  public void releaseWriter(Thread writer);
   
   /**
    * Create output streams for writing to this replica, 
@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_BALANCED_PENDING_BYTES_THRESHOLD_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_BALANCED_PENDING_BYTES_THRESHOLD_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_LATENCY_RATIO_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_LATENCY_RATIO_KEY;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.DiskChecker.DiskOutOfSpaceException;
+
+/**
+ * A DN volume choosing policy which takes into account how busy each volume
+ * is, as tracked by its {@link VolumeIoStats}. Volumes whose average write
+ * latency is well above that of the other volumes are skipped, until their
+ * average expires for lack of writes and they are tried again. Of the rest,
+ * the volumes with at most one open replica more than the least loaded one,
+ * and at most balancedPendingBytesThreshold more bytes written to open
+ * replicas, are chosen in round-robin order. A replica counts as open from
+ * the moment its volume is chosen, so a burst of allocations is spread
+ * across volumes rather than sent to the one that looked least loaded. When
+ * all volumes are idle this is plain round robin.
+ */
+public class LoadAwareVolumeChoosingPolicy<V extends FsVolumeSpi>
+    implements VolumeChoosingPolicy<V>, Configurable {
+
+  private static final Log LOG =
+      LogFactory.getLog(LoadAwareVolumeChoosingPolicy.class);
+
+  /**
+   * Volumes with at most this many open replicas more than the least loaded
+   * volume are considered balanced.
+   */
+  private static final int BALANCED_OPEN_REPLICAS_THRESHOLD = 1;
+
+  private float slowVolumeLatencyRatio =
+      DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_LATENCY_RATIO_DEFAULT;
+  private long balancedPendingBytesThreshold =
+      DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_BALANCED_PENDING_BYTES_THRESHOLD_DEFAULT;
+
+  private final VolumeChoosingPolicy<V> roundRobinPolicy =
+      new RoundRobinVolumeChoosingPolicy<V>();
+
+  @Override
+  public synchronized void setConf(Configuration conf) {
+    slowVolumeLatencyRatio = conf.getFloat(
+        DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_LATENCY_RATIO_KEY,
+        DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_LATENCY_RATIO_DEFAULT);
+    balancedPendingBytesThreshold = conf.getLong(
+        DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_BALANCED_PENDING_BYTES_THRESHOLD_KEY,
+        DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_BALANCED_PENDING_BYTES_THRESHOLD_DEFAULT);
+
+    LOG.info("Load aware volume choosing policy initialized: " +
+        DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_LATENCY_RATIO_KEY +
+        " = " + slowVolumeLatencyRatio + ", " +
+        DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_BALANCED_PENDING_BYTES_THRESHOLD_KEY +
+        " = " + balancedPendingBytesThreshold);
+
+    if (slowVolumeLatencyRatio < 1.0) {
+      LOG.warn("The value of " +
+          DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_SLOW_VOLUME_LATENCY_RATIO_KEY +
+          " is less than 1.0 so volumes with median write latency will be" +
+          " considered slow");
+    }
+  }
+
+  @Override
+  public synchronized Configuration getConf() {
+    // Nothing to do. Only added to fulfill the Configurable contract.
+    return null;
+  }
+
+  @Override
+  public synchronized V chooseVolume(List<V> volumes,
+      final long replicaSize) throws IOException {
+    if (volumes.size() < 1) {
+      throw new DiskOutOfSpaceException("No more available volumes");
+    }
+
+    List<V> candidates = new ArrayList<V>(volumes.size());
+    for (V volume : volumes) {
+      if (volume.getAvailable() > replicaSize) {
+        candidates.add(volume);
+      }
+    }
+    if (candidates.isEmpty()) {
+      // Let the round robin policy report the lack of space.
+      return roundRobinPolicy.chooseVolume(volumes, replicaSize);
+    }
+
+    candidates = removeSlowVolumes(candidates);
+    List<V> leastLoaded = removeLoadedVolumes(candidates);
+
+    V volume = roundRobinPolicy.chooseVolume(leastLoaded, replicaSize);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Selecting " + volume + " with " + getOpenReplicas(volume) +
+          " open replicas and " + getPendingWriteBytes(volume) +
+          " pending write bytes out of " + leastLoaded.size() +
+          " balanced volumes for write of block size " + replicaSize);
+    }
+    return volume;
+  }
+
+  /**
+   * @return the volumes with at most BALANCED_OPEN_REPLICAS_THRESHOLD more
+   *         open replicas than the least loaded volume and, of those, the
+   *         volumes with at most balancedPendingBytesThreshold more pending
+   *         write bytes than the least loaded one.
+   */
+  private List<V> removeLoadedVolumes(List<V> volumes) {
+    int leastOpen = Integer.MAX_VALUE;
+    for (V volume : volumes) {
+      leastOpen = Math.min(leastOpen, getOpenReplicas(volume));
+    }
+    List<V> fewestOpen = new ArrayList<V>(volumes.size());
+    for (V volume : volumes) {
+      if (getOpenReplicas(volume) <=
+          leastOpen + BALANCED_OPEN_REPLICAS_THRESHOLD) {
+        fewestOpen.add(volume);
+      }
+    }
+
+    long leastPending = Long.MAX_VALUE;
+    for (V volume : fewestOpen) {
+      leastPending = Math.min(leastPending, getPendingWriteBytes(volume));
+    }
+    List<V> leastLoaded = new ArrayList<V>(fewestOpen.size());
+    for (V volume : fewestOpen) {
+      if (getPendingWriteBytes(volume) - leastPending <=
+          balancedPendingBytesThreshold) {
+        leastLoaded.add(volume);
+      }
+    }
+    return leastLoaded;
+  }
+
+  /**
+   * @return the volumes whose average write latency is at most
+   *         slowVolumeLatencyRatio times the median, or all of them if that
+   *         would leave none. Volumes without a recent latency average are
+   *         kept and left out of the median; a volume skipped as slow gets
+   *         no writes, so its average expires and it is tried again.
+   */
+  private List<V> removeSlowVolumes(List<V> volumes) {
+    long[] latencies = new long[volumes.size()];
+    int numTimed = 0;
+    for (V volume : volumes) {
+      long latency = getAverageWriteLatencyNanos(volume);
+      if (latency > 0) {
+        latencies[numTimed++] = latency;
+      }
+    }
+    if (numTimed == 0) {
+      return volumes;
+    }
+    Arrays.sort(latencies, 0, numTimed);
+    long median = latencies[numTimed / 2];
+
+    List<V> fastVolumes = new ArrayList<V>(volumes.size());
+    for (V volume : volumes) {
+      if (getAverageWriteLatencyNanos(volume) <=
+          median * slowVolumeLatencyRatio) {
+        fastVolumes.add(volume);
+      } else if (LOG.isDebugEnabled()) {
+        LOG.debug("Skipping slow volume " + volume + " with average write" +
+            " latency " + getAverageWriteLatencyNanos(volume) + " ns");
+      }
+    }
+    return fastVolumes.isEmpty() ? volumes : fastVolumes;
+  }
+
+  private static int getOpenReplicas(FsVolumeSpi volume) {
+    VolumeIoStats stats = volume.getIoStats();
+    return stats == null ? 0 : stats.getOpenReplicas();
+  }
+
+  private static long getPendingWriteBytes(FsVolumeSpi volume) {
+    VolumeIoStats stats = volume.getIoStats();
+    return stats == null ? 0 : stats.getPendingWriteBytes();
+  }
+
+  private static long getAverageWriteLatencyNanos(FsVolumeSpi volume) {
+    VolumeIoStats stats = volume.getIoStats();
+    return stats == null ? 0 : stats.getAverageWriteLatencyNanos();
+  }
+}
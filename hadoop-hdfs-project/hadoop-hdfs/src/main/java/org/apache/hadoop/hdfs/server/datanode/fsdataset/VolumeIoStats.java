@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.Timer;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Tracks the write load of a volume: the number of replicas created on it and
+ * still being written, the number of bytes written to those replicas, and a
+ * moving average of how long block
+ * data writes take, including their flush or sync. A volume whose writes
+ * back up or slow down is busy or failing, and is a poor target for new
+ * replicas.
+ */
+@InterfaceAudience.Private
+public class VolumeIoStats {
+  /** Weight of the newest sample in the write latency average. */
+  private static final double LATENCY_SAMPLE_WEIGHT = 0.125;
+
+  /**
+   * The write latency average is forgotten when no write has been timed for
+   * this long, so that a volume skipped for being slow is tried again.
+   */
+  static final long LATENCY_EXPIRY_MS = 60 * 1000;
+
+  private final Timer timer;
+
+  private final AtomicInteger openReplicas = new AtomicInteger();
+
+  private final AtomicLong pendingWriteBytes = new AtomicLong();
+
+  /**
+   * The average is a heuristic, so concurrent updates that race and drop
+   * a sample are acceptable.
+   */
+  private volatile long averageWriteLatencyNanos = 0;
+  private volatile long lastWriteLatencyMs = 0;
+
+  public VolumeIoStats() {
+    this(new Timer());
+  }
+
+  @VisibleForTesting
+  VolumeIoStats(Timer timer) {
+    this.timer = timer;
+  }
+
+  /**
+   * Record a replica created on the volume for writing. It is counted as
+   * soon as the volume is chosen for it, before any of its bytes arrive.
+   */
+  public void addOpenReplica() {
+    openReplicas.incrementAndGet();
+  }
+
+  /**
+   * Release a replica recorded by {@link #addOpenReplica()} once its writer
+   * is closed, whether or not the write succeeded.
+   */
+  public void removeOpenReplica() {
+    openReplicas.decrementAndGet();
+  }
+
+  /**
+   * Record bytes written to a replica which is still being written. Until
+   * its writer is closed they may not have reached the disk.
+   * @param bytes the number of bytes written
+   */
+  public void addPendingWriteBytes(long bytes) {
+    pendingWriteBytes.addAndGet(bytes);
+  }
+
+  /**
+   * Release the bytes recorded by {@link #addPendingWriteBytes(long)} for a
+   * replica once its writer is closed, whether or not the write succeeded.
+   * @param bytes the number of bytes recorded for the replica
+   */
+  public void removePendingWriteBytes(long bytes) {
+    pendingWriteBytes.addAndGet(-bytes);
+  }
+
+  /**
+   * Add a sample to the write latency average.
+   * @param latencyNanos how long a block data write and its flush or sync
+   *          took
+   */
+  public void addWriteLatency(long latencyNanos) {
+    long average = getAverageWriteLatencyNanos();
+    averageWriteLatencyNanos = average == 0 ? latencyNanos :
+        (long) (average + (latencyNanos - average) * LATENCY_SAMPLE_WEIGHT);
+    lastWriteLatencyMs = timer.monotonicNow();
+  }
+
+  /**
+   * @return the number of replicas created on the volume and still being
+   *         written.
+   */
+  public int getOpenReplicas() {
+    return openReplicas.get();
+  }
+
+  /**
+   * @return the number of bytes written to the replicas still being written
+   *         to the volume.
+   */
+  public long getPendingWriteBytes() {
+    return pendingWriteBytes.get();
+  }
+
+  /**
+   * @return the moving average of the block data write latency, or 0 if no
+   *         write to the volume was timed in the last LATENCY_EXPIRY_MS.
+   */
+  public long getAverageWriteLatencyNanos() {
+    if (timer.monotonicNow() - lastWriteLatencyMs > LATENCY_EXPIRY_MS) {
+      return 0;
+    }
+    return averageWriteLatencyNanos;
+  }
+}
@@ -140,7 +140,7 @@ public StorageReport[] getStorageReports(String bpid)
   }
 
   @Override
-  public synchronized FsVolumeImpl getVolume(final ExtendedBlock b) {
+  public FsVolumeImpl getVolume(final ExtendedBlock b) {
     final ReplicaInfo r =  volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
     return r != null? (FsVolumeImpl)r.getVolume(): null;
   }
@@ -439,10 +439,8 @@ File getBlockFile(String bpid, Block b) throws IOException {
    */
   private File getBlockFileNoExistsCheck(ExtendedBlock b)
       throws IOException {
-    final File f;
-    synchronized(this) {
-      f = getFile(b.getBlockPoolId(), b.getLocalBlock().getBlockId());
-    }
+    final File f = getFile(b.getBlockPoolId(),
+        b.getLocalBlock().getBlockId());
     if (f == null) {
       throw new IOException("Block " + b + " is not valid");
     }
@@ -831,6 +829,8 @@ public synchronized ReplicaInPipeline createRbw(StorageType storageType,
     ReplicaBeingWritten newReplicaInfo = new ReplicaBeingWritten(b.getBlockId(), 
         b.getGenerationStamp(), v, f.getParentFile());
     volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
+    // counted before the next volume is chosen; the writer releases it
+    v.getIoStats().addOpenReplica();
     return newReplicaInfo;
   }
   
@@ -942,10 +942,11 @@ public synchronized ReplicaInPipeline convertTemporaryToRbw(
     BlockPoolSlice bpslice = v.getBlockPoolSlice(b.getBlockPoolId());
     final File dest = moveBlockFiles(b.getLocalBlock(), temp.getBlockFile(), 
         bpslice.getRbwDir());
-    // create RBW
+    // create RBW. The transfer is complete, so the replica has no writer
+    // until a client recovers the pipeline.
     final ReplicaBeingWritten rbw = new ReplicaBeingWritten(
         blockId, numBytes, expectedGs,
-        v, dest.getParentFile(), Thread.currentThread());
+        v, dest.getParentFile(), null);
     rbw.setBytesAcked(visible);
     // overwrite the RBW in the volume map
     volumeMap.add(b.getBlockPoolId(), rbw);
@@ -968,6 +969,8 @@ public synchronized ReplicaInPipeline createTemporary(StorageType storageType,
     ReplicaInPipeline newReplicaInfo = new ReplicaInPipeline(b.getBlockId(), 
         b.getGenerationStamp(), v, f.getParentFile());
     volumeMap.add(b.getBlockPoolId(), newReplicaInfo);
+    // counted before the next volume is chosen; the writer releases it
+    v.getIoStats().addOpenReplica();
     
     return newReplicaInfo;
   }
@@ -1181,10 +1184,7 @@ private boolean isValid(final ExtendedBlock b, final ReplicaState state) {
    */
   File validateBlockFile(String bpid, Block b) {
     //Should we check for metadata file too?
-    final File f;
-    synchronized(this) {
-      f = getFile(bpid, b.getBlockId());
-    }
+    final File f = getFile(bpid, b.getBlockId());
     
     if(f != null ) {
       if(f.exists())
@@ -1364,7 +1364,7 @@ public boolean isCached(String bpid, long blockId) {
   }
 
   @Override // FsDatasetSpi
-  public synchronized boolean contains(final ExtendedBlock block) {
+  public boolean contains(final ExtendedBlock block) {
     final long blockId = block.getLocalBlock().getBlockId();
     return getFile(block.getBlockPoolId(), blockId) != null;
   }
@@ -1645,7 +1645,7 @@ public ReplicaInfo getReplica(String bpid, long blockId) {
   }
 
   @Override 
-  public synchronized String getReplicaString(String bpid, long blockId) {
+  public String getReplicaString(String bpid, long blockId) {
     final Replica r = volumeMap.get(bpid, blockId);
     return r == null? "null": r.toString();
   }
@@ -1806,7 +1806,7 @@ private FinalizedReplica updateReplicaUnderRecovery(
   }
 
   @Override // FsDatasetSpi
-  public synchronized long getReplicaVisibleLength(final ExtendedBlock block)
+  public long getReplicaVisibleLength(final ExtendedBlock block)
   throws IOException {
     final Replica replica = getReplicaInfo(block.getBlockPoolId(), 
         block.getBlockId());
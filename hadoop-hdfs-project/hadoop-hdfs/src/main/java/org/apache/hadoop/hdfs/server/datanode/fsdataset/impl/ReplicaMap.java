@@ -18,8 +18,8 @@
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.hdfs.protocol.Block;
@@ -27,14 +27,20 @@
 
 /**
  * Maintains the replica map. 
+ * 
+ * Updates are synchronized on the mutex, which is usually the dataset, so
+ * that they are atomic with the dataset operations making them. Lookups of
+ * a single replica or block pool do not take the mutex; each block pool is
+ * kept in a hash-striped concurrent map, so a dataset operation blocked on
+ * a slow disk does not hold up lookups of replicas on other disks.
  */
 class ReplicaMap {
-  // Object using which this class is synchronized
+  // Object using which updates of this class are synchronized
   private final Object mutex;
   
   // Map of block pool Id to another map of block Id to ReplicaInfo.
   private final Map<String, Map<Long, ReplicaInfo>> map =
-    new HashMap<String, Map<Long, ReplicaInfo>>();
+    new ConcurrentHashMap<String, Map<Long, ReplicaInfo>>();
   
   ReplicaMap(Object mutex) {
     if (mutex == null) {
@@ -45,9 +51,7 @@ class ReplicaMap {
   }
   
   String[] getBlockPoolList() {
-    synchronized(mutex) {
-      return map.keySet().toArray(new String[map.keySet().size()]);   
-    }
+    return map.keySet().toArray(new String[0]);
   }
   
   private void checkBlockPool(String bpid) {
@@ -90,10 +94,8 @@ ReplicaInfo get(String bpid, Block block) {
    */
   ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
-    synchronized(mutex) {
-      Map<Long, ReplicaInfo> m = map.get(bpid);
-      return m != null ? m.get(blockId) : null;
-    }
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    return m != null ? m.get(blockId) : null;
   }
   
   /**
@@ -111,7 +113,7 @@ ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
       Map<Long, ReplicaInfo> m = map.get(bpid);
       if (m == null) {
         // Add an entry for block pool if it does not exist already
-        m = new HashMap<Long, ReplicaInfo>();
+        m = new ConcurrentHashMap<Long, ReplicaInfo>();
         map.put(bpid, m);
       }
       return  m.put(replicaInfo.getBlockId(), replicaInfo);
@@ -174,19 +176,16 @@ ReplicaInfo remove(String bpid, long blockId) {
    * @return the number of replicas in the map
    */
   int size(String bpid) {
-    Map<Long, ReplicaInfo> m = null;
-    synchronized(mutex) {
-      m = map.get(bpid);
-      return m != null ? m.size() : 0;
-    }
+    Map<Long, ReplicaInfo> m = map.get(bpid);
+    return m != null ? m.size() : 0;
   }
   
   /**
    * Get a collection of the replicas for given block pool
-   * This method is <b>not synchronized</b>. It needs to be synchronized
-   * externally using the mutex, both for getting the replicas
-   * values from the map and iterating over it. Mutex can be accessed using
-   * {@link #getMutext()} method.
+   * This method is <b>not synchronized</b>. Iterating over the collection
+   * is safe, but to see a view which does not change during the iteration
+   * it needs to be synchronized externally using the mutex. Mutex can be
+   * accessed using {@link #getMutext()} method.
    * 
    * @param bpid block pool id
    * @return a collection of the replicas belonging to the block pool
@@ -203,7 +202,7 @@ void initBlockPool(String bpid) {
       Map<Long, ReplicaInfo> m = map.get(bpid);
       if (m == null) {
         // Add an entry for block pool if it does not exist already
-        m = new HashMap<Long, ReplicaInfo>();
+        m = new ConcurrentHashMap<Long, ReplicaInfo>();
         map.put(bpid, m);
       }
     }
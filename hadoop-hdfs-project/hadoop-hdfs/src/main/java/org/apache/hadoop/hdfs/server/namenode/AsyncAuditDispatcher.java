@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Daemon;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Moves the work of audit logging off the RPC handler threads.
+ * <p>
+ * Handlers only capture the raw attributes of an audit event into a bounded
+ * queue; a single daemon thread drains the queue in batches, builds the
+ * {@link org.apache.hadoop.fs.FileStatus} and hands each event to the
+ * configured {@link AuditLogger}s. When the queue is full, events are either
+ * dropped (and counted) or the handler blocks until there is room, depending
+ * on configuration.
+ */
+@InterfaceAudience.Private
+class AsyncAuditDispatcher {
+  static final Log LOG = LogFactory.getLog(AsyncAuditDispatcher.class);
+
+  /** Maximum number of events drained from the queue in one batch. */
+  private static final int MAX_BATCH_SIZE = 1024;
+
+  /** An audit event as captured on the handler thread. */
+  static class AuditEvent {
+    final boolean succeeded;
+    final UserGroupInformation ugi;
+    final InetAddress addr;
+    final String cmd;
+    final String src;
+    final String dst;
+    final HdfsFileStatus stat;
+    final boolean webHdfs;
+
+    AuditEvent(boolean succeeded, UserGroupInformation ugi, InetAddress addr,
+        String cmd, String src, String dst, HdfsFileStatus stat,
+        boolean webHdfs) {
+      this.succeeded = succeeded;
+      this.ugi = ugi;
+      this.addr = addr;
+      this.cmd = cmd;
+      this.src = src;
+      this.dst = dst;
+      this.stat = stat;
+      this.webHdfs = webHdfs;
+    }
+  }
+
+  /** Receives the events drained by the dispatcher thread. */
+  interface Sink {
+    void dispatch(AuditEvent event);
+  }
+
+  private final BlockingQueue<AuditEvent> queue;
+  private final boolean blockWhenFull;
+  private final Sink sink;
+  private final AtomicLong numDropped = new AtomicLong();
+  private final Daemon dispatcherThread;
+  private volatile boolean running = true;
+
+  AsyncAuditDispatcher(int capacity, boolean blockWhenFull, Sink sink) {
+    Preconditions.checkArgument(capacity > 0,
+        "Audit event queue capacity must be positive: %s", capacity);
+    this.queue = new ArrayBlockingQueue<AuditEvent>(capacity);
+    this.blockWhenFull = blockWhenFull;
+    this.sink = sink;
+    this.dispatcherThread = new Daemon(new Dispatcher());
+    this.dispatcherThread.setName("AuditEventDispatcher");
+  }
+
+  void start() {
+    dispatcherThread.start();
+  }
+
+  /**
+   * Stop the dispatcher thread and flush the events still in the queue from
+   * the calling thread.
+   */
+  void stop() {
+    running = false;
+    dispatcherThread.interrupt();
+    try {
+      dispatcherThread.join(3000);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+    List<AuditEvent> remaining = new ArrayList<AuditEvent>();
+    queue.drainTo(remaining);
+    dispatchAll(remaining);
+  }
+
+  /**
+   * Queue an audit event. Depending on the configured policy this either
+   * drops the event or waits for room when the queue is full.
+   */
+  void enqueue(AuditEvent event) {
+    if (!running) {
+      sink.dispatch(event);
+      return;
+    }
+    if (blockWhenFull) {
+      try {
+        queue.put(event);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        numDropped.incrementAndGet();
+      }
+    } else if (!queue.offer(event)) {
+      if (numDropped.getAndIncrement() == 0) {
+        LOG.warn("Audit event queue is full, dropping audit events");
+      }
+    }
+  }
+
+  /** @return the number of events waiting to be dispatched. */
+  int getQueueSize() {
+    return queue.size();
+  }
+
+  /** @return the number of events dropped because the queue was full. */
+  long getNumDropped() {
+    return numDropped.get();
+  }
+
+  private void dispatchAll(List<AuditEvent> events) {
+    for (AuditEvent event : events) {
+      try {
+        sink.dispatch(event);
+      } catch (RuntimeException re) {
+        LOG.warn("Failed to log audit event " + event.cmd + " on "
+            + event.src, re);
+      }
+    }
+  }
+
+  private class Dispatcher implements Runnable {
+    @Override
+    public void run() {
+      final List<AuditEvent> batch = new ArrayList<AuditEvent>(MAX_BATCH_SIZE);
+      while (running) {
+        try {
+          batch.add(queue.take());
+          queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+          dispatchAll(batch);
+        } catch (InterruptedException ie) {
+          if (running) {
+            LOG.warn("AuditEventDispatcher thread received "
+                + "InterruptedException.", ie);
+          }
+        } catch (Throwable t) {
+          LOG.error("AuditEventDispatcher thread received Runtime exception.",
+              t);
+        } finally {
+          batch.clear();
+        }
+      }
+    }
+  }
+}
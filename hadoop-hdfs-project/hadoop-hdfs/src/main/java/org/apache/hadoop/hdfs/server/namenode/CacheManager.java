@@ -23,6 +23,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIST_CACHE_DIRECTIVES_NUM_RESPONSES_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIST_CACHE_POOLS_NUM_RESPONSES;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIST_CACHE_POOLS_NUM_RESPONSES_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_MAX_LOCK_HOLD_MS;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_MAX_LOCK_HOLD_MS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS_DEFAULT;
 
@@ -157,6 +159,12 @@ public final class CacheManager {
    */
   private final long scanIntervalMs;
 
+  /**
+   * Longest time in milliseconds a rescan holds the namesystem write lock
+   * while scanning directives, or 0 to scan them in one go.
+   */
+  private final long scanMaxLockHoldMs;
+
   /**
    * All cached blocks.
    */
@@ -201,6 +209,9 @@ public PersistState(CacheManagerSection section,
     scanIntervalMs = conf.getLong(
         DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS,
         DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS_DEFAULT);
+    scanMaxLockHoldMs = conf.getLong(
+        DFS_NAMENODE_PATH_BASED_CACHE_MAX_LOCK_HOLD_MS,
+        DFS_NAMENODE_PATH_BASED_CACHE_MAX_LOCK_HOLD_MS_DEFAULT);
     float cachedBlocksPercent = conf.getFloat(
           DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT,
           DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT_DEFAULT);
@@ -231,7 +242,7 @@ public void startMonitorThread() {
     try {
       if (this.monitor == null) {
         this.monitor = new CacheReplicationMonitor(namesystem, this,
-            scanIntervalMs, crmLock);
+            scanIntervalMs, scanMaxLockHoldMs, crmLock);
         this.monitor.start();
       }
     } finally {
@@ -275,6 +286,15 @@ public Collection<CacheDirective> getCacheDirectives() {
     return Collections.unmodifiableCollection(directivesById.values());
   }
   
+  /**
+   * @return true if the given directive is still registered, i.e. it has
+   *         not been removed or replaced.
+   */
+  public boolean hasDirective(CacheDirective directive) {
+    assert namesystem.hasReadLock();
+    return directivesById.get(directive.getId()) == directive;
+  }
+
   @VisibleForTesting
   public GSet<CachedBlock, CachedBlock> getCachedBlocks() {
     assert namesystem.hasReadLock();
@@ -186,9 +186,16 @@ public int getWriteHoldCount() {
   private final NameCache<ByteArray> nameCache;
 
   FSDirectory(FSNamesystem ns, Configuration conf) {
+    final float inodeMapPercent = conf.getFloat(
+        DFSConfigKeys.DFS_NAMENODE_INODE_MAP_CAPACITY_PERCENT_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INODE_MAP_CAPACITY_PERCENT_DEFAULT);
+    Preconditions.checkArgument(inodeMapPercent > 0 && inodeMapPercent <= 100,
+        "%s must be in (0, 100], but was %s",
+        DFSConfigKeys.DFS_NAMENODE_INODE_MAP_CAPACITY_PERCENT_KEY,
+        inodeMapPercent);
     this.dirLock = new ReentrantReadWriteLock(true); // fair
     rootDir = createRoot(ns);
-    inodeMap = INodeMap.newInstance(rootDir);
+    inodeMap = INodeMap.newInstance(rootDir, inodeMapPercent);
     int configuredLimit = conf.getInt(
         DFSConfigKeys.DFS_LIST_LIMIT, DFSConfigKeys.DFS_LIST_LIMIT_DEFAULT);
     this.lsLimit = configuredLimit>0 ?
@@ -223,9 +230,13 @@ public int getWriteHoldCount() {
     int threshold = conf.getInt(
         DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_THRESHOLD_KEY,
         DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_THRESHOLD_DEFAULT);
+    int runtimeTrackingSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_RUNTIME_TRACKING_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_RUNTIME_TRACKING_SIZE_DEFAULT);
     NameNode.LOG.info("Caching file names occuring more than " + threshold
-        + " times");
-    nameCache = new NameCache<ByteArray>(threshold);
+        + " times" + (runtimeTrackingSize > 0 ? ", tracking up to "
+        + runtimeTrackingSize + " names after startup" : ""));
+    nameCache = new NameCache<ByteArray>(threshold, runtimeTrackingSize);
     namesystem = ns;
 
     ezManager = new EncryptionZoneManager(this, conf);
@@ -853,9 +864,11 @@ boolean addSourceToDestination() {
       final INode toDst;
       if (withCount == null) {
         srcChild.setLocalName(dstChildName);
+        cacheName(srcChild);
         toDst = srcChild;
       } else {
         withCount.getReferredINode().setLocalName(dstChildName);
+        cacheName(withCount.getReferredINode());
         int dstSnapshotId = dstIIP.getLatestSnapshotId();
         toDst = new INodeReference.DstReference(
                 dstParent.asDirectory(), withCount, dstSnapshotId);
@@ -1718,6 +1731,7 @@ void unprotectedMkdir(long inodeId, INodesInPath inodesInPath,
     assert hasWriteLock();
     final INodeDirectory dir = new INodeDirectory(inodeId, name, permission,
         timestamp);
+    cacheName(dir);
     if (addChild(inodesInPath, pos, dir, true)) {
       if (aclEntries != null) {
         AclStorage.updateINodeAcl(dir, aclEntries, Snapshot.CURRENT_STATE_ID);
@@ -2209,6 +2223,23 @@ boolean setTimes(INode inode, long mtime, long atime, boolean force,
     }
   }
 
+  /**
+   * Set the times of an inode that is not in any snapshot. The caller holds
+   * the namesystem read lock and the write lock of the namespace partition
+   * containing the inode, which excludes concurrent updates of the inode, so
+   * only the read lock of the directory is needed here.
+   */
+  boolean setTimesInPartition(INode inode, long mtime, long atime,
+      boolean force) throws QuotaExceededException {
+    readLock();
+    try {
+      return unprotectedSetTimes(inode, mtime, atime, force,
+          Snapshot.CURRENT_STATE_ID);
+    } finally {
+      readUnlock();
+    }
+  }
+
   boolean unprotectedSetTimes(String src, long mtime, long atime, boolean force) 
       throws UnresolvedLinkException, QuotaExceededException {
     assert hasWriteLock();
@@ -2219,7 +2250,8 @@ boolean unprotectedSetTimes(String src, long mtime, long atime, boolean force)
 
   private boolean unprotectedSetTimes(INode inode, long mtime,
       long atime, boolean force, int latest) throws QuotaExceededException {
-    assert hasWriteLock();
+    // Holders of only the read lock also hold the inode's partition lock.
+    assert hasReadLock();
     boolean status = false;
     if (mtime != -1) {
       inode = inode.setModificationTime(mtime, latest);
@@ -2854,12 +2886,12 @@ private static INode resolveLastINode(String src, INodesInPath iip)
   }
 
   /**
-   * Caches frequently used file names to reuse file name objects and
-   * reduce heap size.
+   * Caches frequently used file and directory names to reuse name objects
+   * and reduce heap size.
    */
   void cacheName(INode inode) {
-    // Name is cached only for files
-    if (!inode.isFile()) {
+    // Name is cached only for files and directories
+    if (!inode.isFile() && !inode.isDirectory()) {
       return;
     }
     ByteArray name = new ByteArray(inode.getLocalNameBytes());
@@ -27,6 +27,8 @@
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -96,10 +98,12 @@
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.security.token.delegation.DelegationKey;
+import org.apache.hadoop.util.Daemon;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * FSEditLog maintains a log of the namespace modifications.
@@ -175,6 +179,10 @@ private enum State {
   
   private final List<URI> editsDirs;
 
+  // if set, RPC handlers leave the sync of their edits to the syncer
+  private final boolean asyncLogging;
+  private volatile EditLogSyncer syncer = null;
+
   private final ThreadLocal<OpInstanceCache> cache =
       new ThreadLocal<OpInstanceCache>() {
     @Override
@@ -224,6 +232,9 @@ protected synchronized TransactionId initialValue() {
     this.editsDirs = Lists.newArrayList(editsDirs);
 
     this.sharedEditsDirs = FSNamesystem.getSharedEditsDirs(conf);
+    this.asyncLogging = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT);
   }
   
   public synchronized void initJournalsForWrite() {
@@ -305,6 +316,10 @@ synchronized void openForWrite() throws IOException {
     
     startLogSegmentAndWriteHeaderTxn(segmentTxId);
     assert state == State.IN_SEGMENT : "Bad state: " + state;
+    if (asyncLogging && syncer == null) {
+      syncer = new EditLogSyncer();
+      syncer.start();
+    }
   }
   
   /**
@@ -334,7 +349,30 @@ public synchronized boolean isOpenForRead() {
   /**
    * Shutdown the file store.
    */
-  synchronized void close() {
+  void close() {
+    // The syncer answers the calls it has queued while the segment is still
+    // open, and needs the monitor of this log to sync them.
+    stopSyncer();
+    closeLog();
+  }
+
+  /**
+   * Stop the syncer, if any, and wait for it to answer the calls queued so
+   * far, so that a later {@link #openForWrite()} never runs two of them.
+   */
+  private void stopSyncer() {
+    final EditLogSyncer s;
+    synchronized (this) {
+      s = syncer;
+      syncer = null;
+    }
+    if (s != null) {
+      s.shutdown();
+      Uninterruptibles.joinUninterruptibly(s);
+    }
+  }
+
+  private synchronized void closeLog() {
     if (state == State.CLOSED) {
       LOG.debug("Closing log when already closed");
       return;
@@ -525,7 +563,7 @@ void logSyncAll() {
       id.txid = txid;
     }
     // Then make sure we're synced up to this point
-    logSync();
+    syncThroughMyTxId();
   }
   
   /**
@@ -555,8 +593,39 @@ void logSyncAll() {
    * Because this step is unsynchronized, actions that need to avoid
    * concurrency with sync() should be synchronized and also call
    * waitForSyncToFinish() before assuming they are running alone.
+   *
+   * If asynchronous logging is enabled and the caller is an RPC handler,
+   * the response of its call is postponed and handed to the syncer thread,
+   * which releases it once the edits are durable. The handler is then free
+   * to serve the next call, but the edits may not be durable yet when this
+   * returns. Callers with side effects that must not happen before that,
+   * such as invalidating the blocks of deleted files, use
+   * {@link #logSyncAndWait()} instead.
    */
   public void logSync() {
+    final EditLogSyncer s = syncer;
+    if (s != null && !Thread.holdsLock(this)) {
+      final Server.Call call = Server.getCurCall().get();
+      if (call != null && s.postpone(call)) {
+        return;
+      }
+    }
+    syncThroughMyTxId();
+  }
+
+  /**
+   * Sync all modifications done by this thread and return only once they
+   * are durable, even if asynchronous logging is enabled.
+   */
+  public void logSyncAndWait() {
+    syncThroughMyTxId();
+  }
+
+  /**
+   * Sync up to the last transaction written by this thread, see
+   * {@link #logSync()}.
+   */
+  private void syncThroughMyTxId() {
     long syncStart = 0;
 
     // Fetch the transactionId of this thread. 
@@ -675,6 +744,93 @@ private void printStatistics(boolean force) {
     LOG.info(buf);
   }
 
+  /**
+   * Syncs the edit log on behalf of RPC calls whose responses have been
+   * postponed, and releases those responses once their edits are durable.
+   * All calls queued while a sync is running are committed by the next one.
+   */
+  private class EditLogSyncer extends Daemon {
+    private final BlockingQueue<PostponedCall> queue =
+        new LinkedBlockingQueue<PostponedCall>();
+    private boolean running = true;
+
+    EditLogSyncer() {
+      setName("FSEditLogSyncer");
+    }
+
+    /**
+     * Queue the call's response behind the next sync.
+     * @return false if the call has to be synced by the caller instead
+     */
+    synchronized boolean postpone(Server.Call call) {
+      if (!running || !call.postponeResponse()) {
+        return false;
+      }
+      queue.add(new PostponedCall(call, now()));
+      return true;
+    }
+
+    /**
+     * Stop accepting calls. The ones already queued are still answered,
+     * after which the thread exits.
+     */
+    synchronized void shutdown() {
+      if (running) {
+        running = false;
+        queue.add(END_OF_CALLS);
+      }
+    }
+
+    @Override
+    public void run() {
+      final List<PostponedCall> batch = new ArrayList<PostponedCall>();
+      boolean stopped = false;
+      while (!stopped) {
+        try {
+          batch.add(queue.take());
+          queue.drainTo(batch);
+          // no call is queued after the end marker
+          if (batch.get(batch.size() - 1) == END_OF_CALLS) {
+            batch.remove(batch.size() - 1);
+            stopped = true;
+            if (batch.isEmpty()) {
+              continue;
+            }
+          }
+          final PostponedCall first = batch.get(0);
+          logSyncAll();
+          if (metrics != null) {
+            metrics.addSyncBatch(batch.size(), now() - first.postponedAt);
+          }
+          for (PostponedCall p : batch) {
+            try {
+              p.call.sendResponse();
+            } catch (IOException e) {
+              LOG.warn("Failed to send the response of " + p.call, e);
+            }
+          }
+        } catch (InterruptedException ie) {
+          // keep answering calls until shut down
+        } finally {
+          batch.clear();
+        }
+      }
+    }
+  }
+
+  private static class PostponedCall {
+    final Server.Call call;
+    final long postponedAt;
+
+    PostponedCall(Server.Call call, long postponedAt) {
+      this.call = call;
+      this.postponedAt = postponedAt;
+    }
+  }
+
+  /** Queued by {@link EditLogSyncer#shutdown()} after the last call. */
+  private static final PostponedCall END_OF_CALLS = new PostponedCall(null, 0);
+
   /** Record the RPC IDs if necessary */
   private void logRpcIds(FSEditLogOp op, boolean toLogRpcIds) {
     if (toLogRpcIds) {
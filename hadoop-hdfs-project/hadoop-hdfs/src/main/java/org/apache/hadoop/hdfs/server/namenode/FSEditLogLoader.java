@@ -94,6 +94,7 @@
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.Step;
 import org.apache.hadoop.hdfs.util.ChunkedArrayList;
 import org.apache.hadoop.hdfs.util.Holder;
+import org.apache.hadoop.io.IOUtils;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
@@ -108,10 +109,22 @@ public class FSEditLogLoader {
   private long lastAppliedTxId;
   /** Total number of end transactions loaded. */
   private int totalEdits = 0;
+  /** Number of ops decoded ahead of the one being applied, 0 to disable. */
+  private final int maxPrefetchedOps;
   
   public FSEditLogLoader(FSNamesystem fsNamesys, long lastAppliedTxId) {
+    this(fsNamesys, lastAppliedTxId, 0);
+  }
+
+  /**
+   * @param maxPrefetchedOps if positive, ops are read and decoded in a
+   *        background thread, up to this many ahead of the op being applied.
+   */
+  public FSEditLogLoader(FSNamesystem fsNamesys, long lastAppliedTxId,
+      int maxPrefetchedOps) {
     this.fsNamesys = fsNamesys;
     this.lastAppliedTxId = lastAppliedTxId;
+    this.maxPrefetchedOps = maxPrefetchedOps;
   }
   
   long loadFSEdits(EditLogInputStream edits, long expectedStartingTxId)
@@ -146,7 +159,7 @@ long loadFSEdits(EditLogInputStream edits, long expectedStartingTxId,
     }
   }
 
-  long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
+  long loadEditRecords(EditLogInputStream edits, boolean closeOnExit,
       long expectedStartingTxId, StartupOption startOpt,
       MetaRecoveryContext recovery) throws IOException {
     FSDirectory fsDir = fsNamesys.dir;
@@ -161,6 +174,13 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
     fsNamesys.writeLock();
     fsDir.writeLock();
 
+    final EditLogInputStream in;
+    if (maxPrefetchedOps > 0) {
+      in = new PrefetchingEditLogInputStream(edits, maxPrefetchedOps);
+    } else {
+      in = edits;
+    }
+
     long recentOpcodeOffsets[] = new long[4];
     Arrays.fill(recentOpcodeOffsets, -1);
     
@@ -274,8 +294,11 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
       }
     } finally {
       fsNamesys.resetLastInodeId(lastInodeId);
+      if (in != edits) {
+        IOUtils.cleanup(LOG, in);
+      }
       if(closeOnExit) {
-        in.close();
+        edits.close();
       }
       fsDir.writeUnlock();
       fsNamesys.writeUnlock();
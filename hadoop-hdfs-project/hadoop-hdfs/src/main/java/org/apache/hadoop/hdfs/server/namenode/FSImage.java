@@ -23,15 +23,22 @@
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -72,6 +79,7 @@
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * FSImage handles checkpointing and logging of the namespace edits.
@@ -82,6 +90,11 @@
 public class FSImage implements Closeable {
   public static final Log LOG = LogFactory.getLog(FSImage.class.getName());
 
+  /** Quota recomputation splits the tree no deeper than this */
+  private static final int QUOTA_SPLIT_MAX_DEPTH = 8;
+  /** Quota recomputation aims at this many subtrees per thread */
+  private static final int QUOTA_SPLIT_TASKS_PER_THREAD = 8;
+
   protected FSEditLog editLog = null;
   private boolean isUpgradeFinalized = false;
 
@@ -95,6 +108,12 @@ public class FSImage implements Closeable {
 
   final private Configuration conf;
 
+  /** Number of threads used to recompute quota usage after loading edits */
+  private final int quotaInitThreads;
+
+  /** Number of edit log ops decoded ahead of the one being applied */
+  private final int editsPrefetchOps;
+
   protected NNStorageRetentionManager archivalManager;
 
   /**
@@ -123,6 +142,12 @@ protected FSImage(Configuration conf,
                     List<URI> editsDirs)
       throws IOException {
     this.conf = conf;
+    this.quotaInitThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_QUOTA_INIT_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_QUOTA_INIT_THREADS_DEFAULT);
+    this.editsPrefetchOps = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_LOAD_PREFETCH_OPS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_LOAD_PREFETCH_OPS_DEFAULT);
 
     storage = new NNStorage(conf, imageDirs, editsDirs);
     if(conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_RESTORE_KEY,
@@ -809,8 +834,10 @@ private long loadEdits(Iterable<EditLogInputStream> editStreams,
     prog.beginPhase(Phase.LOADING_EDITS);
     
     long prevLastAppliedTxId = lastAppliedTxId;  
+    boolean success = false;
     try {    
-      FSEditLogLoader loader = new FSEditLogLoader(target, lastAppliedTxId);
+      FSEditLogLoader loader = new FSEditLogLoader(target, lastAppliedTxId,
+          editsPrefetchOps);
       
       // Load latest edits
       for (EditLogInputStream editIn : editStreams) {
@@ -828,10 +855,22 @@ private long loadEdits(Iterable<EditLogInputStream> editStreams,
           lastAppliedTxId = editIn.getLastTxId();
         }
       }
+      success = true;
     } finally {
       FSEditLog.closeAllStreams(editStreams);
       // update the counts
-      updateCountForQuota(target.dir.rootDir);
+      if (success) {
+        updateCountForQuota(target.dir.rootDir, quotaInitThreads);
+      } else {
+        // Some ops may have been applied before the error, so the counts
+        // still need updating, but a failure here must not hide that error.
+        try {
+          updateCountForQuota(target.dir.rootDir, quotaInitThreads);
+        } catch (Throwable t) {
+          LOG.warn("Failed to update quota counts after an error loading"
+              + " edits", t);
+        }
+      }
     }
     prog.endPhase(Phase.LOADING_EDITS);
     return lastAppliedTxId - prevLastAppliedTxId;
@@ -846,11 +885,91 @@ private long loadEdits(Iterable<EditLogInputStream> editStreams,
    * throw QuotaExceededException.
    */
   static void updateCountForQuota(INodeDirectory root) {
-    updateCountForQuotaRecursively(root, Quota.Counts.newInstance());
+    updateCountForQuotaRecursively(root, Quota.Counts.newInstance(), null);
   }
-  
+
+  /**
+   * Same as {@link #updateCountForQuota(INodeDirectory)}, spread over the
+   * given number of threads. The tree is walked breadth first until a level
+   * holds enough directories to keep all threads busy. The subtrees rooted
+   * at that level are counted in parallel, then the levels above them are
+   * counted from those results.
+   */
+  static void updateCountForQuota(INodeDirectory root, int threads)
+      throws IOException {
+    if (threads <= 1) {
+      updateCountForQuota(root);
+      return;
+    }
+    List<INodeDirectory> level = new ArrayList<INodeDirectory>();
+    level.add(root);
+    for (int depth = 0; depth < QUOTA_SPLIT_MAX_DEPTH
+        && level.size() < threads * QUOTA_SPLIT_TASKS_PER_THREAD; depth++) {
+      List<INodeDirectory> next = new ArrayList<INodeDirectory>();
+      for (INodeDirectory dir : level) {
+        for (INode child : dir.getChildrenList(Snapshot.CURRENT_STATE_ID)) {
+          if (child.isDirectory()) {
+            next.add(child.asDirectory());
+          }
+        }
+      }
+      if (next.isEmpty()) {
+        break;
+      }
+      level = next;
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("QuotaInit-%d").build());
+    final Map<INodeDirectory, Future<Quota.Counts>> futures =
+        new IdentityHashMap<INodeDirectory, Future<Quota.Counts>>();
+    try {
+      for (final INodeDirectory dir : level) {
+        futures.put(dir, executor.submit(new Callable<Quota.Counts>() {
+          @Override
+          public Quota.Counts call() {
+            Quota.Counts counts = Quota.Counts.newInstance();
+            updateCountForQuotaRecursively(dir, counts, null);
+            return counts;
+          }
+        }));
+      }
+      final Map<INodeDirectory, Quota.Counts> subtrees =
+          new IdentityHashMap<INodeDirectory, Quota.Counts>();
+      for (Map.Entry<INodeDirectory, Future<Quota.Counts>> e
+          : futures.entrySet()) {
+        subtrees.put(e.getKey(), e.getValue().get());
+      }
+      updateCountForQuotaRecursively(root, Quota.Counts.newInstance(),
+          subtrees);
+    } catch (InterruptedException e) {
+      throw (IOException) new InterruptedIOException(
+          "Interrupted while updating quota counts").initCause(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException("Failed to update quota counts", cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @param subtrees counts of subtrees which have already been updated, or
+   *                 null to walk the whole tree under dir
+   */
   private static void updateCountForQuotaRecursively(INodeDirectory dir,
-      Quota.Counts counts) {
+      Quota.Counts counts, Map<INodeDirectory, Quota.Counts> subtrees) {
+    if (subtrees != null) {
+      final Quota.Counts subtree = subtrees.get(dir);
+      if (subtree != null) {
+        counts.add(subtree);
+        return;
+      }
+    }
     final long parentNamespace = counts.get(Quota.NAMESPACE);
     final long parentDiskspace = counts.get(Quota.DISKSPACE);
 
@@ -858,7 +977,7 @@ private static void updateCountForQuotaRecursively(INodeDirectory dir,
     
     for (INode child : dir.getChildrenList(Snapshot.CURRENT_STATE_ID)) {
       if (child.isDirectory()) {
-        updateCountForQuotaRecursively(child.asDirectory(), counts);
+        updateCountForQuotaRecursively(child.asDirectory(), counts, subtrees);
       } else {
         // file or symlink: count here to reduce recursive calls.
         child.computeQuotaUsage(counts, false);
@@ -941,7 +1060,8 @@ void saveFSImage(SaveNamespaceContext context, StorageDirectory sd,
     File newFile = NNStorage.getStorageFile(sd, NameNodeFile.IMAGE_NEW, txid);
     File dstFile = NNStorage.getStorageFile(sd, dstType, txid);
     
-    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context);
+    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context,
+        conf);
     FSImageCompression compression = FSImageCompression.createCompression(conf);
     saver.save(newFile, compression);
     
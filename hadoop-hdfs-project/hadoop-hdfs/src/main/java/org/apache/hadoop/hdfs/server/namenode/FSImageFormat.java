@@ -528,6 +528,7 @@ private void loadRoot(DataInput in, Counter counter)
     private int loadChildren(INodeDirectory parent, DataInput in,
         Counter counter) throws IOException {
       int numChildren = in.readInt();
+      parent.allocateChildren(numChildren);
       for (int i = 0; i < numChildren; i++) {
         // load single inode
         INode newNode = loadINodeWithLocalName(false, in, true, counter);
@@ -25,6 +25,10 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,6 +61,7 @@
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
 
 @InterfaceAudience.Private
@@ -88,6 +93,12 @@ public final class FSImageFormatPBINode {
 
   private static final Log LOG = LogFactory.getLog(FSImageFormatPBINode.class);
 
+  /**
+   * Number of inodes a parallel loader thread deserializes before adding
+   * them to the inode map, which is shared between the threads.
+   */
+  private static final int INODE_MAP_BATCH_SIZE = 1000;
+
   public final static class Loader {
     public static PermissionStatus loadPermission(long id,
         final String[] stringTable) {
@@ -181,6 +192,35 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
     }
 
     void loadINodeDirectorySection(InputStream in) throws IOException {
+      loadINodeDirectoryEntries(in);
+    }
+
+    /**
+     * Load the directory entries of the given INODE_DIR sub-sections on the
+     * executor. Every directory is recorded in exactly one entry, so the
+     * threads never add children to the same parent.
+     */
+    void loadINodeDirectorySectionInParallel(ExecutorService executor,
+        List<FileSummary.Section> sections) throws IOException {
+      List<Future<Void>> futures = Lists.newArrayList();
+      for (final FileSummary.Section section : sections) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            InputStream in = parent.getInputStreamForSection(section);
+            try {
+              loadINodeDirectoryEntries(in);
+            } finally {
+              in.close();
+            }
+            return null;
+          }
+        }));
+      }
+      FSImageFormatProtobuf.waitForSubSections(futures);
+    }
+
+    private void loadINodeDirectoryEntries(InputStream in) throws IOException {
       final List<INodeReference> refList = parent.getLoaderContext()
           .getRefList();
       while (true) {
@@ -191,6 +231,7 @@ void loadINodeDirectorySection(InputStream in) throws IOException {
           break;
         }
         INodeDirectory p = dir.getInode(e.getParent()).asDirectory();
+        p.allocateChildren(e.getChildrenCount() + e.getRefChildrenCount());
         for (long id : e.getChildrenList()) {
           INode child = dir.getInode(id);
           addToParent(p, child);
@@ -203,18 +244,89 @@ void loadINodeDirectorySection(InputStream in) throws IOException {
     }
 
     void loadINodeSection(InputStream in) throws IOException {
+      long numInodes = loadINodeSectionHeader(in);
+      for (int i = 0; i < numInodes; ++i) {
+        INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+        if (p.getId() == INodeId.ROOT_INODE_ID) {
+          loadRootINode(p);
+        } else {
+          INode n = loadINode(p);
+          dir.addToInodeMap(n);
+        }
+      }
+    }
+
+    /**
+     * Load the header of the INODE section.
+     * @return the number of inodes stored in the section
+     */
+    long loadINodeSectionHeader(InputStream in) throws IOException {
       INodeSection s = INodeSection.parseDelimitedFrom(in);
       fsn.resetLastInodeId(s.getLastInodeId());
       LOG.info("Loading " + s.getNumInodes() + " INodes.");
-      for (int i = 0; i < s.getNumInodes(); ++i) {
+      return s.getNumInodes();
+    }
+
+    /**
+     * Load the inodes of the given INODE sub-sections on the executor. The
+     * inodes are deserialized concurrently and added to the inode map in
+     * batches.
+     */
+    void loadINodeSectionInParallel(ExecutorService executor,
+        List<FileSummary.Section> sections, long expectedInodes)
+        throws IOException {
+      final AtomicLong loaded = new AtomicLong();
+      List<Future<Void>> futures = Lists.newArrayList();
+      for (final FileSummary.Section section : sections) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            InputStream in = parent.getInputStreamForSection(section);
+            try {
+              loaded.addAndGet(loadINodesInSubSection(in));
+            } finally {
+              in.close();
+            }
+            return null;
+          }
+        }));
+      }
+      FSImageFormatProtobuf.waitForSubSections(futures);
+      if (loaded.get() != expectedInodes) {
+        throw new IOException("Expected to load " + expectedInodes
+            + " inodes from the image sub-sections but loaded "
+            + loaded.get());
+      }
+    }
+
+    private long loadINodesInSubSection(InputStream in) throws IOException {
+      List<INode> batch = Lists.newArrayListWithCapacity(INODE_MAP_BATCH_SIZE);
+      long count = 0;
+      while (true) {
         INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+        // note that in is a LimitedInputStream
+        if (p == null) {
+          break;
+        }
+        ++count;
         if (p.getId() == INodeId.ROOT_INODE_ID) {
           loadRootINode(p);
         } else {
-          INode n = loadINode(p);
-          dir.addToInodeMap(n);
+          batch.add(loadINode(p));
+          if (batch.size() >= INODE_MAP_BATCH_SIZE) {
+            addToInodeMap(batch);
+            batch.clear();
+          }
         }
       }
+      addToInodeMap(batch);
+      return count;
+    }
+
+    private synchronized void addToInodeMap(List<INode> inodes) {
+      for (INode n : inodes) {
+        dir.addToInodeMap(n);
+      }
     }
 
     /**
@@ -246,6 +358,14 @@ private void addToParent(INodeDirectory parent, INode child) {
       if (!parent.addChild(child)) {
         return;
       }
+      updateNameCacheAndBlocksMap(child);
+    }
+
+    /**
+     * The name cache and the blocks map are shared by all the threads which
+     * load directory sub-sections in parallel.
+     */
+    private synchronized void updateNameCacheAndBlocksMap(INode child) {
       dir.cacheName(child);
 
       if (child.isFile()) {
@@ -442,6 +562,8 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
       final ArrayList<INodeReference> refList = parent.getSaverContext()
           .getRefList();
       int i = 0;
+      // directory sub-sections are balanced by the number of children
+      int childrenInSubSection = 0;
       while (iter.hasNext()) {
         INodeWithAdditionalFields n = iter.next();
         if (!n.isDirectory()) {
@@ -463,6 +585,13 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           }
           INodeDirectorySection.DirEntry e = b.build();
           e.writeDelimitedTo(out);
+
+          childrenInSubSection += children.size();
+          if (childrenInSubSection >= parent.getINodesPerSubSection()) {
+            parent.commitSubSection(summary,
+                FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+            childrenInSubSection = 0;
+          }
         }
 
         ++i;
@@ -470,6 +599,8 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           context.checkCancelled();
         }
       }
+      parent.commitSubSection(summary,
+          FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
       parent.commitSection(summary,
           FSImageFormatProtobuf.SectionName.INODE_DIR);
     }
@@ -481,6 +612,8 @@ void serializeINodeSection(OutputStream out) throws IOException {
           .setLastInodeId(fsn.getLastInodeId()).setNumInodes(inodesMap.size());
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
+      // the header is read before the sub-sections are loaded
+      parent.beginSubSection();
 
       int i = 0;
       Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
@@ -488,10 +621,16 @@ void serializeINodeSection(OutputStream out) throws IOException {
         INodeWithAdditionalFields n = iter.next();
         save(out, n);
         ++i;
+        if (i % parent.getINodesPerSubSection() == 0) {
+          parent.commitSubSection(summary,
+              FSImageFormatProtobuf.SectionName.INODE_SUB);
+        }
         if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
           context.checkCancelled();
         }
       }
+      parent.commitSubSection(summary,
+          FSImageFormatProtobuf.SectionName.INODE_SUB);
       parent.commitSection(summary, FSImageFormatProtobuf.SectionName.INODE);
     }
 
@@ -25,6 +25,7 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
@@ -34,14 +35,20 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolInfoProto;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSecretManager;
@@ -64,6 +71,7 @@
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.LimitInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
 /**
@@ -139,11 +147,26 @@ public static final class Loader implements FSImageFormat.AbstractLoader {
     private MD5Hash imgDigest;
     /** The transaction ID of the last edit represented by the loaded file */
     private long imgTxId;
+    /** The image file being loaded, used to open streams on sub-sections */
+    private File imgFile;
+    /** The compression codec of the image being loaded */
+    private String imgCodec;
+
+    private final boolean parallelLoad;
+    private final int parallelThreads;
+    /** Loads sub-sections concurrently, null if loading serially */
+    private ExecutorService executor;
 
     Loader(Configuration conf, FSNamesystem fsn) {
       this.conf = conf;
       this.fsn = fsn;
       this.ctx = new LoaderContext();
+      this.parallelLoad = conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT);
+      this.parallelThreads = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
     }
 
     @Override
@@ -163,6 +186,7 @@ public LoaderContext getLoaderContext() {
     void load(File file) throws IOException {
       long start = Time.monotonicNow();
       imgDigest = MD5FileUtils.computeMd5ForFile(file);
+      imgFile = file;
       RandomAccessFile raFile = new RandomAccessFile(file, "r");
       FileInputStream fin = new FileInputStream(file);
       try {
@@ -170,6 +194,10 @@ void load(File file) throws IOException {
         long end = Time.monotonicNow();
         LOG.info("Loaded FSImage in " + (end - start) / 1000 + " seconds.");
       } finally {
+        if (executor != null) {
+          executor.shutdownNow();
+          executor = null;
+        }
         fin.close();
         raFile.close();
       }
@@ -181,6 +209,7 @@ private void loadInternal(RandomAccessFile raFile, FileInputStream fin)
         throw new IOException("Unrecognized file format");
       }
       FileSummary summary = FSImageUtil.loadSummary(raFile);
+      imgCodec = summary.getCodec();
 
       FileChannel channel = fin.getChannel();
 
@@ -214,6 +243,23 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
        */
       Step currentStep = null;
 
+      // Images saved with dfs.image.parallel.load record sub-sections of the
+      // INODE and INODE_DIR sections, which can be loaded concurrently.
+      // Otherwise every section is loaded serially.
+      List<FileSummary.Section> inodeSubSections = getSubSections(summary,
+          SectionName.INODE_SUB);
+      List<FileSummary.Section> dirSubSections = getSubSections(summary,
+          SectionName.INODE_DIR_SUB);
+      if (parallelLoad && (!inodeSubSections.isEmpty()
+          || !dirSubSections.isEmpty())) {
+        LOG.info("Loading " + inodeSubSections.size() + " inode and "
+            + dirSubSections.size() + " directory sub-sections with "
+            + parallelThreads + " threads");
+        executor = Executors.newFixedThreadPool(parallelThreads,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("FSImageSectionLoader-%d").build());
+      }
+
       for (FileSummary.Section s : sections) {
         channel.position(s.getOffset());
         InputStream in = new BufferedInputStream(new LimitInputStream(fin,
@@ -234,14 +280,29 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
         case INODE: {
           currentStep = new Step(StepType.INODES);
           prog.beginStep(Phase.LOADING_FSIMAGE, currentStep);
-          inodeLoader.loadINodeSection(in);
+          if (executor != null && !inodeSubSections.isEmpty()) {
+            long numInodes = inodeLoader.loadINodeSectionHeader(in);
+            inodeLoader.loadINodeSectionInParallel(executor,
+                inodeSubSections, numInodes);
+          } else {
+            inodeLoader.loadINodeSection(in);
+          }
         }
           break;
+        case INODE_SUB:
+        case INODE_DIR_SUB:
+          // loaded as part of their parent section
+          break;
         case INODE_REFERENCE:
           snapshotLoader.loadINodeReferenceSection(in);
           break;
         case INODE_DIR:
-          inodeLoader.loadINodeDirectorySection(in);
+          if (executor != null && !dirSubSections.isEmpty()) {
+            inodeLoader.loadINodeDirectorySectionInParallel(executor,
+                dirSubSections);
+          } else {
+            inodeLoader.loadINodeDirectorySection(in);
+          }
           break;
         case FILES_UNDERCONSTRUCTION:
           inodeLoader.loadFilesUnderConstructionSection(in);
@@ -274,6 +335,45 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
       }
     }
 
+    /**
+     * @return the sub-sections of the given type recorded in the summary,
+     *         in file order.
+     */
+    private static List<FileSummary.Section> getSubSections(
+        FileSummary summary, SectionName name) {
+      ArrayList<FileSummary.Section> subSections = Lists.newArrayList();
+      for (FileSummary.Section s : summary.getSectionsList()) {
+        if (SectionName.fromString(s.getName()) == name) {
+          subSections.add(s);
+        }
+      }
+      Collections.sort(subSections, new Comparator<FileSummary.Section>() {
+        @Override
+        public int compare(FileSummary.Section s1, FileSummary.Section s2) {
+          return Long.compare(s1.getOffset(), s2.getOffset());
+        }
+      });
+      return subSections;
+    }
+
+    /**
+     * Open an independent stream over the given section of the image, so
+     * that sections can be read concurrently. The caller must close it.
+     */
+    InputStream getInputStreamForSection(FileSummary.Section section)
+        throws IOException {
+      FileInputStream fin = new FileInputStream(imgFile);
+      try {
+        fin.getChannel().position(section.getOffset());
+        InputStream in = new BufferedInputStream(new LimitInputStream(fin,
+            section.getLength()));
+        return FSImageUtil.wrapInputStreamForCompression(conf, imgCodec, in);
+      } catch (IOException e) {
+        fin.close();
+        throw e;
+      }
+    }
+
     private void loadNameSystemSection(InputStream in) throws IOException {
       NameSystemSection s = NameSystemSection.parseDelimitedFrom(in);
       fsn.setGenerationStampV1(s.getGenstampV1());
@@ -346,9 +446,29 @@ public static final class Saver {
     private CompressionCodec codec;
     private OutputStream underlyingOutputStream;
 
+    private final boolean parallelLoadEnabled;
+    private final int targetSubSections;
+    private final long minInodesForSubSections;
+    private boolean writeSubSections = false;
+    private int inodesPerSubSection = Integer.MAX_VALUE;
+    private long subSectionOffset;
+
     Saver(SaveNamespaceContext context) {
+      this(context, new Configuration(false));
+    }
+
+    Saver(SaveNamespaceContext context, Configuration conf) {
       this.context = context;
       this.saverContext = new SaverContext();
+      this.parallelLoadEnabled = conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT);
+      this.targetSubSections = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT);
+      this.minInodesForSubSections = conf.getLong(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT);
     }
 
     public MD5Hash getSavedDigest() {
@@ -377,6 +497,46 @@ public void commitSection(FileSummary.Builder summary, SectionName name)
       summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
           .setLength(length).setOffset(currentOffset));
       currentOffset += length;
+      subSectionOffset = currentOffset;
+    }
+
+    /**
+     * Mark the current position as the start of the next sub-section. This
+     * is used to skip a section header which is not part of any sub-section.
+     */
+    void beginSubSection() throws IOException {
+      if (!writeSubSections) {
+        return;
+      }
+      sectionOutputStream.flush();
+      subSectionOffset = fileChannel.position();
+    }
+
+    /**
+     * Record everything written since the end of the previous sub-section as
+     * a sub-section of the current section. Sub-sections are only written
+     * for uncompressed images, so the section stream can simply be flushed.
+     */
+    void commitSubSection(FileSummary.Builder summary, SectionName name)
+        throws IOException {
+      if (!writeSubSections) {
+        return;
+      }
+      sectionOutputStream.flush();
+      long length = fileChannel.position() - subSectionOffset;
+      if (length == 0) {
+        return;
+      }
+      summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
+          .setLength(length).setOffset(subSectionOffset));
+      subSectionOffset += length;
+    }
+
+    /**
+     * @return the number of inodes to write per sub-section.
+     */
+    int getINodesPerSubSection() {
+      return inodesPerSubSection;
     }
 
     private void flushSectionOutputStream() throws IOException {
@@ -396,6 +556,24 @@ void save(File file, FSImageCompression compression) throws IOException {
       }
     }
 
+    private void setupSubSections() {
+      if (!parallelLoadEnabled) {
+        return;
+      }
+      if (codec != null) {
+        LOG.warn("Parallel image loading is not supported for compressed "
+            + "images, the image will be saved without sub-sections");
+        return;
+      }
+      long numInodes = context.getSourceNamesystem().dir.getINodeMap().size();
+      if (numInodes < minInodesForSubSections) {
+        return;
+      }
+      writeSubSections = true;
+      inodesPerSubSection = (int) Math.max(1,
+          (numInodes + targetSubSections - 1) / Math.max(1, targetSubSections));
+    }
+
     private static void saveFileSummary(OutputStream out, FileSummary summary)
         throws IOException {
       summary.writeDelimitedTo(out);
@@ -445,6 +623,8 @@ private void saveInternal(FileOutputStream fout,
       } else {
         sectionOutputStream = underlyingOutputStream;
       }
+      subSectionOffset = currentOffset;
+      setupSubSections();
 
       saveNameSystemSection(b);
       // Check for cancellation right after serializing the name system section.
@@ -560,9 +740,11 @@ public enum SectionName {
     STRING_TABLE("STRING_TABLE"),
     EXTENDED_ACL("EXTENDED_ACL"),
     INODE("INODE"),
+    INODE_SUB("INODE_SUB"),
     INODE_REFERENCE("INODE_REFERENCE"),
     SNAPSHOT("SNAPSHOT"),
     INODE_DIR("INODE_DIR"),
+    INODE_DIR_SUB("INODE_DIR_SUB"),
     FILES_UNDERCONSTRUCTION("FILES_UNDERCONSTRUCTION"),
     SNAPSHOT_DIFF("SNAPSHOT_DIFF"),
     SECRET_MANAGER("SECRET_MANAGER"),
@@ -585,6 +767,34 @@ private SectionName(String name) {
     }
   }
 
+  /**
+   * Wait for the sub-section tasks submitted by a parallel loader, and
+   * rethrow the first failure.
+   */
+  static void waitForSubSections(List<Future<Void>> futures)
+      throws IOException {
+    try {
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+    } catch (InterruptedException e) {
+      throw (IOException) new InterruptedIOException(
+          "Interrupted while loading image sub-sections").initCause(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException("Failed to load image sub-section", cause);
+    } finally {
+      for (Future<Void> f : futures) {
+        f.cancel(true);
+      }
+    }
+  }
+
   private static int getOndiskTrunkSize(com.google.protobuf.GeneratedMessage s) {
     return CodedOutputStream.computeRawVarint32Size(s.getSerializedSize())
         + s.getSerializedSize();
@@ -39,8 +39,12 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ACCESSTIME_PRECISION_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ACCESSTIME_PRECISION_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOGGERS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCKING_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCKING_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CHECKPOINT_TXNS_DEFAULT;
@@ -60,6 +64,10 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_EDIT_LOG_AUTOROLL_CHECK_INTERVAL_MS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_EDIT_LOG_AUTOROLL_MULTIPLIER_THRESHOLD;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_EDIT_LOG_AUTOROLL_MULTIPLIER_THRESHOLD_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ENABLE_RETRY_CACHE_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ENABLE_RETRY_CACHE_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_OBJECTS_DEFAULT;
@@ -82,6 +90,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SAFEMODE_THRESHOLD_PCT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SAFEMODE_THRESHOLD_PCT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SHARED_EDITS_DIR_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PERMISSION_CHECKER_CACHE_EXPIRY_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PERMISSION_CHECKER_CACHE_EXPIRY_MS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_PERMISSIONS_ENABLED_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_PERMISSIONS_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_PERMISSIONS_SUPERUSERGROUP_DEFAULT;
@@ -123,6 +133,7 @@
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -173,6 +184,8 @@
 import org.apache.hadoop.hdfs.UnknownCipherSuiteException;
 import org.apache.hadoop.hdfs.protocol.AclException;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOp;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -287,6 +300,8 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
@@ -358,6 +373,23 @@ private void logAuditEvent(boolean succeeded, String cmd, String src,
   private void logAuditEvent(boolean succeeded,
       UserGroupInformation ugi, InetAddress addr, String cmd, String src,
       String dst, HdfsFileStatus stat) {
+    final boolean webHdfs = NamenodeWebHdfsMethods.isWebHdfsInvocation();
+    if (auditDispatcher != null) {
+      auditDispatcher.enqueue(new AsyncAuditDispatcher.AuditEvent(
+          succeeded, ugi, addr, cmd, src, dst, stat, webHdfs));
+    } else {
+      logAuditEvent(succeeded, ugi, addr, cmd, src, dst, stat, webHdfs);
+    }
+  }
+
+  private void logAuditEvent(AsyncAuditDispatcher.AuditEvent event) {
+    logAuditEvent(event.succeeded, event.ugi, event.addr, event.cmd,
+        event.src, event.dst, event.stat, event.webHdfs);
+  }
+
+  private void logAuditEvent(boolean succeeded,
+      UserGroupInformation ugi, InetAddress addr, String cmd, String src,
+      String dst, HdfsFileStatus stat, boolean webHdfs) {
     FileStatus status = null;
     if (stat != null) {
       Path symlink = stat.isSymlink() ? new Path(stat.getSymlink()) : null;
@@ -368,7 +400,10 @@ private void logAuditEvent(boolean succeeded,
           stat.getGroup(), symlink, path);
     }
     for (AuditLogger logger : auditLoggers) {
-      if (logger instanceof HdfsAuditLogger) {
+      if (logger instanceof DefaultAuditLogger) {
+        ((DefaultAuditLogger) logger).logAuditEvent(succeeded, ugi.toString(),
+            addr, cmd, src, dst, status, ugi, dtSecretManager, webHdfs);
+      } else if (logger instanceof HdfsAuditLogger) {
         HdfsAuditLogger hdfsLogger = (HdfsAuditLogger) logger;
         hdfsLogger.logAuditEvent(succeeded, ugi.toString(), addr, cmd, src, dst,
             status, ugi, dtSecretManager);
@@ -402,6 +437,12 @@ private void logAuditEvent(boolean succeeded,
   private final String fsOwnerShortUserName;
   private final String supergroup;
   private final boolean standbyShouldCheckpoint;
+  // Permission checkers of recent callers keyed by their UGI instance, which
+  // the RPC server keeps per connection, so that the caller's group set is
+  // not rebuilt on every call. Null if disabled.
+  private final Cache<UserGroupInformation, FSPermissionChecker>
+      permissionCheckerCache;
+  private static final int PERMISSION_CHECKER_CACHE_MAX_SIZE = 16384;
   
   // Scan interval is not configurable.
   private static final long DELEGATION_TOKEN_REMOVER_SCAN_INTERVAL =
@@ -417,6 +458,9 @@ private void logAuditEvent(boolean succeeded,
   // underlying logger is disabled, and avoid some unnecessary work.
   private final boolean isDefaultAuditLogger;
   private final List<AuditLogger> auditLoggers;
+  // Hands audit events to the audit loggers from a background thread when
+  // dfs.namenode.audit.log.async.queue.size is positive; null otherwise.
+  private final AsyncAuditDispatcher auditDispatcher;
 
   /** The namespace tree. */
   FSDirectory dir;
@@ -472,6 +516,8 @@ private void logAuditEvent(boolean succeeded,
   private volatile SafeModeInfo safeMode;  // safe mode information
 
   private final long maxFsObjects;          // maximum number of fs objects
+  // maximum time to hold the write lock while releasing expired leases
+  private final long maxLockHoldToReleaseLeaseMs;
 
   private final long minBlockSize;         // minimum block size
   private final long maxBlocksPerFile;     // maximum # of blocks per file
@@ -781,7 +827,16 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
     }
     boolean fair = conf.getBoolean("dfs.namenode.fslock.fair", true);
     LOG.info("fsLock is fair:" + fair);
-    fsLock = new FSNamesystemLock(fair);
+    int lockPartitions = conf.getInt(DFS_NAMENODE_FSLOCK_PARTITIONS_KEY,
+        DFS_NAMENODE_FSLOCK_PARTITIONS_DEFAULT);
+    int lockPartitionDepth = conf.getInt(
+        DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_KEY,
+        DFS_NAMENODE_FSLOCK_PARTITION_DEPTH_DEFAULT);
+    if (lockPartitions > 0) {
+      LOG.info("fsLock is partitioned into " + lockPartitions
+          + " stripes at path depth " + lockPartitionDepth);
+    }
+    fsLock = new FSNamesystemLock(fair, lockPartitions, lockPartitionDepth);
     cond = fsLock.writeLock().newCondition();
     this.fsImage = fsImage;
     try {
@@ -802,6 +857,19 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
       LOG.info("fsOwner             = " + fsOwner);
       LOG.info("supergroup          = " + supergroup);
       LOG.info("isPermissionEnabled = " + isPermissionEnabled);
+      long checkerCacheExpiryMs = conf.getLong(
+          DFS_NAMENODE_PERMISSION_CHECKER_CACHE_EXPIRY_MS_KEY,
+          DFS_NAMENODE_PERMISSION_CHECKER_CACHE_EXPIRY_MS_DEFAULT);
+      if (checkerCacheExpiryMs > 0) {
+        // weak keys are compared by identity
+        this.permissionCheckerCache = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(PERMISSION_CHECKER_CACHE_MAX_SIZE)
+            .expireAfterWrite(checkerCacheExpiryMs, TimeUnit.MILLISECONDS)
+            .build();
+      } else {
+        this.permissionCheckerCache = null;
+      }
 
       // block allocation has to be persisted in HA using a shared edits directory
       // so that the standby has up-to-date namespace information
@@ -841,6 +909,9 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
       
       this.maxFsObjects = conf.getLong(DFS_NAMENODE_MAX_OBJECTS_KEY, 
                                        DFS_NAMENODE_MAX_OBJECTS_DEFAULT);
+      this.maxLockHoldToReleaseLeaseMs = conf.getLong(
+          DFSConfigKeys.DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_KEY,
+          DFSConfigKeys.DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_DEFAULT);
 
       this.minBlockSize = conf.getLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY,
           DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_DEFAULT);
@@ -878,12 +949,13 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
 
       this.dtSecretManager = createDelegationTokenSecretManager(conf);
       this.dir = new FSDirectory(this, conf);
-      this.snapshotManager = new SnapshotManager(dir);
+      this.snapshotManager = new SnapshotManager(dir, conf);
       this.cacheManager = new CacheManager(this, conf, blockManager);
       this.safeMode = new SafeModeInfo(conf);
       this.auditLoggers = initAuditLoggers(conf);
       this.isDefaultAuditLogger = auditLoggers.size() == 1 &&
         auditLoggers.get(0) instanceof DefaultAuditLogger;
+      this.auditDispatcher = initAuditDispatcher(conf);
       this.retryCache = ignoreRetryCache ? null : initRetryCache(conf);
       this.nnConf = new NNConf(conf);
     } catch(IOException e) {
@@ -988,6 +1060,28 @@ private List<AuditLogger> initAuditLoggers(Configuration conf) {
     return Collections.unmodifiableList(auditLoggers);
   }
 
+  private AsyncAuditDispatcher initAuditDispatcher(Configuration conf) {
+    int queueSize = conf.getInt(DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY,
+        DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_DEFAULT);
+    if (queueSize <= 0) {
+      return null;
+    }
+    boolean blockWhenFull = conf.getBoolean(
+        DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCKING_KEY,
+        DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCKING_DEFAULT);
+    LOG.info("Dispatching audit events asynchronously, queue size = "
+        + queueSize + ", blocking when full = " + blockWhenFull);
+    AsyncAuditDispatcher dispatcher = new AsyncAuditDispatcher(queueSize,
+        blockWhenFull, new AsyncAuditDispatcher.Sink() {
+          @Override
+          public void dispatch(AsyncAuditDispatcher.AuditEvent event) {
+            logAuditEvent(event);
+          }
+        });
+    dispatcher.start();
+    return dispatcher;
+  }
+
   private void loadFSImage(StartupOption startOpt) throws IOException {
     final FSImage fsImage = getFSImage();
 
@@ -1564,6 +1658,9 @@ void close() {
         stopStandbyServices();
       } catch (IOException ie) {
       } finally {
+        if (auditDispatcher != null) {
+          auditDispatcher.stop();
+        }
         IOUtils.cleanup(LOG, dir);
         IOUtils.cleanup(LOG, fsImage);
       }
@@ -1881,7 +1978,7 @@ && doAccessTime && isAccessTimeSupported()) {
           null : dir.getFileEncryptionInfo(inode, iip.getPathSnapshotId());
 
         final LocatedBlocks blocks =
-          blockManager.createLocatedBlocks(inode.getBlocks(), fileSize,
+          blockManager.createLocatedBlocks(inode, fileSize,
             isUc, offset, length, needBlockToken, iip.isSnapshot(), feInfo);
         // Set caching information for the located blocks.
         for (LocatedBlock lb: blocks.getLocatedBlocks()) {
@@ -2110,30 +2207,62 @@ private void setTimesInt(final String srcArg, long mtime, long atime)
     FSPermissionChecker pc = getPermissionChecker();
     checkOperation(OperationCategory.WRITE);
     byte[][] pathComponents = FSDirectory.getPathComponentsForReservedPath(src);
-    writeLock();
-    try {
-      checkOperation(OperationCategory.WRITE);
-      checkNameNodeSafeMode("Cannot set times " + src);
-      src = resolvePath(src, pathComponents);
-
-      // Write access is required to set access and modification times
-      if (isPermissionEnabled) {
-        checkPathAccess(pc, src, FsAction.WRITE);
+    // setTimes modifies a single inode, so with partitioned locking it only
+    // needs the read lock plus the lock of the partition holding the path.
+    boolean partitioned = fsLock.isPartitioned();
+    while (true) {
+      final boolean holdsWriteLock = !partitioned;
+      Lock partitionLock = null;
+      if (holdsWriteLock) {
+        writeLock();
+      } else {
+        readLock();
       }
-      final INodesInPath iip = dir.getINodesInPath4Write(src);
-      final INode inode = iip.getLastINode();
-      if (inode != null) {
-        boolean changed = dir.setTimes(inode, mtime, atime, true,
-                iip.getLatestSnapshotId());
-        if (changed) {
-          getEditLog().logTimes(src, mtime, atime);
+      try {
+        checkOperation(OperationCategory.WRITE);
+        checkNameNodeSafeMode("Cannot set times " + src);
+        src = resolvePath(srcArg, pathComponents);
+        if (partitioned) {
+          partitionLock = fsLock.partitionLock(src);
+          partitionLock.lock();
+        }
+
+        // Write access is required to set access and modification times
+        if (isPermissionEnabled) {
+          checkPathAccess(pc, src, FsAction.WRITE);
+        }
+        final INodesInPath iip = dir.getINodesInPath4Write(src);
+        if (partitioned
+            && iip.getLatestSnapshotId() != Snapshot.CURRENT_STATE_ID) {
+          // Recording the snapshot diff touches state shared with other
+          // partitions, so retry under the write lock.
+          partitioned = false;
+          continue;
+        }
+        final INode inode = iip.getLastINode();
+        if (inode != null) {
+          boolean changed = partitioned
+              ? dir.setTimesInPartition(inode, mtime, atime, true)
+              : dir.setTimes(inode, mtime, atime, true,
+                  iip.getLatestSnapshotId());
+          if (changed) {
+            getEditLog().logTimes(src, mtime, atime);
+          }
+          resultingStat = getAuditFileInfo(src, false);
+        } else {
+          throw new FileNotFoundException("File/Directory " + src + " does not exist.");
+        }
+        break;
+      } finally {
+        if (partitionLock != null) {
+          partitionLock.unlock();
+        }
+        if (holdsWriteLock) {
+          writeUnlock();
+        } else {
+          readUnlock();
         }
-        resultingStat = getAuditFileInfo(src, false);
-      } else {
-        throw new FileNotFoundException("File/Directory " + src + " does not exist.");
       }
-    } finally {
-      writeUnlock();
     }
     logAuditEvent(true, "setTimes", srcArg, null, resultingStat);
   }
@@ -3719,11 +3848,31 @@ private boolean deleteInt(String src, boolean recursive, boolean logRetryCache)
     
   private FSPermissionChecker getPermissionChecker()
       throws AccessControlException {
+    final UserGroupInformation ugi;
     try {
-      return new FSPermissionChecker(fsOwnerShortUserName, supergroup, getRemoteUser());
+      ugi = getRemoteUser();
     } catch (IOException ioe) {
       throw new AccessControlException(ioe);
     }
+    if (permissionCheckerCache == null) {
+      return new FSPermissionChecker(fsOwnerShortUserName, supergroup, ugi);
+    }
+    FSPermissionChecker pc = permissionCheckerCache.getIfPresent(ugi);
+    if (pc == null) {
+      pc = new FSPermissionChecker(fsOwnerShortUserName, supergroup, ugi);
+      permissionCheckerCache.put(ugi, pc);
+    }
+    return pc;
+  }
+
+  /**
+   * Drop the cached permission checkers, e.g. after the user to groups
+   * mappings have been refreshed.
+   */
+  void clearPermissionCheckerCache() {
+    if (permissionCheckerCache != null) {
+      permissionCheckerCache.invalidateAll();
+    }
   }
   
   /**
@@ -3742,7 +3891,6 @@ private boolean deleteInternal(String src, boolean recursive,
       throws AccessControlException, SafeModeException, UnresolvedLinkException,
              IOException {
     BlocksMapUpdateInfo collectedBlocks = new BlocksMapUpdateInfo();
-    List<INode> removedINodes = new ChunkedArrayList<INode>();
     FSPermissionChecker pc = getPermissionChecker();
     checkOperation(OperationCategory.WRITE);
     byte[][] pathComponents = FSDirectory.getPathComponentsForReservedPath(src);
@@ -3754,30 +3902,16 @@ private boolean deleteInternal(String src, boolean recursive,
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot delete " + src);
       src = resolvePath(src, pathComponents);
-      if (!recursive && dir.isNonEmptyDirectory(src)) {
-        throw new PathIsNotEmptyDirectoryException(src + " is non empty");
-      }
-      if (enforcePermission && isPermissionEnabled) {
-        checkPermission(pc, src, false, null, FsAction.WRITE, null,
-            FsAction.ALL, true, false);
-      }
-
-      long mtime = now();
-      // Unlink the target directory from directory tree
-      long filesRemoved = dir.delete(src, collectedBlocks, removedINodes,
-              mtime);
-      if (filesRemoved < 0) {
+      if (!deleteLocked(pc, src, recursive, enforcePermission,
+          collectedBlocks, logRetryCache)) {
         return false;
       }
-      getEditLog().logDelete(src, mtime, logRetryCache);
-      incrDeletedFileCount(filesRemoved);
-      // Blocks/INodes will be handled later
-      removePathAndBlocks(src, null, removedINodes, true);
       ret = true;
     } finally {
       writeUnlock();
     }
-    getEditLog().logSync(); 
+    // The blocks must not be invalidated before the delete is durable.
+    getEditLog().logSyncAndWait();
     removeBlocks(collectedBlocks); // Incremental deletion of blocks
     collectedBlocks.clear();
 
@@ -3788,6 +3922,42 @@ private boolean deleteInternal(String src, boolean recursive,
     return ret;
   }
 
+  /**
+   * Unlink a resolved path from the namespace and log the deletion. The
+   * blocks to be removed are added to collectedBlocks, and the caller is
+   * responsible for syncing the edit log and then calling
+   * {@link #removeBlocks(BlocksMapUpdateInfo)} once the lock is released.
+   *
+   * @return false if the path did not exist
+   */
+  private boolean deleteLocked(FSPermissionChecker pc, String src,
+      boolean recursive, boolean enforcePermission,
+      BlocksMapUpdateInfo collectedBlocks, boolean logRetryCache)
+      throws IOException {
+    assert hasWriteLock();
+    if (!recursive && dir.isNonEmptyDirectory(src)) {
+      throw new PathIsNotEmptyDirectoryException(src + " is non empty");
+    }
+    if (enforcePermission && isPermissionEnabled) {
+      checkPermission(pc, src, false, null, FsAction.WRITE, null,
+          FsAction.ALL, true, false);
+    }
+
+    List<INode> removedINodes = new ChunkedArrayList<INode>();
+    long mtime = now();
+    // Unlink the target directory from directory tree
+    long filesRemoved = dir.delete(src, collectedBlocks, removedINodes,
+            mtime);
+    if (filesRemoved < 0) {
+      return false;
+    }
+    getEditLog().logDelete(src, mtime, logRetryCache);
+    incrDeletedFileCount(filesRemoved);
+    // Blocks/INodes will be handled later
+    removePathAndBlocks(src, null, removedINodes, true);
+    return true;
+  }
+
   /**
    * From the given list, incrementally remove the blocks from blockManager
    * Writelock is dropped and reacquired every BLOCK_DELETION_INCREMENT to
@@ -3967,6 +4137,129 @@ boolean isFileClosed(final String srcArg)
     }
   }
 
+  /**
+   * Execute a batch of namespace operations under a single acquisition of
+   * the write lock, syncing their edits once at the end.
+   *
+   * The batch does not use the retry cache: the edit log does not record
+   * the results of its operations, so a cache entry rebuilt after a failover
+   * could not answer a retry truthfully.
+   *
+   * @see ClientProtocol#batchMetadataOps(List)
+   */
+  List<BatchedMetadataOpResult> batchMetadataOps(List<BatchedMetadataOp> ops)
+      throws IOException {
+    final int numOps = ops.size();
+    if (NameNode.stateChangeLog.isDebugEnabled()) {
+      NameNode.stateChangeLog.debug("DIR* NameSystem.batchMetadataOps: "
+          + numOps + " operations");
+    }
+    // Validate and split the paths before taking the lock, as the
+    // corresponding single operations do.
+    byte[][][] srcComponents = new byte[numOps][][];
+    byte[][][] dstComponents = new byte[numOps][][];
+    for (int i = 0; i < numOps; i++) {
+      BatchedMetadataOp op = ops.get(i);
+      if (op.getType() == BatchedMetadataOp.Type.MKDIRS
+          && !DFSUtil.isValidName(op.getSrc())) {
+        throw new InvalidPathException(op.getSrc());
+      }
+      srcComponents[i] = FSDirectory.getPathComponentsForReservedPath(
+          op.getSrc());
+      if (op.getType() == BatchedMetadataOp.Type.RENAME) {
+        if (!DFSUtil.isValidName(op.getDst())) {
+          throw new InvalidPathException("Invalid name: " + op.getDst());
+        }
+        dstComponents[i] = FSDirectory.getPathComponentsForReservedPath(
+            op.getDst());
+      }
+    }
+    final FSPermissionChecker pc = getPermissionChecker();
+    checkOperation(OperationCategory.WRITE);
+
+    List<BatchedMetadataOpResult> results =
+        Lists.newArrayListWithCapacity(numOps);
+    HdfsFileStatus[] auditStats = new HdfsFileStatus[numOps];
+    BlocksMapUpdateInfo collectedBlocks = new BlocksMapUpdateInfo();
+    waitForLoadingFSImage();
+    writeLock();
+    try {
+      checkOperation(OperationCategory.WRITE);
+      checkNameNodeSafeMode("Cannot execute batch of metadata operations");
+      for (int i = 0; i < numOps; i++) {
+        BatchedMetadataOp op = ops.get(i);
+        boolean result;
+        try {
+          String src = resolvePath(op.getSrc(), srcComponents[i]);
+          switch (op.getType()) {
+          case MKDIRS:
+            FsPermission masked = op.getPermission() != null ?
+                op.getPermission() : FsPermission.getDefault();
+            result = mkdirsInternal(pc, src,
+                new PermissionStatus(pc.getUser(), null, masked),
+                op.isCreateParent());
+            auditStats[i] = getAuditFileInfo(src, false);
+            break;
+          case RENAME:
+            String dst = resolvePath(op.getDst(), dstComponents[i]);
+            renameToInternal(pc, src, dst, false, op.getRenameOptions());
+            auditStats[i] = getAuditFileInfo(dst, false);
+            result = true;
+            break;
+          case DELETE:
+            result = deleteLocked(pc, src, op.isRecursive(), true,
+                collectedBlocks, false);
+            break;
+          default:
+            throw new IOException("Unsupported operation " + op);
+          }
+        } catch (IOException e) {
+          // Later operations may depend on this one, so stop here.
+          results.add(new BatchedMetadataOpResult(e));
+          break;
+        }
+        results.add(new BatchedMetadataOpResult(result));
+      }
+    } finally {
+      writeUnlock();
+    }
+    // The blocks must not be invalidated before the deletes are durable.
+    getEditLog().logSyncAndWait();
+    removeBlocks(collectedBlocks); // Incremental deletion of blocks
+    collectedBlocks.clear();
+
+    for (int i = 0; i < results.size(); i++) {
+      BatchedMetadataOp op = ops.get(i);
+      BatchedMetadataOpResult result = results.get(i);
+      String cmd = getBatchedOpAuditCmd(op);
+      if (result.isSuccess()) {
+        if (result.getResult()) {
+          logAuditEvent(true, cmd, op.getSrc(), op.getDst(), auditStats[i]);
+        }
+      } else if (result.getException() instanceof AccessControlException) {
+        logAuditEvent(false, cmd, op.getSrc(), op.getDst(), null);
+      }
+    }
+    return results;
+  }
+
+  private static String getBatchedOpAuditCmd(BatchedMetadataOp op) {
+    switch (op.getType()) {
+    case MKDIRS:
+      return "mkdirs";
+    case RENAME:
+      StringBuilder cmd = new StringBuilder("rename options=");
+      for (Rename option : op.getRenameOptions()) {
+        cmd.append(option.value()).append(" ");
+      }
+      return cmd.toString();
+    case DELETE:
+      return "delete";
+    default:
+      return op.getType().toString();
+    }
+  }
+
   /**
    * Create all the necessary directories
    */
@@ -4672,14 +4965,11 @@ String closeFileCommitBlocks(INodeFile pendingFile, BlockInfo storedBlock)
    */
   void renewLease(String holder) throws IOException {
     checkOperation(OperationCategory.WRITE);
-    readLock();
-    try {
-      checkOperation(OperationCategory.WRITE);
-      checkNameNodeSafeMode("Cannot renew lease for " + holder);
-      leaseManager.renewLease(holder);
-    } finally {
-      readUnlock();
-    }
+    checkNameNodeSafeMode("Cannot renew lease for " + holder);
+    // The renewal time is soft state that is never logged, and the lease
+    // manager synchronizes renewals itself, so clients renewing their
+    // leases do not need the namesystem lock.
+    leaseManager.renewLease(holder);
   }
 
   /**
@@ -6242,6 +6532,10 @@ public long getMaxObjects() {
     return maxFsObjects;
   }
 
+  long getMaxLockHoldToReleaseLeaseMs() {
+    return maxLockHoldToReleaseLeaseMs;
+  }
+
   @Override // FSNamesystemMBean
   @Metric
   public long getFilesTotal() {
@@ -6284,6 +6578,24 @@ public long getPendingDeletionBlocks() {
   public long getExcessBlocks() {
     return blockManager.getExcessBlocksCount();
   }
+
+  @Metric({"PendingDecommissionBlocks",
+      "Blocks on decommissioning nodes that still need replication"})
+  public long getPendingDecommissionBlocks() {
+    return blockManager.getDatanodeManager().getNumPendingDecommissionBlocks();
+  }
+
+  @Metric({"AuditEventQueueSize",
+      "Audit events waiting to be handed to the audit loggers"})
+  public int getAuditEventQueueSize() {
+    return auditDispatcher == null ? 0 : auditDispatcher.getQueueSize();
+  }
+
+  @Metric({"AuditEventsDropped",
+      "Audit events dropped because the audit event queue was full"})
+  public long getAuditEventsDropped() {
+    return auditDispatcher == null ? 0 : auditDispatcher.getNumDropped();
+  }
   
   // HA-only metric
   @Metric
@@ -7940,7 +8252,8 @@ void deleteSnapshot(String snapshotRoot, String snapshotName)
       writeUnlock();
       RetryCache.setState(cacheEntry, success);
     }
-    getEditLog().logSync();
+    // The blocks must not be invalidated before the deletion is durable.
+    getEditLog().logSyncAndWait();
 
     removeBlocks(collectedBlocks);
     collectedBlocks.clear();
@@ -8956,6 +9269,18 @@ public void logAuditEvent(boolean succeeded, String userName,
         InetAddress addr, String cmd, String src, String dst,
         FileStatus status, UserGroupInformation ugi,
         DelegationTokenSecretManager dtSecretManager) {
+      logAuditEvent(succeeded, userName, addr, cmd, src, dst, status, ugi,
+          dtSecretManager, NamenodeWebHdfsMethods.isWebHdfsInvocation());
+    }
+
+    /**
+     * Same as above, with the protocol of the request given explicitly, since
+     * the event may be logged from a thread other than the one serving it.
+     */
+    void logAuditEvent(boolean succeeded, String userName,
+        InetAddress addr, String cmd, String src, String dst,
+        FileStatus status, UserGroupInformation ugi,
+        DelegationTokenSecretManager dtSecretManager, boolean webHdfs) {
       if (auditLog.isInfoEnabled()) {
         final StringBuilder sb = auditBuffer.get();
         sb.setLength(0);
@@ -8990,7 +9315,7 @@ public void logAuditEvent(boolean succeeded, String userName,
           sb.append(trackingId);
         }
         sb.append("\t").append("proto=");
-        sb.append(NamenodeWebHdfsMethods.isWebHdfsInvocation() ? "webhdfs" : "rpc");
+        sb.append(webHdfs ? "webhdfs" : "rpc");
         logAuditMessage(sb.toString());
       }
     }
@@ -24,7 +24,10 @@
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.apache.hadoop.fs.Path;
+
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 
 /**
  * Mimics a ReentrantReadWriteLock so more sophisticated locking capabilities
@@ -52,8 +55,46 @@ class FSNamesystemLock implements ReadWriteLock {
   @VisibleForTesting
   protected final ReentrantLock longReadLock = new ReentrantLock(true);
   
+  /**
+   * Optional striped locks which partition the namespace by subtree. A
+   * partitioned operation holds the coarse read lock, which excludes every
+   * writer of the global lock, and the write lock of the stripe its path
+   * hashes to, which excludes other partitioned operations on the same
+   * subtree. Operations on disjoint subtrees may therefore mutate the
+   * namespace concurrently. Edit log ordering is unaffected, since
+   * {@link FSEditLog#logEdit} assigns transaction ids under its own monitor
+   * while the partition lock is still held.
+   *
+   * Null when partitioned locking is disabled.
+   */
+  private final ReentrantReadWriteLock[] partitionLocks;
+
+  /**
+   * Number of leading path components which identify a partition, e.g. with
+   * a depth of 2 the paths /user/alice/a and /user/alice/b/c share the
+   * partition /user/alice.
+   */
+  private final int partitionDepth;
+
   FSNamesystemLock(boolean fair) {
+    this(fair, 0, 0);
+  }
+
+  FSNamesystemLock(boolean fair, int numPartitions, int partitionDepth) {
+    Preconditions.checkArgument(numPartitions >= 0,
+        "numPartitions must not be negative: %s", numPartitions);
     this.coarseLock = new ReentrantReadWriteLock(fair);
+    if (numPartitions > 0) {
+      Preconditions.checkArgument(partitionDepth > 0,
+          "partitionDepth must be positive: %s", partitionDepth);
+      this.partitionLocks = new ReentrantReadWriteLock[numPartitions];
+      for (int i = 0; i < numPartitions; i++) {
+        partitionLocks[i] = new ReentrantReadWriteLock(fair);
+      }
+    } else {
+      this.partitionLocks = null;
+    }
+    this.partitionDepth = partitionDepth;
   }
   
   @Override
@@ -81,4 +122,60 @@ public int getWriteHoldCount() {
   public boolean isWriteLockedByCurrentThread() {
     return coarseLock.isWriteLockedByCurrentThread();
   }
+
+  /**
+   * @return true if operations may lock a namespace partition instead of
+   *         taking the coarse write lock.
+   */
+  public boolean isPartitioned() {
+    return partitionLocks != null;
+  }
+
+  /**
+   * Get the lock guarding the partition which contains the given absolute
+   * path. The caller must already hold the coarse read lock.
+   */
+  public Lock partitionLock(String path) {
+    Preconditions.checkState(isPartitioned(), "Partitioned locking is off");
+    final String key = getPartitionKey(path, partitionDepth);
+    return partitionLocks[getPartitionIndex(key, partitionLocks.length)]
+        .writeLock();
+  }
+
+  /**
+   * @return true if the current thread holds the lock of any partition.
+   */
+  @VisibleForTesting
+  public boolean hasPartitionLock() {
+    if (partitionLocks != null) {
+      for (ReentrantReadWriteLock l : partitionLocks) {
+        if (l.isWriteLockedByCurrentThread()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the first {@code depth} components of the given absolute path,
+   *         or the path itself if it is shallower than that.
+   */
+  @VisibleForTesting
+  static String getPartitionKey(String path, int depth) {
+    int idx = 0;
+    for (int i = 0; i < depth; i++) {
+      idx = path.indexOf(Path.SEPARATOR_CHAR, idx + 1);
+      if (idx < 0) {
+        return path;
+      }
+    }
+    return path.substring(0, idx);
+  }
+
+  @VisibleForTesting
+  static int getPartitionIndex(String key, int numPartitions) {
+    final int h = key.hashCode();
+    return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % numPartitions;
+  }
 }
@@ -692,7 +692,54 @@ public final INode setAccessTime(long accessTime, int latestSnapshotId)
    */
   @VisibleForTesting
   public static byte[][] getPathComponents(String path) {
-    return getPathComponents(getPathNames(path));
+    if (path == null || !path.startsWith(Path.SEPARATOR)) {
+      throw new AssertionError("Absolute path required");
+    }
+    // Split in one pass instead of going through an intermediate String[].
+    // Like getPathNames, drop trailing separators but keep empty components
+    // in the middle of the path.
+    int end = path.length();
+    while (end > 0 && path.charAt(end - 1) == Path.SEPARATOR_CHAR) {
+      end--;
+    }
+    if (end == 0) {
+      return new byte[][]{null};
+    }
+    int count = 1;
+    for (int i = 0; i < end; i++) {
+      if (path.charAt(i) == Path.SEPARATOR_CHAR) {
+        count++;
+      }
+    }
+    final byte[][] components = new byte[count][];
+    int start = 0;
+    int index = 0;
+    for (int i = 0; i <= end; i++) {
+      if (i == end || path.charAt(i) == Path.SEPARATOR_CHAR) {
+        components[index++] = getComponentBytes(path, start, i);
+        start = i + 1;
+      }
+    }
+    return components;
+  }
+
+  /**
+   * @return the UTF-8 bytes of path.substring(start, end), without creating
+   *         the substring when the component is plain ASCII.
+   */
+  private static byte[] getComponentBytes(String path, int start, int end) {
+    if (start == end) {
+      return DFSUtil.EMPTY_BYTES;
+    }
+    final byte[] bytes = new byte[end - start];
+    for (int i = start; i < end; i++) {
+      final char c = path.charAt(i);
+      if (c >= 0x80) {
+        return DFSUtil.string2Bytes(path.substring(start, end));
+      }
+      bytes[i - start] = (byte) c;
+    }
+    return bytes;
   }
 
   /** Convert strings to byte arrays for path components. */
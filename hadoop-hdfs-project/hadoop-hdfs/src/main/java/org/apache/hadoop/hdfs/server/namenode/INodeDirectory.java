@@ -511,6 +511,19 @@ public boolean addChild(INode node) {
     return true;
   }
 
+  /**
+   * Allocate the children list with room for exactly the given number of
+   * children. This is used when the number of children is known up front,
+   * e.g. while loading the fsimage, so that large directories do not grow
+   * their list several times and small ones do not carry the default slack.
+   * It has no effect if the directory already has children.
+   */
+  void allocateChildren(int capacity) {
+    if (children == null && capacity > 0) {
+      children = new ArrayList<INode>(capacity);
+    }
+  }
+
   /**
    * Add the node to the children list at the given insertion point.
    * The basic add method which actually calls children.add(..).
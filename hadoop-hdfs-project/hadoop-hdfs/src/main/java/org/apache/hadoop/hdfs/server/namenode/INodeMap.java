@@ -22,6 +22,7 @@
 
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
 import org.apache.hadoop.hdfs.server.namenode.Quota.Counts;
 import org.apache.hadoop.util.GSet;
@@ -36,8 +37,14 @@
 public class INodeMap {
   
   static INodeMap newInstance(INodeDirectory rootDir) {
-    // Compute the map capacity by allocating 1% of total memory
-    int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
+    return newInstance(rootDir,
+        DFSConfigKeys.DFS_NAMENODE_INODE_MAP_CAPACITY_PERCENT_DEFAULT);
+  }
+
+  static INodeMap newInstance(INodeDirectory rootDir, double percentage) {
+    // Compute the map capacity by allocating a percentage (1% by default) of
+    // total memory
+    int capacity = LightWeightGSet.computeCapacity(percentage, "INodeMap");
     GSet<INode, INodeWithAdditionalFields> map
         = new LightWeightGSet<INode, INodeWithAdditionalFields>(capacity);
     map.put(rootDir);
@@ -17,18 +17,24 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import static org.apache.hadoop.util.Time.monotonicNow;
 import static org.apache.hadoop.util.Time.now;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -77,9 +83,14 @@ public class LeaseManager {
   // Used for handling lock-leases
   // Mapping: leaseHolder -> Lease
   //
-  private final SortedMap<String, Lease> leases = new TreeMap<String, Lease>();
-  // Set of: Lease
-  private final SortedSet<Lease> sortedLeases = new TreeSet<Lease>();
+  private final ConcurrentMap<String, Lease> leases =
+      new ConcurrentHashMap<String, Lease>();
+  // Set of: Lease, oldest renewal first. Renewals reorder a lease while
+  // synchronized on that lease only, see renewLease(Lease), so that clients
+  // renewing their leases do not contend with each other or with the
+  // lease Monitor.
+  private final NavigableSet<Lease> sortedLeases =
+      new ConcurrentSkipListSet<Lease>();
 
   // 
   // Map path names to leases. It is protected by the sortedLeases lock.
@@ -102,7 +113,7 @@ Lease getLease(String holder) {
   public Lease getLeaseByPath(String src) {return sortedLeasesByPath.get(src);}
 
   /** @return the number of leases currently in the system */
-  public synchronized int countLease() {return sortedLeases.size();}
+  public int countLease() {return leases.size();}
 
   /** @return the number of paths contained in all leases */
   synchronized int countPath() {
@@ -143,8 +154,11 @@ synchronized void removeLease(Lease lease, String src) {
 
     if (!lease.hasPath()) {
       leases.remove(lease.holder);
-      if (!sortedLeases.remove(lease)) {
-        LOG.error(lease + " not found in sortedLeases");
+      synchronized (lease) {
+        lease.removed = true;
+        if (!sortedLeases.remove(lease)) {
+          LOG.error(lease + " not found in sortedLeases");
+        }
       }
     }
   }
@@ -163,6 +177,11 @@ synchronized void removeLease(String holder, String src) {
   }
 
   synchronized void removeAllLeases() {
+    for (Lease lease : leases.values()) {
+      synchronized (lease) {
+        lease.removed = true;
+      }
+    }
     sortedLeases.clear();
     sortedLeasesByPath.clear();
     leases.clear();
@@ -182,14 +201,26 @@ synchronized Lease reassignLease(Lease lease, String src, String newHolder) {
   /**
    * Renew the lease(s) held by the given client
    */
-  synchronized void renewLease(String holder) {
+  void renewLease(String holder) {
     renewLease(getLease(holder));
   }
-  synchronized void renewLease(Lease lease) {
+
+  /**
+   * Renew the given lease. This does not take the LeaseManager lock.
+   * Synchronizing on the lease guards against concurrent renewals of the
+   * same lease, which would corrupt the ordering of sortedLeases, and
+   * against resurrecting a lease that has been removed in the meantime.
+   */
+  void renewLease(Lease lease) {
     if (lease != null) {
-      sortedLeases.remove(lease);
-      lease.renew();
-      sortedLeases.add(lease);
+      synchronized (lease) {
+        if (lease.removed) {
+          return;
+        }
+        sortedLeases.remove(lease);
+        lease.renew();
+        sortedLeases.add(lease);
+      }
     }
   }
 
@@ -211,7 +242,9 @@ synchronized void renewAllLeases() {
    *************************************************************/
   class Lease implements Comparable<Lease> {
     private final String holder;
-    private long lastUpdate;
+    private volatile long lastUpdate;
+    // set, under the monitor of this lease, once it is no longer managed
+    private boolean removed = false;
     private final Collection<String> paths = new TreeSet<String>();
   
     /** Only LeaseManager object can create a lease */
@@ -375,11 +408,13 @@ class Monitor implements Runnable {
     public void run() {
       for(; shouldRunMonitor && fsnamesystem.isRunning(); ) {
         boolean needSync = false;
+        boolean checked = false;
         try {
           fsnamesystem.writeLockInterruptibly();
           try {
             if (!fsnamesystem.isInSafeMode()) {
               needSync = checkLeases();
+              checked = true;
             }
           } finally {
             fsnamesystem.writeUnlock();
@@ -388,7 +423,12 @@ public void run() {
               fsnamesystem.getEditLog().logSync();
             }
           }
-  
+
+          // checkLeases() gives up the lock after a bounded time; carry on
+          // right away if it left expired leases behind.
+          if (checked && isOldestLeaseExpired()) {
+            continue;
+          }
           Thread.sleep(HdfsServerConstants.NAMENODE_LEASE_RECHECK_INTERVAL);
         } catch(InterruptedException ie) {
           if (LOG.isDebugEnabled()) {
@@ -418,14 +458,33 @@ Map<String, INodeFile> getINodesUnderConstruction() {
     return inodes;
   }
   
+  /** @return the lease renewed least recently, or null if there is none */
+  private Lease getOldestLease() {
+    // sortedLeases may be emptied concurrently by a renewal, which
+    // first() would fail on.
+    Iterator<Lease> it = sortedLeases.iterator();
+    return it.hasNext() ? it.next() : null;
+  }
+
+  private boolean isOldestLeaseExpired() {
+    Lease oldest = getOldestLease();
+    return oldest != null && oldest.expiredHardLimit();
+  }
+
   /** Check the leases beginning from the oldest.
+   *  The write lock is held for at most
+   *  {@link FSNamesystem#getMaxLockHoldToReleaseLeaseMs()}; the remaining
+   *  expired leases are left for the next check.
    *  @return true is sync is needed.
    */
-  private synchronized boolean checkLeases() {
+  @VisibleForTesting
+  synchronized boolean checkLeases() {
     boolean needSync = false;
     assert fsnamesystem.hasWriteLock();
-    for(; sortedLeases.size() > 0; ) {
-      final Lease oldest = sortedLeases.first();
+    final long maxLockHoldMs = fsnamesystem.getMaxLockHoldToReleaseLeaseMs();
+    final long start = monotonicNow();
+    for(Lease oldest = getOldestLease(); oldest != null;
+        oldest = getOldestLease()) {
       if (!oldest.expiredHardLimit()) {
         return needSync;
       }
@@ -459,11 +518,21 @@ private synchronized boolean checkLeases() {
               + oldest, e);
           removing.add(p);
         }
+        if (maxLockHoldMs > 0 && monotonicNow() - start > maxLockHoldMs) {
+          break;
+        }
       }
 
       for(String p : removing) {
         removeLease(oldest, p);
       }
+      if (maxLockHoldMs > 0 && monotonicNow() - start > maxLockHoldMs) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Released expired leases for " + (monotonicNow() - start)
+              + " ms, yielding the lock");
+        }
+        return needSync;
+      }
     }
     return needSync;
   }
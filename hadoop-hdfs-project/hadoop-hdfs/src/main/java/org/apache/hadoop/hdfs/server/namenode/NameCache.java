@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs.server.namenode;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
@@ -35,6 +36,12 @@
  * finish initialization. The transient map where use count is tracked is
  * discarded and cache is ready for use.
  * 
+ * Optionally, use counts of names added after initialization keep being
+ * tracked for a bounded number of recently seen names, so that names which
+ * only become frequent at runtime are promoted too. The names promoted this
+ * way are kept apart and bounded by the same number, the least recently used
+ * one being dropped first.
+ * 
  * <p>
  * This class must be synchronized externally.
  * 
@@ -64,18 +71,27 @@ int get() {
 
   static final Log LOG = LogFactory.getLog(NameCache.class.getName());
 
-  /** indicates initialization is in progress */
-  private boolean initialized = false;
-
   /** names used more than {@code useThreshold} is added to the cache */
   private final int useThreshold;
 
+  /**
+   * Number of names whose use count is tracked, and of names promoted, after
+   * initialization; 0 to stop tracking
+   */
+  private final int runtimeTrackingSize;
+
   /** of times a cache look up was successful */
   private int lookups = 0;
 
   /** Cached names */
   final HashMap<K, K> cache = new HashMap<K, K>();
 
+  /**
+   * Names promoted after initialization; null during initialization or
+   * without runtime tracking
+   */
+  private Map<K, K> runtimeCache = null;
+
   /** Names and with number of occurrences tracked during initialization */
   Map<K, UseCount> transientMap = new HashMap<K, UseCount>();
 
@@ -85,7 +101,20 @@ int get() {
    *          cache
    */
   NameCache(int useThreshold) {
+    this(useThreshold, 0);
+  }
+
+  /**
+   * Constructor
+   * @param useThreshold names occurring more than this is promoted to the
+   *          cache
+   * @param runtimeTrackingSize after initialization, keep tracking the use
+   *          count of up to this many of the most recently added names, and
+   *          keep up to this many of the names promoted since
+   */
+  NameCache(int useThreshold, int runtimeTrackingSize) {
     this.useThreshold = useThreshold;
+    this.runtimeTrackingSize = runtimeTrackingSize;
   }
   
   /**
@@ -101,14 +130,22 @@ K put(final K name) {
       lookups++;
       return internal;
     }
+    if (runtimeCache != null) {
+      internal = runtimeCache.get(name);
+      if (internal != null) {
+        lookups++;
+        return internal;
+      }
+    }
 
-    // Track the usage count only during initialization
-    if (!initialized) {
+    // Track the usage count during initialization, and afterwards only if
+    // runtime tracking is enabled
+    if (transientMap != null) {
       UseCount useCount = transientMap.get(name);
       if (useCount != null) {
         useCount.increment();
         if (useCount.get() >= useThreshold) {
-          promote(name);
+          promote(useCount.value);
         }
         return useCount.value;
       }
@@ -131,35 +168,54 @@ int getLookupCount() {
    * @return Number of names stored in the cache
    */
   int size() {
-    return cache.size();
+    return cache.size() + (runtimeCache == null ? 0 : runtimeCache.size());
   }
 
   /**
-   * Mark the name cache as initialized. The use count is no longer tracked
-   * and the transient map used for initializing the cache is discarded to
-   * save heap space.
+   * Mark the name cache as initialized. The transient map used for
+   * initializing the cache is discarded to save heap space. Unless runtime
+   * tracking is enabled, the use count is no longer tracked.
    */
   void initialized() {
     LOG.info("initialized with " + size() + " entries " + lookups + " lookups");
-    this.initialized = true;
     transientMap.clear();
-    transientMap = null;
+    if (runtimeTrackingSize > 0) {
+      transientMap = newLruMap(runtimeTrackingSize);
+      runtimeCache = newLruMap(runtimeTrackingSize);
+    } else {
+      transientMap = null;
+    }
+  }
+
+  /**
+   * Create a map which forgets the least recently used entry once it holds
+   * more than {@code maxSize} entries.
+   */
+  private static <K, V> Map<K, V> newLruMap(final int maxSize) {
+    return new LinkedHashMap<K, V>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxSize;
+      }
+    };
   }
   
   /** Promote a frequently used name to the cache */
   private void promote(final K name) {
     transientMap.remove(name);
-    cache.put(name, name);
+    if (runtimeCache != null) {
+      runtimeCache.put(name, name);
+    } else {
+      cache.put(name, name);
+    }
     lookups += useThreshold;
   }
 
   public void reset() {
-    initialized = false;
     cache.clear();
-    if (transientMap == null) {
-      transientMap = new HashMap<K, UseCount>();
-    } else {
-      transientMap.clear();
-    }
+    runtimeCache = null;
+    transientMap = new HashMap<K, UseCount>();
   }
 }
@@ -65,6 +65,7 @@
 import org.apache.hadoop.util.JvmPauseMonitor;
 import org.apache.hadoop.util.ServicePlugin;
 import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Time;
 
 import javax.management.ObjectName;
 
@@ -262,6 +263,7 @@ public long getProtocolVersion(String protocol,
   private final boolean haEnabled;
   private final HAContext haContext;
   protected final boolean allowStaleStandbyReads;
+  private final long consistentReadMaxWaitMs;
 
   
   /** httpServer */
@@ -750,6 +752,9 @@ protected NameNode(Configuration conf, NamenodeRole role)
     this.haEnabled = HAUtil.isHAEnabled(conf, nsId);
     state = createHAState(getStartupOption(conf));
     this.allowStaleStandbyReads = HAUtil.shouldAllowStandbyReads(conf);
+    this.consistentReadMaxWaitMs = conf.getLong(
+        DFSConfigKeys.DFS_HA_CONSISTENT_READ_MAX_WAIT_KEY,
+        DFSConfigKeys.DFS_HA_CONSISTENT_READ_MAX_WAIT_DEFAULT);
     this.haContext = createHAContext();
     try {
       initializeGenericKeys(conf, nsId, namenodeId);
@@ -1704,6 +1709,9 @@ public void writeUnlock() {
     public void checkOperation(final OperationCategory op)
         throws StandbyException {
       state.checkOperation(haContext, op);
+      if (op == OperationCategory.READ && state == STANDBY_STATE) {
+        waitForClientState();
+      }
     }
     
     @Override
@@ -1713,6 +1721,40 @@ public boolean allowStaleReads() {
 
   }
   
+  /**
+   * Hold back a read on the standby until it has applied the edits the
+   * client of the current call has already seen. Clients send the last
+   * transaction id they have seen with each call, see
+   * {@link GlobalStateIdContext}; other calls are served right away.
+   */
+  private void waitForClientState() throws StandbyException {
+    final Server.Call call = Server.getCurCall().get();
+    final long clientStateId = call == null ? -1 : call.getClientStateId();
+    if (clientStateId < 0) {
+      return;
+    }
+    final FSImage image = namesystem.getFSImage();
+    final long deadline = Time.monotonicNow() + consistentReadMaxWaitMs;
+    long appliedTxId;
+    while ((appliedTxId = image.getLastAppliedOrWrittenTxId())
+        < clientStateId) {
+      final long remaining = deadline - Time.monotonicNow();
+      // edits cannot be applied while the caller holds the namesystem lock
+      if (remaining <= 0 || namesystem.hasReadLock()) {
+        throw new StandbyException("Standby has applied transactions up to "
+            + appliedTxId + ", behind transaction " + clientStateId
+            + " already seen by the client");
+      }
+      try {
+        Thread.sleep(Math.min(remaining, 10));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new StandbyException(
+            "Interrupted while waiting for transaction " + clientStateId);
+      }
+    }
+  }
+
   public boolean isStandbyState() {
     return (state.equals(STANDBY_STATE));
   }
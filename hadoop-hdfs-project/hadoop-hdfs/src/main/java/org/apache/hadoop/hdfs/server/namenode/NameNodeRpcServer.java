@@ -68,6 +68,8 @@
 import org.apache.hadoop.hdfs.HDFSPolicyProvider;
 import org.apache.hadoop.hdfs.protocol.AclException;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOp;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -324,6 +326,10 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
         .setVerbose(false)
         .setSecretManager(namesystem.getDelegationTokenSecretManager())
         .build();
+    if (conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_DEFAULT)) {
+      clientRpcServer.setAlignmentContext(new GlobalStateIdContext(namesystem));
+    }
 
     // Add all the RPC protocols that the namenode implements
     DFSUtil.addPBProtocol(conf, HAServiceProtocolPB.class, haPbService,
@@ -790,6 +796,43 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
             null, masked), createParent);
   }
 
+  @Override // ClientProtocol
+  public List<BatchedMetadataOpResult> batchMetadataOps(
+      List<BatchedMetadataOp> ops) throws IOException {
+    if(stateChangeLog.isDebugEnabled()) {
+      stateChangeLog.debug("*DIR* NameNode.batchMetadataOps: " + ops.size()
+          + " operations");
+    }
+    for (BatchedMetadataOp op : ops) {
+      String path = op.getType() == BatchedMetadataOp.Type.RENAME ?
+          op.getDst() : op.getSrc();
+      if (!checkPathLength(path)) {
+        throw new IOException("batchMetadataOps: Pathname too long.  Limit "
+            + MAX_PATH_LENGTH + " characters, " + MAX_PATH_DEPTH + " levels.");
+      }
+    }
+    List<BatchedMetadataOpResult> results = namesystem.batchMetadataOps(ops);
+    for (int i = 0; i < results.size(); i++) {
+      BatchedMetadataOpResult result = results.get(i);
+      if (!result.isSuccess()) {
+        continue;
+      }
+      switch (ops.get(i).getType()) {
+      case RENAME:
+        metrics.incrFilesRenamed();
+        break;
+      case DELETE:
+        if (result.getResult()) {
+          metrics.incrDeleteFileOps();
+        }
+        break;
+      default:
+        break;
+      }
+    }
+    return results;
+  }
+
   @Override // ClientProtocol
   public void renewLease(String clientName) throws IOException {
     namesystem.renewLease(clientName);        
@@ -1171,6 +1214,7 @@ public void refreshUserToGroupsMappings() throws IOException {
     LOG.info("Refreshing all user-to-groups mappings. Requested by user: " + 
              getRemoteUser().getShortUserName());
     Groups.getUserToGroupsMappingService().refresh();
+    namesystem.clearPermissionCheckerCache();
   }
 
   @Override // RefreshAuthorizationPolicyProtocol
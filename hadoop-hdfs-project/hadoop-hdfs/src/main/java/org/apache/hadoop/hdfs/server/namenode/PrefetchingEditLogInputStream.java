@@ -0,0 +1,243 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.Daemon;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * An {@link EditLogInputStream} which reads, verifies and decodes the ops of
+ * another stream in a background thread, so that decoding of later ops
+ * overlaps with the caller applying earlier ones.
+ *
+ * Up to a fixed number of decoded ops are buffered. Ops are decoded into
+ * fresh instances rather than the per-reader instance cache, since they
+ * outlive the next read. A read error is handed to the caller in stream
+ * order, after which the background thread stops. If the caller then calls
+ * {@link #resync()}, the underlying stream is resynced and the background
+ * thread resumes after the damaged section.
+ *
+ * Closing this stream stops the background thread but leaves the underlying
+ * stream open; it remains owned by the caller.
+ */
+@InterfaceAudience.Private
+class PrefetchingEditLogInputStream extends EditLogInputStream {
+  static final Log LOG =
+      LogFactory.getLog(PrefetchingEditLogInputStream.class);
+
+  private static final long OFFER_TIMEOUT_MS = 100;
+
+  /** A decoded op, or the end of the stream, with the position after it. */
+  private static class Entry {
+    final FSEditLogOp op;
+    final long position;
+    final Throwable error;
+
+    Entry(FSEditLogOp op, long position, Throwable error) {
+      this.op = op;
+      this.position = position;
+      this.error = error;
+    }
+
+    boolean isLast() {
+      return op == null;
+    }
+  }
+
+  private final EditLogInputStream in;
+  private final BlockingQueue<Entry> queue;
+  private Daemon prefetcher;
+  private volatile boolean closed = false;
+  /** The maximum op size for the background thread to apply, or -1. */
+  private volatile int maxOpSize = -1;
+
+  /** The entry which ended the stream, once the caller has reached it. */
+  private Entry last = null;
+  private long position;
+
+  PrefetchingEditLogInputStream(EditLogInputStream in, int maxPrefetchedOps) {
+    Preconditions.checkArgument(maxPrefetchedOps > 0);
+    this.in = in;
+    this.queue = new ArrayBlockingQueue<Entry>(maxPrefetchedOps);
+    this.position = in.getPosition();
+    startPrefetcher();
+  }
+
+  private void startPrefetcher() {
+    prefetcher = new Daemon(new Prefetcher());
+    prefetcher.setName("Edit log prefetcher for " + in.getName());
+    prefetcher.start();
+  }
+
+  private class Prefetcher implements Runnable {
+    @Override
+    public void run() {
+      FSEditLogOp.OpInstanceCache.setReuseInCurrentThread(false);
+      try {
+        Entry entry;
+        int appliedMaxOpSize = -1;
+        do {
+          try {
+            final int newMaxOpSize = maxOpSize;
+            if (newMaxOpSize != appliedMaxOpSize) {
+              in.setMaxOpSize(newMaxOpSize);
+              appliedMaxOpSize = newMaxOpSize;
+            }
+            FSEditLogOp op = in.readOp();
+            entry = new Entry(op, in.getPosition(), null);
+          } catch (Throwable t) {
+            entry = new Entry(null, in.getPosition(), t);
+          }
+          while (!queue.offer(entry, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            if (closed) {
+              return;
+            }
+          }
+        } while (!entry.isLast() && !closed);
+      } catch (InterruptedException e) {
+        LOG.warn(Thread.currentThread().getName() + " interrupted");
+      } finally {
+        FSEditLogOp.OpInstanceCache.setReuseInCurrentThread(true);
+      }
+    }
+  }
+
+  @Override
+  protected FSEditLogOp nextOp() throws IOException {
+    Entry entry = last;
+    if (entry == null) {
+      try {
+        entry = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while waiting for the next edit log op");
+      }
+      position = entry.position;
+      if (entry.isLast()) {
+        last = entry;
+      }
+    }
+    if (entry.error != null) {
+      Throwables.propagateIfPossible(entry.error, IOException.class);
+      throw new IOException(entry.error);
+    }
+    return entry.op;
+  }
+
+  /**
+   * Skip over a damaged section of the underlying stream once the caller
+   * has received the read error it caused. The background thread stops
+   * after handing over an error, so the underlying stream is no longer
+   * being read: it is resynced, and prefetching resumes from its new
+   * position. Before the caller has received an error, the buffered ops are
+   * valid and there is nothing to skip.
+   */
+  @Override
+  public void resync() {
+    if (closed || last == null || last.error == null) {
+      return;
+    }
+    Uninterruptibles.joinUninterruptibly(prefetcher);
+    queue.clear();
+    in.resync();
+    last = null;
+    position = in.getPosition();
+    startPrefetcher();
+  }
+
+  @Override
+  public String getName() {
+    return in.getName();
+  }
+
+  @Override
+  public long getFirstTxId() {
+    return in.getFirstTxId();
+  }
+
+  @Override
+  public long getLastTxId() {
+    return in.getLastTxId();
+  }
+
+  @Override
+  public int getVersion(boolean verifyVersion) throws IOException {
+    return in.getVersion(verifyVersion);
+  }
+
+  /**
+   * @return the position of the underlying stream after the last op
+   *         returned by this stream, rather than after the last op decoded
+   */
+  @Override
+  public long getPosition() {
+    return position;
+  }
+
+  @Override
+  public long length() throws IOException {
+    return in.length();
+  }
+
+  @Override
+  public boolean isInProgress() {
+    return in.isInProgress();
+  }
+
+  /**
+   * Set the maximum op size of the underlying stream. The background thread
+   * applies it before decoding its next op, so ops which are already
+   * buffered keep the limit they were read with.
+   */
+  @Override
+  public void setMaxOpSize(int maxOpSize) {
+    Preconditions.checkArgument(maxOpSize >= 0);
+    this.maxOpSize = maxOpSize;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    queue.clear();
+    try {
+      prefetcher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(
+          "Interrupted while stopping " + prefetcher.getName());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
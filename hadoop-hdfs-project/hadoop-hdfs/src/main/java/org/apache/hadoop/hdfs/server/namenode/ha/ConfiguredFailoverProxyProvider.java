@@ -118,7 +118,15 @@ public Class<T> getInterface() {
    */
   @Override
   public synchronized ProxyInfo<T> getProxy() {
-    AddressRpcProxyPair<T> current = proxies.get(currentProxyIndex);
+    return getProxy(currentProxyIndex);
+  }
+
+  /**
+   * Lazily initialize the RPC proxy object of the NameNode at the given index
+   * of the configured addresses.
+   */
+  protected synchronized ProxyInfo<T> getProxy(int index) {
+    AddressRpcProxyPair<T> current = proxies.get(index);
     if (current.namenode == null) {
       try {
         current.namenode = NameNodeProxies.createNonHAProxy(conf,
@@ -136,6 +144,16 @@ public synchronized void performFailover(T currentProxy) {
     currentProxyIndex = (currentProxyIndex + 1) % proxies.size();
   }
 
+  /** @return the index of the NameNode calls are currently sent to */
+  protected synchronized int getCurrentProxyIndex() {
+    return currentProxyIndex;
+  }
+
+  /** @return the number of configured NameNode addresses */
+  protected int getProxyCount() {
+    return proxies.size();
+  }
+
   /**
    * A little pair object to store the address and connected RPC proxy object to
    * an NN. Note that {@link AddressRpcProxyPair#namenode} may be null.
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.Client;
+import org.apache.hadoop.ipc.Client.ConnectionId;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RpcInvocationHandler;
+import org.apache.hadoop.ipc.StandbyException;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A {@link ConfiguredFailoverProxyProvider} which lets read-only metadata
+ * calls be served by a standby NameNode, keeping writes and all other calls
+ * on the active one.
+ *
+ * The client tracks the latest transaction id it has seen from any NameNode
+ * (see {@link ClientGSIContext}) and sends it with every call. A standby only
+ * answers once it has applied that transaction, so a client always observes
+ * its own writes. If a standby refuses a call, or cannot be reached, the call
+ * is sent to the active NameNode instead.
+ *
+ * This requires dfs.ha.allow.stale.reads and
+ * dfs.namenode.state.context.enabled on the NameNodes.
+ */
+public class ObserverReadProxyProvider<T>
+    extends ConfiguredFailoverProxyProvider<T> {
+  private static final Log LOG =
+      LogFactory.getLog(ObserverReadProxyProvider.class);
+
+  /** Calls which may be served by a standby NameNode. */
+  private static final Set<String> READ_METHODS = ImmutableSet.of(
+      "getFileInfo", "getListing", "getBlockLocations");
+
+  private final ClientGSIContext alignmentContext = new ClientGSIContext();
+
+  public ObserverReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface) {
+    super(conf, uri, xface);
+  }
+
+  @Override
+  public synchronized ProxyInfo<T> getProxy() {
+    final ProxyInfo<T> current = super.getProxy();
+    @SuppressWarnings("unchecked")
+    final T proxy = (T) Proxy.newProxyInstance(
+        getInterface().getClassLoader(), new Class<?>[] { getInterface() },
+        new ObserverReadInvocationHandler(current.proxy));
+    return new ProxyInfo<T>(proxy, current.proxyInfo);
+  }
+
+  /** @return the client side state of this provider */
+  public AlignmentContext getAlignmentContext() {
+    return alignmentContext;
+  }
+
+  /**
+   * @return true if a call refused by a standby NameNode with the given
+   * exception should be retried on the current NameNode.
+   */
+  private static boolean shouldFallBack(Throwable t) {
+    if (t instanceof RemoteException) {
+      return StandbyException.class.getName().equals(
+          ((RemoteException) t).getClassName());
+    }
+    return t instanceof IOException;
+  }
+
+  private class ObserverReadInvocationHandler implements RpcInvocationHandler {
+    private final T currentProxy;
+
+    ObserverReadInvocationHandler(T currentProxy) {
+      this.currentProxy = currentProxy;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      final AlignmentContext previous = Client.getAlignmentContext();
+      Client.setAlignmentContext(alignmentContext);
+      try {
+        if (READ_METHODS.contains(method.getName())
+            && alignmentContext.getLastSeenStateId() > 0) {
+          final int currentIndex = getCurrentProxyIndex();
+          for (int i = 0; i < getProxyCount(); i++) {
+            if (i == currentIndex) {
+              continue;
+            }
+            try {
+              return method.invoke(getProxy(i).proxy, args);
+            } catch (InvocationTargetException e) {
+              final Throwable cause = e.getCause();
+              if (!shouldFallBack(cause)) {
+                throw cause;
+              }
+              if (LOG.isDebugEnabled()) {
+                LOG.debug("Standby NameNode " + i + " could not serve "
+                    + method.getName() + ": " + cause);
+              }
+            } catch (RuntimeException e) {
+              // the proxy could not be created
+              LOG.debug("Failed to create proxy for NameNode " + i, e);
+            }
+          }
+        }
+        try {
+          return method.invoke(currentProxy, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      } finally {
+        Client.setAlignmentContext(previous);
+      }
+    }
+
+    @Override
+    public ConnectionId getConnectionId() {
+      return RPC.getConnectionIdForProxy(currentProxy);
+    }
+
+    @Override
+    public void close() throws IOException {
+      // the proxies are owned, and closed, by the provider
+    }
+  }
+}
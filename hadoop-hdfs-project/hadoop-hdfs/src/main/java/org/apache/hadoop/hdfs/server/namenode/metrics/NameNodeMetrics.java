@@ -81,10 +81,18 @@ public class NameNodeMetrics {
   final MutableQuantiles[] syncsQuantiles;
   @Metric("Journal transactions batched in sync")
   MutableCounterLong transactionsBatchedInSync;
+  @Metric("RPC responses released per asynchronous journal sync")
+  MutableRate syncBatchSize;
+  final MutableQuantiles[] syncBatchSizeQuantiles;
+  @Metric("Time RPC responses were held waiting for a journal sync")
+  MutableRate syncWait;
+  final MutableQuantiles[] syncWaitQuantiles;
   @Metric("Block report") MutableRate blockReport;
   final MutableQuantiles[] blockReportQuantiles;
   @Metric("Cache report") MutableRate cacheReport;
   final MutableQuantiles[] cacheReportQuantiles;
+  @Metric("Time the write lock is held by a decommission check")
+  MutableRate decommissionCheck;
 
   @Metric("Duration in SafeMode at startup in msec")
   MutableGaugeInt safeModeTime;
@@ -107,6 +115,8 @@ public class NameNodeMetrics {
     
     final int len = intervals.length;
     syncsQuantiles = new MutableQuantiles[len];
+    syncBatchSizeQuantiles = new MutableQuantiles[len];
+    syncWaitQuantiles = new MutableQuantiles[len];
     blockReportQuantiles = new MutableQuantiles[len];
     cacheReportQuantiles = new MutableQuantiles[len];
     
@@ -115,6 +125,14 @@ public class NameNodeMetrics {
       syncsQuantiles[i] = registry.newQuantiles(
           "syncs" + interval + "s",
           "Journal syncs", "ops", "latency", interval);
+      syncBatchSizeQuantiles[i] = registry.newQuantiles(
+          "syncBatchSize" + interval + "s",
+          "RPC responses released per asynchronous journal sync",
+          "ops", "calls", interval);
+      syncWaitQuantiles[i] = registry.newQuantiles(
+          "syncWait" + interval + "s",
+          "Time RPC responses were held waiting for a journal sync",
+          "ops", "latency", interval);
       blockReportQuantiles[i] = registry.newQuantiles(
           "blockReport" + interval + "s", 
           "Block report", "ops", "latency", interval);
@@ -252,6 +270,17 @@ public void addSync(long elapsed) {
     }
   }
 
+  public void addSyncBatch(int calls, long oldestWait) {
+    syncBatchSize.add(calls);
+    for (MutableQuantiles q : syncBatchSizeQuantiles) {
+      q.add(calls);
+    }
+    syncWait.add(oldestWait);
+    for (MutableQuantiles q : syncWaitQuantiles) {
+      q.add(oldestWait);
+    }
+  }
+
   public void setFsImageLoadTime(long elapsed) {
     fsImageLoadTime.set((int) elapsed);
   }
@@ -270,6 +299,10 @@ public void addCacheBlockReport(long latency) {
     }
   }
 
+  public void addDecommissionCheck(long lockHeld) {
+    decommissionCheck.add(lockHeld);
+  }
+
   public void setSafeModeTime(long elapsed) {
     safeModeTime.set((int) elapsed);
   }
@@ -23,6 +23,10 @@
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -46,6 +50,7 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 
 /**
@@ -57,6 +62,11 @@
 public class DirectorySnapshottableFeature extends DirectoryWithSnapshotFeature {
   /** Limit the number of snapshot per snapshottable directory. */
   static final int SNAPSHOT_LIMIT = 1 << 16;
+  /**
+   * Directories up to this many levels below the snapshot root are diffed as
+   * separate tasks when computing a snapshot diff in parallel.
+   */
+  private static final int PARALLEL_DIFF_DEPTH = 2;
 
   /**
    * Snapshots of this directory in ascending order of snapshot names.
@@ -248,13 +258,17 @@ public ContentSummaryComputationContext computeContentSummary(
    * @param from The name of the start point of the comparison. Null indicating
    *          the current tree.
    * @param to The name of the end point. Null indicating the current tree.
+   * @param executor If not null, the subtrees near the snapshot root are
+   *          compared in parallel using this executor. The caller must hold
+   *          the namesystem lock until this method returns.
    * @return The difference between the start/end points.
    * @throws SnapshotException If there is no snapshot matching the starting
    *           point, or if endSnapshotName is not null but cannot be identified
    *           as a previous snapshot.
    */
   SnapshotDiffInfo computeDiff(final INodeDirectory snapshotRoot,
-      final String from, final String to) throws SnapshotException {
+      final String from, final String to, final ExecutorService executor)
+      throws SnapshotException {
     Snapshot fromSnapshot = getSnapshotByName(snapshotRoot, from);
     Snapshot toSnapshot = getSnapshotByName(snapshotRoot, to);
     // if the start point is equal to the end point, return null
@@ -263,11 +277,27 @@ SnapshotDiffInfo computeDiff(final INodeDirectory snapshotRoot,
     }
     SnapshotDiffInfo diffs = new SnapshotDiffInfo(snapshotRoot, fromSnapshot,
         toSnapshot);
-    computeDiffRecursively(snapshotRoot, snapshotRoot, new ArrayList<byte[]>(),
-        diffs);
+    final DiffWalk walk = new DiffWalk(snapshotRoot, diffs, executor);
+    final SubtreeDiff rootDiff = new SubtreeDiff();
+    boolean success = false;
+    try {
+      walk.computeDiffRecursively(snapshotRoot, new ArrayList<byte[]>(), 0,
+          rootDiff);
+      rootDiff.applyTo(diffs);
+      success = true;
+    } finally {
+      if (!success) {
+        walk.abort();
+      }
+    }
     return diffs;
   }
 
+  SnapshotDiffInfo computeDiff(final INodeDirectory snapshotRoot,
+      final String from, final String to) throws SnapshotException {
+    return computeDiff(snapshotRoot, from, to, null);
+  }
+
   /**
    * Find the snapshot matching the given name.
    *
@@ -292,59 +322,226 @@ private Snapshot getSnapshotByName(INodeDirectory snapshotRoot,
   }
 
   /**
-   * Recursively compute the difference between snapshots under a given
-   * directory/file.
-   * @param snapshotRoot The directory where snapshots were taken.
-   * @param node The directory/file under which the diff is computed.
-   * @param parentPath Relative path (corresponding to the snapshot root) of
-   *                   the node's parent.
-   * @param diffReport data structure used to store the diff.
+   * The diff entries found under a subtree, in the order of a sequential
+   * depth-first walk. Subtrees handed to other threads are kept as futures
+   * and resolved when the entries are applied, so the resulting
+   * {@link SnapshotDiffInfo} is the same as with a sequential walk.
    */
-  private void computeDiffRecursively(final INodeDirectory snapshotRoot,
-      INode node, List<byte[]> parentPath, SnapshotDiffInfo diffReport) {
-    final Snapshot earlierSnapshot = diffReport.isFromEarlier() ?
-        diffReport.getFrom() : diffReport.getTo();
-    final Snapshot laterSnapshot = diffReport.isFromEarlier() ?
-        diffReport.getTo() : diffReport.getFrom();
-    byte[][] relativePath = parentPath.toArray(new byte[parentPath.size()][]);
-    if (node.isDirectory()) {
-      final ChildrenDiff diff = new ChildrenDiff();
-      INodeDirectory dir = node.asDirectory();
-      DirectoryWithSnapshotFeature sf = dir.getDirectoryWithSnapshotFeature();
-      if (sf != null) {
-        boolean change = sf.computeDiffBetweenSnapshots(earlierSnapshot,
-            laterSnapshot, diff, dir);
-        if (change) {
-          diffReport.addDirDiff(dir, relativePath, diff);
+  private static class SubtreeDiff {
+    private final List<Object> entries = new ArrayList<Object>();
+
+    private static class Entry {
+      final INode node;
+      final long renameId;
+      final byte[][] path;
+      final ChildrenDiff diff;
+
+      Entry(INode node, long renameId, byte[][] path, ChildrenDiff diff) {
+        this.node = node;
+        this.renameId = renameId;
+        this.path = path;
+        this.diff = diff;
+      }
+    }
+
+    void addDirDiff(INodeDirectory dir, byte[][] path, ChildrenDiff diff) {
+      entries.add(new Entry(dir, 0, path, diff));
+    }
+
+    void addFileDiff(INodeFile file, byte[][] path) {
+      entries.add(new Entry(file, 0, path, null));
+    }
+
+    void setRenameTarget(long inodeId, byte[][] path) {
+      entries.add(new Entry(null, inodeId, path, null));
+    }
+
+    void addSubtree(Future<SubtreeDiff> subtree) {
+      entries.add(subtree);
+    }
+
+    @SuppressWarnings("unchecked")
+    void applyTo(SnapshotDiffInfo diffReport) throws SnapshotException {
+      for (Object o : entries) {
+        if (o instanceof Future) {
+          getSubtree((Future<SubtreeDiff>) o).applyTo(diffReport);
+          continue;
+        }
+        final Entry e = (Entry) o;
+        if (e.node == null) {
+          diffReport.setRenameTarget(e.renameId, e.path);
+        } else if (e.diff != null) {
+          diffReport.addDirDiff(e.node.asDirectory(), e.path, e.diff);
+        } else {
+          diffReport.addFileDiff(e.node.asFile(), e.path);
         }
       }
-      ReadOnlyList<INode> children = dir.getChildrenList(earlierSnapshot
-          .getId());
-      for (INode child : children) {
-        final byte[] name = child.getLocalNameBytes();
-        boolean toProcess = diff.searchIndex(ListType.DELETED, name) < 0;
-        if (!toProcess && child instanceof INodeReference.WithName) {
-          byte[][] renameTargetPath = findRenameTargetPath(
-              snapshotRoot, (WithName) child,
-              laterSnapshot == null ? Snapshot.CURRENT_STATE_ID :
-                laterSnapshot.getId());
-          if (renameTargetPath != null) {
-            toProcess = true;
-            diffReport.setRenameTarget(child.getId(), renameTargetPath);
+    }
+
+    private static SubtreeDiff getSubtree(Future<SubtreeDiff> future)
+        throws SnapshotException {
+      try {
+        return future.get();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new SnapshotException(ie);
+      } catch (ExecutionException ee) {
+        Throwables.propagateIfPossible(ee.getCause());
+        throw new SnapshotException(ee.getCause());
+      }
+    }
+  }
+
+  /**
+   * Walks the tree under a snapshottable directory to compute the diff
+   * between two snapshots. Child directories found within
+   * {@link #PARALLEL_DIFF_DEPTH} levels of the snapshot root are walked by
+   * the executor, if there is one.
+   */
+  private class DiffWalk {
+    private final INodeDirectory snapshotRoot;
+    private final Snapshot earlierSnapshot;
+    private final Snapshot laterSnapshot;
+    private final ExecutorService executor;
+    /** Set once the diff has failed; guarded by this for writes. */
+    private volatile boolean aborted = false;
+    /** Number of subtree walks running on the executor; guarded by this. */
+    private int running = 0;
+    /** The subtree walks handed to the executor; guarded by this. */
+    private final List<Future<SubtreeDiff>> submitted =
+        new ArrayList<Future<SubtreeDiff>>();
+
+    DiffWalk(INodeDirectory snapshotRoot, SnapshotDiffInfo diffReport,
+        ExecutorService executor) {
+      this.snapshotRoot = snapshotRoot;
+      this.earlierSnapshot = diffReport.isFromEarlier() ?
+          diffReport.getFrom() : diffReport.getTo();
+      this.laterSnapshot = diffReport.isFromEarlier() ?
+          diffReport.getTo() : diffReport.getFrom();
+      this.executor = executor;
+    }
+
+    /**
+     * Recursively compute the difference between snapshots under a given
+     * directory/file.
+     * @param node The directory/file under which the diff is computed.
+     * @param parentPath Relative path (corresponding to the snapshot root) of
+     *                   the node's parent.
+     * @param depth The depth of the node below the snapshot root.
+     * @param diffReport data structure used to store the diff.
+     */
+    void computeDiffRecursively(INode node, List<byte[]> parentPath,
+        int depth, SubtreeDiff diffReport) {
+      byte[][] relativePath = parentPath.toArray(new byte[parentPath.size()][]);
+      if (node.isDirectory()) {
+        final ChildrenDiff diff = new ChildrenDiff();
+        INodeDirectory dir = node.asDirectory();
+        DirectoryWithSnapshotFeature sf = dir.getDirectoryWithSnapshotFeature();
+        if (sf != null) {
+          boolean change = sf.computeDiffBetweenSnapshots(earlierSnapshot,
+              laterSnapshot, diff, dir);
+          if (change) {
+            diffReport.addDirDiff(dir, relativePath, diff);
           }
         }
-        if (toProcess) {
+        ReadOnlyList<INode> children = dir.getChildrenList(earlierSnapshot
+            .getId());
+        for (INode child : children) {
+          if (aborted) {
+            return;
+          }
+          final byte[] name = child.getLocalNameBytes();
+          boolean toProcess = diff.searchIndex(ListType.DELETED, name) < 0;
+          if (!toProcess && child instanceof INodeReference.WithName) {
+            byte[][] renameTargetPath = findRenameTargetPath(
+                snapshotRoot, (WithName) child,
+                laterSnapshot == null ? Snapshot.CURRENT_STATE_ID :
+                  laterSnapshot.getId());
+            if (renameTargetPath != null) {
+              toProcess = true;
+              diffReport.setRenameTarget(child.getId(), renameTargetPath);
+            }
+          }
+          if (!toProcess) {
+            continue;
+          }
           parentPath.add(name);
-          computeDiffRecursively(snapshotRoot, child, parentPath, diffReport);
+          if (executor != null && depth < PARALLEL_DIFF_DEPTH
+              && child.isDirectory()) {
+            diffReport.addSubtree(submit(child,
+                new ArrayList<byte[]>(parentPath), depth + 1));
+          } else {
+            computeDiffRecursively(child, parentPath, depth + 1, diffReport);
+          }
           parentPath.remove(parentPath.size() - 1);
         }
+      } else if (node.isFile() && node.asFile().isWithSnapshot()) {
+        INodeFile file = node.asFile();
+        boolean change = file.getFileWithSnapshotFeature()
+            .changedBetweenSnapshots(file, earlierSnapshot, laterSnapshot);
+        if (change) {
+          diffReport.addFileDiff(file, relativePath);
+        }
+      }
+    }
+
+    private synchronized Future<SubtreeDiff> submit(final INode node,
+        final List<byte[]> parentPath, final int depth) {
+      final Future<SubtreeDiff> future = executor.submit(
+          new Callable<SubtreeDiff>() {
+        @Override
+        public SubtreeDiff call() {
+          if (!enterSubtree()) {
+            // the diff failed before this walk started
+            return null;
+          }
+          try {
+            SubtreeDiff subtree = new SubtreeDiff();
+            computeDiffRecursively(node, parentPath, depth, subtree);
+            return subtree;
+          } finally {
+            exitSubtree();
+          }
+        }
+      });
+      submitted.add(future);
+      return future;
+    }
+
+    private synchronized boolean enterSubtree() {
+      if (aborted) {
+        return false;
+      }
+      running++;
+      return true;
+    }
+
+    private synchronized void exitSubtree() {
+      running--;
+      notifyAll();
+    }
+
+    /**
+     * Stop the subtree walks after the diff has failed. Walks that have not
+     * started are cancelled, or skip their work if they start anyway, and
+     * the ones already running are waited for, so that none of them reads
+     * the namespace once the caller releases the namesystem lock.
+     */
+    synchronized void abort() {
+      aborted = true;
+      for (Future<SubtreeDiff> future : submitted) {
+        future.cancel(false);
+      }
+      boolean interrupted = false;
+      while (running > 0) {
+        try {
+          wait();
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        }
       }
-    } else if (node.isFile() && node.asFile().isWithSnapshot()) {
-      INodeFile file = node.asFile();
-      boolean change = file.getFileWithSnapshotFeature()
-          .changedBetweenSnapshots(file, earlierSnapshot, laterSnapshot);
-      if (change) {
-        diffReport.addFileDiff(file, relativePath);
+      if (interrupted) {
+        Thread.currentThread().interrupt();
       }
     }
   }
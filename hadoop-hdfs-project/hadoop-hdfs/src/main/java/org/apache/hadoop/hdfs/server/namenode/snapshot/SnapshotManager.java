@@ -25,10 +25,14 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.ObjectName;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
 import org.apache.hadoop.hdfs.protocol.SnapshotException;
@@ -45,6 +49,7 @@
 import org.apache.hadoop.metrics2.util.MBeans;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Manage snapshottable directories and their snapshots.
@@ -71,8 +76,28 @@ public class SnapshotManager implements SnapshotStatsMXBean {
   private final Map<Long, INodeDirectory> snapshottables =
       new HashMap<Long, INodeDirectory>();
 
+  /**
+   * Used to walk the subtrees of a snapshottable directory in parallel when
+   * computing snapshot diffs; null if diffs are computed by the caller only.
+   */
+  private final ExecutorService diffExecutor;
+
   public SnapshotManager(final FSDirectory fsdir) {
+    this(fsdir, new Configuration());
+  }
+
+  public SnapshotManager(final FSDirectory fsdir, Configuration conf) {
     this.fsdir = fsdir;
+    final int diffThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_DIFF_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_DIFF_THREADS_DEFAULT);
+    if (diffThreads > 1) {
+      this.diffExecutor = Executors.newFixedThreadPool(diffThreads,
+          new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("SnapshotDiff-%d").build());
+    } else {
+      this.diffExecutor = null;
+    }
   }
 
   /** Used in tests only */
@@ -379,7 +404,8 @@ public SnapshotDiffReport diff(final String path, final String from,
           Collections.<DiffReportEntry> emptyList());
     }
     final SnapshotDiffInfo diffs = snapshotRoot
-        .getDirectorySnapshottableFeature().computeDiff(snapshotRoot, from, to);
+        .getDirectorySnapshottableFeature().computeDiff(snapshotRoot, from, to,
+            diffExecutor);
     return diffs != null ? diffs.generateReport() : new SnapshotDiffReport(
         path, from, to, Collections.<DiffReportEntry> emptyList());
   }
@@ -407,6 +433,9 @@ public void registerMXBean() {
   public void shutdown() {
     MBeans.unregister(mxBeanName);
     mxBeanName = null;
+    if (diffExecutor != null) {
+      diffExecutor.shutdownNow();
+    }
   }
 
   @Override // SnapshotStatsMXBean
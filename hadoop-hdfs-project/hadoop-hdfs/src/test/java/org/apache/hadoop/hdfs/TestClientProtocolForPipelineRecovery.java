@@ -21,8 +21,10 @@
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.namenode.LeaseExpiredException;
@@ -205,6 +207,54 @@ public void testPipelineRecoveryOnOOB() throws Exception {
     }
   }
 
+  /**
+   * Test pipeline recovery with pooled transfer threads. The thread that
+   * wrote a replica goes back to the pool when its write ends, so the
+   * recovery must not wait for that thread to die.
+   */
+  @Test(timeout=60000)
+  public void testPipelineRecoveryWithPooledTransferThreads()
+      throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_THREADS_POOL_KEEPALIVE_MS_KEY,
+        60000);
+    // shorter than the test timeout, so a recovery waiting on a live pooled
+    // thread fails the write instead of hanging the test
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_XCEIVER_STOP_TIMEOUT_MILLIS_KEY,
+        10000);
+    MiniDFSCluster cluster = null;
+    try {
+      int numDataNodes = 2;
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(numDataNodes).build();
+      cluster.waitActive();
+      FileSystem fileSys = cluster.getFileSystem();
+
+      Path file = new Path("dataprotocol4.dat");
+      FSDataOutputStream out = fileSys.create(file, (short)2);
+      AppendTestUtil.write(out, 0, 1024);
+      out.hflush();
+
+      // stop the second datanode of the pipeline; the first one recovers
+      // the replica its pooled thread was writing
+      DatanodeInfo[] pipeline =
+          ((DFSOutputStream)out.getWrappedStream()).getPipeline();
+      Assert.assertEquals(2, pipeline.length);
+      cluster.stopDataNode(pipeline[1].getXferAddr());
+
+      AppendTestUtil.write(out, 1024, 1024);
+      out.hflush();
+      Assert.assertEquals(1,
+          ((DFSOutputStream)out.getWrappedStream()).getPipeline().length);
+      out.close();
+      AppendTestUtil.check(fileSys, file, 2048);
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   /** Test restart timeout */
   @Test
   public void testPipelineRecoveryOnRestartFailure() throws Exception {
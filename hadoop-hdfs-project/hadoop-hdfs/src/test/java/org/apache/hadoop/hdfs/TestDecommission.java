@@ -406,6 +406,37 @@ public void testDecommission2() throws IOException {
     cluster.shutdown();
   }
   
+  /**
+   * Tests that decommission completes when the monitor may check only a
+   * few blocks per interval, and that the blocks still needing replication
+   * are all accounted for once it has.
+   */
+  @Test(timeout = 360000)
+  public void testDecommissionWithBlocksPerIntervalLimit()
+      throws Exception {
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INTERVAL_KEY, 1);
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_INTERVAL_KEY, 1);
+    int numDatanodes = 4;
+    startCluster(1, numDatanodes, conf);
+
+    FileSystem fileSys = cluster.getFileSystem(0);
+    FSNamesystem ns = cluster.getNamesystem(0);
+    Path file1 = new Path("testDecommissionBlocksLimit.dat");
+    writeFile(fileSys, file1, 2);
+
+    DatanodeInfo decomNode = decommissionNode(0, null, null,
+        AdminStates.DECOMMISSIONED);
+    // The monitor forgets the node on its next check.
+    for (int i = 0; i < 10 && ns.getPendingDecommissionBlocks() != 0; i++) {
+      Thread.sleep(1000);
+    }
+    assertEquals(0, ns.getPendingDecommissionBlocks());
+    assertNull(checkFile(fileSys, file1, 2, decomNode.getXferAddr(),
+        numDatanodes));
+    cleanupFile(fileSys, file1);
+  }
+
   /**
    * Tests recommission for non federated cluster
    */
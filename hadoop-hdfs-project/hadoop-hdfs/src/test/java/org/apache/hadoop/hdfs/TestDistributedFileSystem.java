@@ -60,6 +60,8 @@
 import org.apache.hadoop.fs.VolumeId;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.MiniDFSCluster.DataNodeProperties;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOp;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOpResult;
 import org.apache.hadoop.hdfs.server.datanode.DataNodeFaultInjector;
 import org.apache.hadoop.hdfs.server.namenode.ha.HATestUtil;
 import org.apache.hadoop.hdfs.web.WebHdfsFileSystem;
@@ -961,4 +963,44 @@ public void testListFiles() throws IOException {
       cluster.shutdown();
     }
   }
+
+  @Test(timeout=60000)
+  public void testBatchMetadataOps() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      fs.create(new Path("/batch/file")).close();
+
+      List<BatchedMetadataOpResult> results = fs.batchMetadataOps(
+          Lists.newArrayList(
+              BatchedMetadataOp.mkdirs("/batch/a/b", null, true),
+              BatchedMetadataOp.rename("/batch/file", "/batch/a/b/file"),
+              BatchedMetadataOp.delete("/batch/missing", false),
+              BatchedMetadataOp.mkdirs("/batch/c/d", null, false),
+              BatchedMetadataOp.mkdirs("/batch/e", null, true)));
+      // Execution stops at the first failure.
+      assertEquals(4, results.size());
+      assertTrue(results.get(0).getResult());
+      assertTrue(results.get(1).getResult());
+      assertTrue(results.get(2).isSuccess());
+      assertFalse(results.get(2).getResult());
+      assertFalse(results.get(3).isSuccess());
+      assertTrue(results.get(3).getException() instanceof
+          FileNotFoundException);
+
+      assertTrue(fs.exists(new Path("/batch/a/b/file")));
+      assertFalse(fs.exists(new Path("/batch/file")));
+      assertFalse(fs.exists(new Path("/batch/c")));
+      assertFalse(fs.exists(new Path("/batch/e")));
+
+      results = fs.batchMetadataOps(Lists.newArrayList(
+          BatchedMetadataOp.delete("/batch/a", true)));
+      assertEquals(1, results.size());
+      assertTrue(results.get(0).getResult());
+      assertFalse(fs.exists(new Path("/batch/a")));
+    } finally {
+      cluster.shutdown();
+    }
+  }
 }
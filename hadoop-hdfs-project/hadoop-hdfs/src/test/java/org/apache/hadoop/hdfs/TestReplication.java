@@ -518,4 +518,33 @@ public void testReplicationWhenBlockCorruption() throws Exception {
       }
     }
   }
+
+  /**
+   * Test that blocks are replicated when their targets are chosen by
+   * several threads.
+   */
+  @Test(timeout=60000)
+  public void testReplicationWithParallelTargetChoice() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_CHOOSE_TARGET_THREADS_KEY, 4);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(3).build();
+    try {
+      FileSystem fs = cluster.getFileSystem();
+      Path[] files = new Path[10];
+      for (int i = 0; i < files.length; i++) {
+        files[i] = new Path("/parallel/file" + i);
+        DFSTestUtil.createFile(fs, files[i], 1024, (short) 1, i);
+      }
+      for (Path file : files) {
+        fs.setReplication(file, (short) 3);
+      }
+      for (Path file : files) {
+        DFSTestUtil.waitReplication(fs, file, (short) 3);
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
 }
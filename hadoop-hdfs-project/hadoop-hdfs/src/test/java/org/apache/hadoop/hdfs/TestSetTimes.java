@@ -309,6 +309,54 @@ public void testGetBlockLocationsOnlyUsesReadLock() throws IOException {
     }
   }
 
+  /**
+   * Test that with partitioned namesystem locking setTimes only takes the
+   * FSNamesystem and FSDirectory write locks when a snapshot diff has to be
+   * recorded.
+   */
+  @Test(timeout=60000)
+  public void testSetTimesWithPartitionedLock() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_KEY, 16);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+      .numDataNodes(0)
+      .build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      // Under a snapshot the operation falls back to the write lock.
+      Path snapDir = new Path("/snap");
+      Path snapFile = new Path(snapDir, "file");
+      DFSTestUtil.createFile(fs, snapFile, 0, (short)1, 0L);
+      long oldMtime = fs.getFileStatus(snapFile).getModificationTime();
+      fs.allowSnapshot(snapDir);
+      fs.createSnapshot(snapDir, "s0");
+      fs.setTimes(snapFile, oldMtime + 1000, -1);
+      assertEquals(oldMtime + 1000,
+          fs.getFileStatus(snapFile).getModificationTime());
+      assertEquals(oldMtime, fs.getFileStatus(
+          new Path(snapDir, ".snapshot/s0/file")).getModificationTime());
+
+      Path p = new Path("/user/partitioned/file");
+      DFSTestUtil.createFile(fs, p, 0, (short)1, 0L);
+      ReentrantReadWriteLock spyLock =
+          NameNodeAdapter.spyOnFsLock(cluster.getNamesystem());
+      MockitoUtil.doThrowWhenCallStackMatches(
+          new AssertionError("Should not need write lock"),
+          ".*setTimes.*")
+          .when(spyLock).writeLock();
+      ReentrantReadWriteLock spyDirLock =
+          NameNodeAdapter.spyOnDirLock(cluster.getNamesystem());
+      MockitoUtil.doThrowWhenCallStackMatches(
+          new AssertionError("Should not need directory write lock"),
+          ".*setTimes.*")
+          .when(spyDirLock).writeLock();
+      fs.setTimes(p, 12345000L, -1);
+      assertEquals(12345000L, fs.getFileStatus(p).getModificationTime());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   public static void main(String[] args) throws Exception {
     new TestSetTimes().testTimes();
   }
@@ -44,6 +44,7 @@
 import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.MiniJournalCluster;
 import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -206,6 +207,51 @@ public void testReaderWhileAnotherWrites() throws Exception {
     }
   }
   
+  @Test
+  public void testSelectInputStreamsFromJournaledEdits() throws Exception {
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    QuorumJournalManager readerQjm = createSpyingQJM();
+    List<EditLogInputStream> streams = Lists.newArrayList();
+
+    // Edits of the in-progress segment come from the JNs' caches.
+    EditLogOutputStream stm = writeSegment(cluster, qjm, 1, 3, false);
+    readerQjm.selectInputStreams(streams, 1, true);
+    try {
+      assertEquals(1, streams.size());
+      assertEquals(1, streams.get(0).getFirstTxId());
+      assertEquals(3, streams.get(0).getLastTxId());
+      verifyEdits(streams, 1, 3);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+
+    // Nothing new has been written yet.
+    readerQjm.selectInputStreams(streams, 4, true);
+    assertEquals(0, streams.size());
+
+    writeTxns(stm, 4, 2);
+    readerQjm.selectInputStreams(streams, 4, true);
+    try {
+      verifyEdits(streams, 4, 5);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+
+    // Txid 2 is in the middle of a cached batch, so the reader falls back
+    // to reading the finalized segment.
+    stm.close();
+    qjm.finalizeLogSegment(1, 5);
+    readerQjm.selectInputStreams(streams, 2, true);
+    try {
+      verifyEdits(streams, 2, 5);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+  }
+
   /**
    * Regression test for HDFS-3725. One of the journal nodes is down
    * during the writing of one segment, then comes back up later to
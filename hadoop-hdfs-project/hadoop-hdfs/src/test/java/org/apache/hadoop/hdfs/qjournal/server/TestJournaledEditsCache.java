@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.createTxnData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.apache.hadoop.hdfs.qjournal.server.JournaledEditsCache.CacheMissException;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeLayoutVersion;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class TestJournaledEditsCache {
+  private static final int LAYOUT_VERSION =
+      NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION;
+
+  @Test
+  public void testRetrieveEdits() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    cache.startSegment(1, LAYOUT_VERSION);
+    byte[] batch1 = createTxnData(1, 5);
+    byte[] batch2 = createTxnData(6, 5);
+    cache.storeEdits(batch1, 1, 5);
+    cache.storeEdits(batch2, 6, 10);
+
+    List<byte[]> buffers = Lists.newArrayList();
+    assertEquals(10, cache.retrieveEdits(1, 100, buffers));
+    assertEquals(3, buffers.size());
+    assertTrue(buffers.get(1) == batch1);
+    assertTrue(buffers.get(2) == batch2);
+
+    // whole batches are returned until maxTxns is reached
+    buffers.clear();
+    assertEquals(5, cache.retrieveEdits(1, 3, buffers));
+    buffers.clear();
+    assertEquals(5, cache.retrieveEdits(6, 100, buffers));
+
+    // nothing written past txid 10 yet
+    buffers.clear();
+    assertEquals(0, cache.retrieveEdits(11, 100, buffers));
+    assertEquals(0, buffers.size());
+
+    assertMiss(cache, 3);
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    byte[] batch1 = createTxnData(1, 5);
+    byte[] batch2 = createTxnData(6, 5);
+    JournaledEditsCache cache = new JournaledEditsCache(
+        batch1.length + batch2.length - 1);
+    cache.startSegment(1, LAYOUT_VERSION);
+    cache.storeEdits(batch1, 1, 5);
+    cache.storeEdits(batch2, 6, 10);
+    assertEquals(batch2.length, cache.getSize());
+    assertMiss(cache, 1);
+    assertEquals(5, cache.retrieveEdits(6, 100, Lists.<byte[]>newArrayList()));
+  }
+
+  @Test
+  public void testContiguousAcrossSegments() throws Exception {
+    JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    cache.startSegment(1, LAYOUT_VERSION);
+    cache.storeEdits(createTxnData(1, 5), 1, 5);
+    cache.startSegment(6, LAYOUT_VERSION);
+    cache.storeEdits(createTxnData(6, 5), 6, 10);
+    assertEquals(10, cache.retrieveEdits(1, 100, Lists.<byte[]>newArrayList()));
+
+    // a gap in the transactions clears the cache
+    cache.startSegment(20, LAYOUT_VERSION);
+    cache.storeEdits(createTxnData(20, 5), 20, 24);
+    assertMiss(cache, 1);
+    assertEquals(5, cache.retrieveEdits(20, 100, Lists.<byte[]>newArrayList()));
+
+    // nothing is cached until the layout version of a segment is known
+    cache.reset();
+    cache.storeEdits(createTxnData(25, 5), 25, 29);
+    assertMiss(cache, 25);
+  }
+
+  private static void assertMiss(JournaledEditsCache cache, long txid) {
+    try {
+      cache.retrieveEdits(txid, 100, Lists.<byte[]>newArrayList());
+      fail("Expected a cache miss for txid " + txid);
+    } catch (CacheMissException e) {
+      // expected
+    }
+  }
+}
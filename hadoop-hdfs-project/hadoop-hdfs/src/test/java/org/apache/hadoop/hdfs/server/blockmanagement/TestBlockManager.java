@@ -30,6 +30,7 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
@@ -599,5 +600,59 @@ public void testSafeModeIBRAfterIncremental() throws Exception {
         new BlockListAsLongs(null, null));
     assertEquals(1, ds.getBlockReportCount());
   }
+
+  /**
+   * A report processed in batches must give the same result as one processed
+   * under a single hold of the lock, and must not leave its delimiter behind.
+   */
+  @Test
+  public void testProcessReportInBatches() throws Exception {
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_BATCH_SIZE_KEY, 2);
+    bm = new BlockManager(fsn, fsn, conf);
+
+    DatanodeDescriptor node = nodes.get(0);
+    DatanodeStorageInfo ds = node.getStorageInfos()[0];
+    node.setDatanodeUuidForTesting(ds.getStorageID());
+    node.isAlive = true;
+    DatanodeRegistration nodeReg =
+        new DatanodeRegistration(node, null, null, "");
+    bm.getDatanodeManager().registerDatanode(nodeReg);
+    bm.getDatanodeManager().addDatanode(node);
+
+    List<Block> blocks = new ArrayList<Block>();
+    for (long id = 1; id <= 6; id++) {
+      Block b = new Block(id, BLOCK_SIZE, 1000L);
+      blocks.add(b);
+      if (id <= 5) {
+        BlockCollection bc = Mockito.mock(BlockCollection.class);
+        Mockito.doReturn((short)3).when(bc).getBlockReplication();
+        bm.blocksMap.addBlockCollection(new BlockInfo(b, 3), bc);
+      }
+    }
+
+    // the initial report adds blocks 1-5
+    bm.processReport(node, new DatanodeStorage(ds.getStorageID()),
+        new BlockListAsLongs(blocks.subList(0, 5), null));
+    assertEquals(5, ds.numBlocks());
+
+    // block 5 is gone from the node, block 6 does not belong to any file
+    doReturn(true).when(fsn).isPopulatingReplQueues();
+    List<Block> report = new ArrayList<Block>(blocks.subList(0, 4));
+    report.add(blocks.get(5));
+    bm.processReport(node, new DatanodeStorage(ds.getStorageID()),
+        new BlockListAsLongs(report, null));
+
+    assertFalse(ds.isBlockReportInProgress());
+    assertEquals(4, ds.numBlocks());
+    List<Block> stored = new ArrayList<Block>();
+    for (Iterator<BlockInfo> it = ds.getBlockIterator(); it.hasNext();) {
+      stored.add(it.next());
+    }
+    assertEquals(4, stored.size());
+    assertTrue(stored.containsAll(blocks.subList(0, 4)));
+    assertTrue(bm.blocksMap.getStoredBlock(blocks.get(4))
+        .findStorageInfo(ds) < 0);
+    assertEquals(1, bm.getPendingDeletionBlocksCount());
+  }
 }
 
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hdfs.server.blockmanagement;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
@@ -30,14 +31,18 @@
 import org.apache.hadoop.hdfs.server.common.GenerationStamp;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
 import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
+import org.apache.hadoop.hdfs.server.namenode.CachedBlock;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
+import org.apache.hadoop.hdfs.server.protocol.BalancerBandwidthCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockCommand;
+import org.apache.hadoop.hdfs.server.protocol.BlockIdCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeCommand;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.util.Time;
 import org.junit.Test;
 
 /**
@@ -127,6 +132,102 @@ public void testHeartbeat() throws Exception {
     }
   }
 
+  /**
+   * Test the order and content of the commands returned by
+   * {@link FSNamesystem#handleHeartbeat} when recovery, replication,
+   * invalidation, caching and balancer work is all queued for a datanode.
+   */
+  @Test
+  public void testHeartbeatCommandOrder() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    final MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(2).build();
+    try {
+      cluster.waitActive();
+      final FSNamesystem namesystem = cluster.getNamesystem();
+      final DatanodeManager dm =
+          namesystem.getBlockManager().getDatanodeManager();
+      final HeartbeatManager hm = dm.getHeartbeatManager();
+      final String poolId = namesystem.getBlockPoolId();
+      final DatanodeRegistration nodeReg1 =
+        DataNodeTestUtils.getDNRegistrationForBP(cluster.getDataNodes().get(0), poolId);
+      final DatanodeDescriptor dd1 = NameNodeAdapter.getDatanode(namesystem, nodeReg1);
+      final String storageID = DatanodeStorage.generateUuid();
+      dd1.updateStorage(new DatanodeStorage(storageID));
+      final DatanodeRegistration nodeReg2 =
+        DataNodeTestUtils.getDNRegistrationForBP(cluster.getDataNodes().get(1), poolId);
+      final DatanodeDescriptor dd2 = NameNodeAdapter.getDatanode(namesystem, nodeReg2);
+      dd2.updateStorage(new DatanodeStorage(DatanodeStorage.generateUuid()));
+
+      try {
+        namesystem.writeLock();
+        synchronized(hm) {
+          NameNodeAdapter.sendHeartBeat(nodeReg1, dd1, namesystem);
+          NameNodeAdapter.sendHeartBeat(nodeReg2, dd2, namesystem);
+          dd1.setLastUpdate(System.currentTimeMillis());
+          dd2.setLastUpdate(System.currentTimeMillis());
+
+          // queue every kind of work at once
+          final DatanodeStorageInfo[] storages = {
+              dd1.getStorageInfos()[0],
+              dd2.getStorageInfos()[0]};
+          dd1.addBlockToBeRecovered(new BlockInfoUnderConstruction(
+              new Block(100, 0, GenerationStamp.LAST_RESERVED_STAMP), 2,
+              BlockUCState.UNDER_RECOVERY, storages));
+          dd1.addBlockToBeReplicated(
+              new Block(200, 0, GenerationStamp.LAST_RESERVED_STAMP),
+              new DatanodeStorageInfo[] {dd2.getStorageInfos()[0]});
+          ArrayList<Block> blockList = new ArrayList<Block>();
+          blockList.add(new Block(300, 0, GenerationStamp.LAST_RESERVED_STAMP));
+          dd1.addBlocksToBeInvalidated(blockList);
+          dd1.getPendingCached().add(new CachedBlock(400, (short)1, false));
+          dd1.getPendingUncached().add(new CachedBlock(500, (short)1, false));
+          dm.setShouldSendCachingCommands(true);
+          dd1.setLastCachingDirectiveSentTimeMs(Time.monotonicNow() - 60 * 1000);
+          dd1.setBalancerBandwidth(1024);
+
+          // block recovery is sent on its own, the rest stays queued
+          DatanodeCommand[] cmds =
+              NameNodeAdapter.sendHeartBeat(nodeReg1, dd1, namesystem).getCommands();
+          assertEquals(1, cmds.length);
+          assertEquals(DatanodeProtocol.DNA_RECOVERBLOCK, cmds[0].getAction());
+          BlockRecoveryCommand recoveryCommand = (BlockRecoveryCommand)cmds[0];
+          assertEquals(1, recoveryCommand.getRecoveringBlocks().size());
+          assertEquals(100, recoveryCommand.getRecoveringBlocks().iterator()
+              .next().getBlock().getBlockId());
+
+          // then replication, invalidation, caching and the balancer bandwidth
+          cmds = NameNodeAdapter.sendHeartBeat(nodeReg1, dd1, namesystem)
+              .getCommands();
+          assertEquals(5, cmds.length);
+          assertEquals(DatanodeProtocol.DNA_TRANSFER, cmds[0].getAction());
+          BlockCommand transfer = (BlockCommand)cmds[0];
+          assertEquals(1, transfer.getBlocks().length);
+          assertEquals(200, transfer.getBlocks()[0].getBlockId());
+          assertEquals(dd2, transfer.getTargets()[0][0]);
+          assertEquals(DatanodeProtocol.DNA_INVALIDATE, cmds[1].getAction());
+          BlockCommand invalidate = (BlockCommand)cmds[1];
+          assertEquals(1, invalidate.getBlocks().length);
+          assertEquals(300, invalidate.getBlocks()[0].getBlockId());
+          assertEquals(DatanodeProtocol.DNA_CACHE, cmds[2].getAction());
+          assertArrayEquals(new long[] {400},
+              ((BlockIdCommand)cmds[2]).getBlockIds());
+          assertEquals(DatanodeProtocol.DNA_UNCACHE, cmds[3].getAction());
+          assertArrayEquals(new long[] {500},
+              ((BlockIdCommand)cmds[3]).getBlockIds());
+          assertEquals(DatanodeProtocol.DNA_BALANCERBANDWIDTHUPDATE,
+              cmds[4].getAction());
+          assertEquals(1024,
+              ((BalancerBandwidthCommand)cmds[4]).getBalancerBandwidthValue());
+        }
+      } finally {
+        namesystem.writeUnlock();
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   /**
    * Test if
    * {@link FSNamesystem#handleHeartbeat}
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.junit.Test;
+
+/**
+ * Tests that the located blocks cache serves repeated opens and is
+ * invalidated when the replicas of a file change.
+ */
+public class TestLocatedBlocksCache {
+  private static final int BLOCKSIZE = 1024;
+
+  @Test(timeout=120000)
+  public void testCacheHitAndInvalidation() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCKSIZE);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_LOCATED_BLOCKS_CACHE_SIZE_KEY, 10);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(3).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      NamenodeProtocols nn = cluster.getNameNodeRpc();
+      LocatedBlocksCache cache = cluster.getNamesystem().getBlockManager()
+          .getLocatedBlocksCache();
+      final String src = "/testCacheHitAndInvalidation";
+      final Path file = new Path(src);
+      DFSTestUtil.createFile(fs, file, BLOCKSIZE * 3, (short) 2, 0L);
+      DFSTestUtil.waitReplication(fs, file, (short) 2);
+
+      LocatedBlocks first = nn.getBlockLocations(src, 0, Long.MAX_VALUE);
+      long hits = cache.getHits();
+      LocatedBlocks second = nn.getBlockLocations(src, 0, Long.MAX_VALUE);
+      assertEquals(hits + 1, cache.getHits());
+      assertEquals(first.locatedBlockCount(), second.locatedBlockCount());
+      for (int i = 0; i < second.locatedBlockCount(); i++) {
+        assertEquals(first.get(i).getBlock(), second.get(i).getBlock());
+        assertEquals(2, second.get(i).getLocations().length);
+      }
+
+      // a new replica of each block invalidates the entry
+      fs.setReplication(file, (short) 3);
+      DFSTestUtil.waitReplication(fs, file, (short) 3);
+      LocatedBlocks third = nn.getBlockLocations(src, 0, Long.MAX_VALUE);
+      for (int i = 0; i < third.locatedBlockCount(); i++) {
+        assertEquals(3, third.get(i).getLocations().length);
+      }
+
+      // appending changes the last block and the file length
+      DFSTestUtil.appendFile(fs, file, BLOCKSIZE / 2);
+      LocatedBlocks fourth = nn.getBlockLocations(src, 0, Long.MAX_VALUE);
+      assertEquals(BLOCKSIZE * 3 + BLOCKSIZE / 2, fourth.getFileLength());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
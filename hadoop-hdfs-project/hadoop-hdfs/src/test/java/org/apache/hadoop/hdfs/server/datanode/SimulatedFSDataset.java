@@ -300,6 +300,10 @@ public void setLastChecksumAndDataLen(long dataLength, byte[] lastChecksum) {
     public ChunkChecksum getLastChecksumAndDataLen() {
       return new ChunkChecksum(oStream.getLength(), null);
     }
+
+    @Override
+    public void releaseWriter(Thread writer) {
+    }
   }
   
   /**
@@ -574,7 +578,7 @@ public synchronized long getLength(ExtendedBlock b) throws IOException {
 
   @Override
   @Deprecated
-  public Replica getReplica(String bpid, long blockId) {
+  public synchronized Replica getReplica(String bpid, long blockId) {
     final Map<Block, BInfo> map = blockMap.get(bpid);
     if (map != null) {
       return map.get(new Block(blockId));
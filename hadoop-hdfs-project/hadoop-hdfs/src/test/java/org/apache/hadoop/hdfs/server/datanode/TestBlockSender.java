@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.io.IOUtils;
+import org.junit.Test;
+
+/** Test {@link BlockSender} */
+public class TestBlockSender {
+  private static final int BYTES_PER_CHECKSUM = 512;
+  private static final int NUM_CHUNKS = 4;
+
+  /**
+   * Corrupt one chunk of a block and check that a BlockSender verifying
+   * checksums reports the position of that chunk.
+   */
+  @Test
+  public void testVerifyChecksumReportsCorruptChunk() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY, BYTES_PER_CHECKSUM);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      Path file = new Path("/corrupt");
+      DFSTestUtil.createFile(fs, file, NUM_CHUNKS * BYTES_PER_CHECKSUM,
+          (short)1, 0L);
+      ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, file);
+      DataNode dn = cluster.getDataNodes().get(0);
+
+      // flip a byte in the middle of the third chunk
+      final int corruptChunk = 2;
+      File blockFile = DataNodeTestUtils.getBlockFile(dn,
+          block.getBlockPoolId(), block.getLocalBlock());
+      RandomAccessFile raf = new RandomAccessFile(blockFile, "rw");
+      try {
+        long pos = corruptChunk * BYTES_PER_CHECKSUM + BYTES_PER_CHECKSUM / 2;
+        raf.seek(pos);
+        int b = raf.read();
+        raf.seek(pos);
+        raf.write(b ^ 0xff);
+      } finally {
+        raf.close();
+      }
+
+      BlockSender sender = new BlockSender(block, 0, -1, false, true, true,
+          dn, null, CachingStrategy.newDropBehind());
+      try {
+        sender.sendBlock(new DataOutputStream(new IOUtils.NullOutputStream()),
+            null, null);
+        fail("Expected a checksum error for the corrupt chunk");
+      } catch (ChecksumException ce) {
+        assertEquals(corruptChunk * BYTES_PER_CHECKSUM, ce.getPos());
+        assertTrue(ce.getMessage(),
+            ce.getMessage().contains(block.getBlockName()));
+      } finally {
+        sender.close();
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
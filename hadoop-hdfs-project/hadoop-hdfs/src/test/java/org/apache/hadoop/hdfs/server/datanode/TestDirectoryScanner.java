@@ -22,14 +22,21 @@
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -45,9 +52,13 @@
 import org.apache.hadoop.hdfs.server.common.GenerationStamp;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeIoStats;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.FsDatasetTestUtil;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  * Tests {@link DirectoryScanner} handling of differences
@@ -239,6 +250,71 @@ public void testDirectoryScanner() throws Exception {
     }
   }
   
+  @Test
+  public void testThrottledDirectoryScannerWithBoundedLockHold()
+      throws Exception {
+    CONF.setLong(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_MAX_LOCK_HOLD_MS_KEY,
+        1);
+    CONF.setInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY,
+        500);
+    try {
+      runTest(2);
+      verifyReportCompilerThrottled();
+    } finally {
+      CONF.unset(DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_MAX_LOCK_HOLD_MS_KEY);
+      CONF.unset(
+          DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY);
+    }
+  }
+
+  /**
+   * Scan a volume whose finalized directory is slow to get, so that its
+   * report compiler exceeds its scan time for the first second, and check
+   * that the compiler reports having been throttled.
+   */
+  private void verifyReportCompilerThrottled() throws Exception {
+    Configuration conf = new HdfsConfiguration(CONF);
+    conf.setInt(
+        DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_THROTTLE_LIMIT_MS_PER_SEC_KEY,
+        10);
+    cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      bpid = cluster.getNamesystem().getBlockPoolId();
+      fds = DataNodeTestUtils.getFSDataset(cluster.getDataNodes().get(0));
+      createFile("/tmp/t1", 1000);
+
+      final FsVolumeSpi volume = spy(fds.getVolumes().get(0));
+      doAnswer(new Answer<File>() {
+        @Override
+        public File answer(InvocationOnMock invocation) throws Throwable {
+          Thread.sleep(50);
+          return (File)invocation.callRealMethod();
+        }
+      }).when(volume).getFinalizedDir(anyString());
+      final FsDatasetSpi<? extends FsVolumeSpi> dataset = spy(fds);
+      doReturn(Collections.singletonList(volume)).when(dataset).getVolumes();
+
+      GenericTestUtils.LogCapturer logs = GenericTestUtils.LogCapturer
+          .captureLogs(LogFactory.getLog(DirectoryScanner.class));
+      scanner = new DirectoryScanner(dataset, conf);
+      try {
+        scanner.scan();
+      } finally {
+        logs.stopCapturing();
+        scanner.shutdown();
+      }
+      Matcher m = Pattern.compile("(\\d+) ms of which throttled")
+          .matcher(logs.getOutput());
+      assertTrue("No report compiler output", m.find());
+      assertTrue("Report compiler was not throttled",
+          Long.parseLong(m.group(1)) > 0);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   public void runTest(int parallelism) throws Exception {
     cluster = new MiniDFSCluster.Builder(CONF).build();
     try {
@@ -424,6 +500,11 @@ public StorageType getStorageType() {
     public String getStorageID() {
       return "";
     }
+
+    @Override
+    public VolumeIoStats getIoStats() {
+      return null;
+    }
   }
 
   private final static TestFsVolumeSpi TEST_VOLUME = new TestFsVolumeSpi();
@@ -0,0 +1,292 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.FakeTimer;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.base.Supplier;
+
+public class TestLoadAwareVolumeChoosingPolicy {
+
+  // With no load on any volume the policy falls back to round robin.
+  @Test
+  public void testRR() throws Exception {
+    @SuppressWarnings("unchecked")
+    final LoadAwareVolumeChoosingPolicy<FsVolumeSpi> policy =
+        ReflectionUtils.newInstance(LoadAwareVolumeChoosingPolicy.class,
+            new Configuration());
+    TestRoundRobinVolumeChoosingPolicy.testRR(policy);
+  }
+
+  @Test
+  public void testRRPolicyExceptionMessage() throws Exception {
+    final LoadAwareVolumeChoosingPolicy<FsVolumeSpi> policy
+        = new LoadAwareVolumeChoosingPolicy<FsVolumeSpi>();
+    TestRoundRobinVolumeChoosingPolicy.testRRPolicyExceptionMessage(policy);
+  }
+
+  @Test
+  public void testAvoidsVolumesWithPendingWrites() throws Exception {
+    @SuppressWarnings("unchecked")
+    final LoadAwareVolumeChoosingPolicy<FsVolumeSpi> policy =
+        ReflectionUtils.newInstance(LoadAwareVolumeChoosingPolicy.class,
+            new Configuration());
+    final List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    for (int i = 0; i < 3; i++) {
+      volumes.add(createVolume(100L, 0));
+    }
+
+    // The second volume has a write in progress.
+    final long pending = DFSConfigKeys
+        .DFS_DATANODE_LOAD_AWARE_VOLUME_CHOOSING_POLICY_BALANCED_PENDING_BYTES_THRESHOLD_DEFAULT + 1;
+    volumes.get(1).getIoStats().addPendingWriteBytes(pending);
+    for (int i = 0; i < 4; i++) {
+      Assert.assertNotSame(volumes.get(1), policy.chooseVolume(volumes, 0));
+    }
+
+    // Once the write completes the volume is chosen again.
+    volumes.get(1).getIoStats().removePendingWriteBytes(pending);
+    boolean chosen = false;
+    for (int i = 0; i < volumes.size(); i++) {
+      chosen |= policy.chooseVolume(volumes, 0) == volumes.get(1);
+    }
+    Assert.assertTrue(chosen);
+
+    // A loaded volume is still chosen if it is the only one with space.
+    volumes.get(1).getIoStats().addPendingWriteBytes(pending);
+    Mockito.when(volumes.get(1).getAvailable()).thenReturn(1000L);
+    Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 500));
+  }
+
+  /**
+   * Replicas allocated back to back count against their volume before any
+   * of their bytes are written, and small differences in pending bytes do
+   * not send them all to the same volume.
+   */
+  @Test
+  public void testSpreadsBackToBackAllocations() throws Exception {
+    @SuppressWarnings("unchecked")
+    final LoadAwareVolumeChoosingPolicy<FsVolumeSpi> policy =
+        ReflectionUtils.newInstance(LoadAwareVolumeChoosingPolicy.class,
+            new Configuration());
+    final List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    for (int i = 0; i < 3; i++) {
+      volumes.add(createVolume(100L, 0));
+    }
+    // Writes just started on the last two volumes.
+    volumes.get(1).getIoStats().addPendingWriteBytes(512);
+    volumes.get(2).getIoStats().addPendingWriteBytes(1024);
+
+    final Map<FsVolumeSpi, Integer> allocations =
+        new HashMap<FsVolumeSpi, Integer>();
+    for (int i = 0; i < 6; i++) {
+      FsVolumeSpi volume = allocate(policy, volumes);
+      Integer count = allocations.get(volume);
+      allocations.put(volume, count == null ? 1 : count + 1);
+    }
+    for (FsVolumeSpi volume : volumes) {
+      Assert.assertEquals(Integer.valueOf(2), allocations.get(volume));
+    }
+
+    // A volume with more open replicas than the others is skipped until
+    // they catch up.
+    for (int i = 0; i < 3; i++) {
+      volumes.get(1).getIoStats().addOpenReplica();
+    }
+    for (int i = 0; i < 4; i++) {
+      Assert.assertNotSame(volumes.get(1), allocate(policy, volumes));
+    }
+
+    // Once its replicas are closed it is the least loaded volume.
+    for (int i = 0; i < 3; i++) {
+      volumes.get(1).getIoStats().removeOpenReplica();
+    }
+    Assert.assertSame(volumes.get(1), allocate(policy, volumes));
+  }
+
+  /** Choose a volume and open a replica on it, as FsDatasetImpl does. */
+  private static FsVolumeSpi allocate(
+      LoadAwareVolumeChoosingPolicy<FsVolumeSpi> policy,
+      List<FsVolumeSpi> volumes) throws Exception {
+    FsVolumeSpi volume = policy.chooseVolume(volumes, 0);
+    volume.getIoStats().addOpenReplica();
+    return volume;
+  }
+
+  @Test
+  public void testAvoidsSlowVolumes() throws Exception {
+    @SuppressWarnings("unchecked")
+    final LoadAwareVolumeChoosingPolicy<FsVolumeSpi> policy =
+        ReflectionUtils.newInstance(LoadAwareVolumeChoosingPolicy.class,
+            new Configuration());
+    final List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    volumes.add(createVolume(100L, 1000L));
+    volumes.add(createVolume(100L, 1500L));
+    volumes.add(createVolume(100L, 5000L));
+
+    for (int i = 0; i < 4; i++) {
+      Assert.assertNotSame(volumes.get(2), policy.chooseVolume(volumes, 0));
+    }
+
+    // The slow volume is used if it is the only one with space.
+    Mockito.when(volumes.get(2).getAvailable()).thenReturn(1000L);
+    Assert.assertEquals(volumes.get(2), policy.chooseVolume(volumes, 500));
+  }
+
+  /**
+   * A volume skipped as slow gets no writes to time, so its average expires
+   * and it is tried again. It is used again if it has recovered.
+   */
+  @Test
+  public void testSlowVolumeRecovers() throws Exception {
+    @SuppressWarnings("unchecked")
+    final LoadAwareVolumeChoosingPolicy<FsVolumeSpi> policy =
+        ReflectionUtils.newInstance(LoadAwareVolumeChoosingPolicy.class,
+            new Configuration());
+    final FakeTimer timer = new FakeTimer();
+    final List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    for (int i = 0; i < 3; i++) {
+      FsVolumeSpi volume = Mockito.mock(FsVolumeSpi.class);
+      Mockito.when(volume.getAvailable()).thenReturn(100L);
+      Mockito.when(volume.getIoStats()).thenReturn(new VolumeIoStats(timer));
+      volumes.add(volume);
+    }
+    final FsVolumeSpi slow = volumes.get(2);
+    volumes.get(0).getIoStats().addWriteLatency(1000L);
+    volumes.get(1).getIoStats().addWriteLatency(1000L);
+    slow.getIoStats().addWriteLatency(10000L);
+    for (int i = 0; i < 4; i++) {
+      Assert.assertNotSame(slow, policy.chooseVolume(volumes, 0));
+    }
+
+    // The other volumes keep being written while the slow one is skipped.
+    timer.advance(VolumeIoStats.LATENCY_EXPIRY_MS + 1);
+    volumes.get(0).getIoStats().addWriteLatency(1000L);
+    volumes.get(1).getIoStats().addWriteLatency(1000L);
+    Assert.assertEquals(0, slow.getIoStats().getAverageWriteLatencyNanos());
+    Assert.assertTrue(chosenWithin(policy, volumes, slow));
+
+    // If the probe write is still slow the volume is skipped again.
+    slow.getIoStats().addWriteLatency(10000L);
+    Assert.assertFalse(chosenWithin(policy, volumes, slow));
+
+    // Once it has recovered it is used again.
+    timer.advance(VolumeIoStats.LATENCY_EXPIRY_MS + 1);
+    volumes.get(0).getIoStats().addWriteLatency(1000L);
+    volumes.get(1).getIoStats().addWriteLatency(1000L);
+    slow.getIoStats().addWriteLatency(1000L);
+    Assert.assertTrue(chosenWithin(policy, volumes, slow));
+    Assert.assertTrue(chosenWithin(policy, volumes, slow));
+  }
+
+  /** @return whether the volume is chosen in one round over all volumes */
+  private static boolean chosenWithin(
+      LoadAwareVolumeChoosingPolicy<FsVolumeSpi> policy,
+      List<FsVolumeSpi> volumes, FsVolumeSpi volume) throws Exception {
+    boolean chosen = false;
+    for (int i = 0; i < volumes.size(); i++) {
+      chosen |= policy.chooseVolume(volumes, 0) == volume;
+    }
+    return chosen;
+  }
+
+  /**
+   * The replica a BlockReceiver creates and the bytes it writes stay pending
+   * on their volume until the receiver is closed, and its writes are timed.
+   */
+  @Test(timeout = 60000)
+  public void testBlockReceiverUpdatesIoStats() throws Exception {
+    final MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(new HdfsConfiguration()).build();
+    try {
+      cluster.waitActive();
+      final List<? extends FsVolumeSpi> dnVolumes = DataNodeTestUtils
+          .getFSDataset(cluster.getDataNodes().get(0)).getVolumes();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      FSDataOutputStream out = fs.create(new Path("/file"), (short)1);
+      try {
+        out.write(new byte[1000]);
+        out.hflush();
+        int open = 0;
+        long pending = 0;
+        long latency = 0;
+        for (FsVolumeSpi volume : dnVolumes) {
+          open += volume.getIoStats().getOpenReplicas();
+          pending += volume.getIoStats().getPendingWriteBytes();
+          latency = Math.max(latency,
+              volume.getIoStats().getAverageWriteLatencyNanos());
+        }
+        Assert.assertEquals(1, open);
+        Assert.assertEquals(1000, pending);
+        Assert.assertTrue(latency > 0);
+      } finally {
+        out.close();
+      }
+
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          int open = 0;
+          long pending = 0;
+          for (FsVolumeSpi volume : dnVolumes) {
+            open += volume.getIoStats().getOpenReplicas();
+            pending += volume.getIoStats().getPendingWriteBytes();
+          }
+          return open == 0 && pending == 0;
+        }
+      }, 100, 10000);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Create a volume which tracks pending writes for real and reports the
+   * given average write latency, unless it is 0.
+   */
+  private static FsVolumeSpi createVolume(long available,
+      long averageWriteLatencyNanos) throws Exception {
+    FsVolumeSpi volume = Mockito.mock(FsVolumeSpi.class);
+    Mockito.when(volume.getAvailable()).thenReturn(available);
+    VolumeIoStats stats = Mockito.spy(new VolumeIoStats());
+    if (averageWriteLatencyNanos != 0) {
+      Mockito.doReturn(averageWriteLatencyNanos)
+          .when(stats).getAverageWriteLatencyNanos();
+    }
+    Mockito.when(volume.getIoStats()).thenReturn(stats);
+    return volume;
+  }
+}
@@ -17,10 +17,13 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
+import java.util.concurrent.CountDownLatch;
+
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
 import org.junit.Before;
@@ -70,6 +73,39 @@ public void testGet() {
     assertNull(map.get(bpid, 0));
   }
   
+  /**
+   * Lookups must not wait for the mutex, which the dataset holds during
+   * operations that may block on disk I/O.
+   */
+  @Test(timeout=60000)
+  public void testGetWhileMutexHeld() throws Exception {
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Thread holder = new Thread() {
+      @Override
+      public void run() {
+        synchronized (TestReplicaMap.class) {
+          locked.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    };
+    holder.start();
+    locked.await();
+    try {
+      assertNotNull(map.get(bpid, block));
+      assertNull(map.get(bpid, 0));
+      assertEquals(1, map.size(bpid));
+    } finally {
+      release.countDown();
+      holder.join();
+    }
+  }
+
   @Test
   public void testAdd() {
     // Test 1: null argument throws invalid argument exception
@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
+import org.apache.hadoop.hdfs.server.common.Storage.StorageDirectory;
+import org.apache.hadoop.hdfs.server.namenode.FileJournalManager.EditLogFile;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * EditLogReplayBenchmark
+ *   Synopsis: EditLogReplayBenchmark [-files numFiles]
+ *        [-blocksPerFile numBlocks] [-prefetchOps maxPrefetchedOps]
+ *        [-iterations numIterations] [-dir workDirectory]
+ *
+ * Generate an edit log the way {@link CreateEditsLog} does, then replay it
+ * into an empty namesystem with {@link FSEditLogLoader}, alternately with
+ * prefetching disabled and with up to maxPrefetchedOps ops decoded ahead,
+ * and report the number of ops applied per second in each mode.
+ * Only edit log reading and applying is timed: the log is generated once
+ * and each replay starts from a fresh namesystem.
+ */
+public class EditLogReplayBenchmark extends Configured implements Tool {
+  private static final Log LOG =
+      LogFactory.getLog(EditLogReplayBenchmark.class);
+
+  static final String USAGE = "Usage: EditLogReplayBenchmark"
+      + " [-files numFiles] [-blocksPerFile numBlocks]"
+      + " [-prefetchOps maxPrefetchedOps] [-iterations numIterations]"
+      + " [-dir workDirectory]";
+
+  private int numFiles = 100000;
+  private int blocksPerFile = 1;
+  private int prefetchOps = 1000;
+  private int iterations = 3;
+  private File workDir = new File(System.getProperty("test.build.data",
+      System.getProperty("java.io.tmpdir")), "EditLogReplayBenchmark");
+
+  /** Ops applied and time taken by the replays of one mode. */
+  static class Result {
+    long numOps;
+    long elapsedMs;
+
+    double getOpsPerSecond() {
+      return elapsedMs == 0 ? 0 : numOps * 1000.0 / elapsedMs;
+    }
+  }
+
+  private Result withoutPrefetch;
+  private Result withPrefetch;
+
+  EditLogReplayBenchmark(Configuration conf) {
+    super(conf);
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 == args.length) {
+        return printUsage();
+      }
+      if (args[i].equals("-files")) {
+        numFiles = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-blocksPerFile")) {
+        blocksPerFile = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-prefetchOps")) {
+        prefetchOps = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-iterations")) {
+        iterations = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-dir")) {
+        workDir = new File(args[++i]);
+      } else {
+        return printUsage();
+      }
+    }
+    if (numFiles <= 0 || blocksPerFile <= 0 || prefetchOps <= 0
+        || iterations <= 0) {
+      return printUsage();
+    }
+
+    NameNode.initMetrics(getConf(), NamenodeRole.NAMENODE);
+    try {
+      EditLogFile log = generateEditLog();
+      withoutPrefetch = new Result();
+      withPrefetch = new Result();
+      for (int i = 0; i < iterations; i++) {
+        replay(log, 0, withoutPrefetch);
+        replay(log, prefetchOps, withPrefetch);
+      }
+    } finally {
+      FileUtil.fullyDelete(workDir);
+    }
+    printStats("without prefetch", withoutPrefetch);
+    printStats("with " + prefetchOps + " prefetched ops", withPrefetch);
+    return 0;
+  }
+
+  private EditLogFile generateEditLog() throws IOException {
+    FSEditLog editLog = FSImageTestUtil.createStandaloneEditLog(workDir);
+    editLog.openForWrite();
+    CreateEditsLog.addFiles(editLog, numFiles, (short)1, blocksPerFile, 1,
+        10, new FileNameGenerator(CreateEditsLog.BASE_PATH, 100));
+    editLog.logSync();
+    editLog.close();
+    return FSImageTestUtil.findLatestEditsLog(new StorageDirectory(workDir));
+  }
+
+  private void replay(EditLogFile log, int maxPrefetchedOps, Result result)
+      throws IOException {
+    FSImage image = mock(FSImage.class);
+    doReturn(mock(FSEditLog.class)).when(image).getEditLog();
+    FSNamesystem namesystem = new FSNamesystem(getConf(), image);
+    EditLogInputStream in = new EditLogFileInputStream(log.getFile(),
+        log.getFirstTxId(), log.getLastTxId(), false);
+    FSEditLogLoader loader = new FSEditLogLoader(namesystem,
+        log.getFirstTxId() - 1, maxPrefetchedOps);
+    long start = Time.monotonicNow();
+    result.numOps += loader.loadFSEdits(in, log.getFirstTxId());
+    result.elapsedMs += Time.monotonicNow() - start;
+  }
+
+  private static void printStats(String mode, Result result) {
+    LOG.info("--- Edit log replay " + mode + " ---");
+    LOG.info("# operations: " + result.numOps);
+    LOG.info("Elapsed Time: " + result.elapsedMs);
+    LOG.info(" Ops per sec: " + result.getOpsPerSecond());
+  }
+
+  private static int printUsage() {
+    System.err.println(USAGE);
+    ToolRunner.printGenericCommandUsage(System.err);
+    return -1;
+  }
+
+  Result getResultWithoutPrefetch() {
+    return withoutPrefetch;
+  }
+
+  Result getResultWithPrefetch() {
+    return withPrefetch;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new EditLogReplayBenchmark(
+        new HdfsConfiguration()), args));
+  }
+}
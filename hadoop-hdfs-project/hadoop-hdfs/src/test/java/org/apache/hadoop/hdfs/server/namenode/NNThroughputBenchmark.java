@@ -881,6 +881,39 @@ long executeOp(int daemonId, int inputIdx, String ignore)
     }
   }
 
+  /**
+   * Set times statistics.
+   * 
+   * Measure how many setTimes calls the name-node can handle per second.
+   * Every thread works in its own directory, so running this with and
+   * without -D dfs.namenode.fslock.partitions=N shows how mutations of
+   * disjoint subtrees scale with partitioned namesystem locking.
+   */
+  class SetTimesStats extends OpenFileStats {
+    // Operation types
+    static final String OP_SET_TIMES_NAME = "setTimes";
+    static final String OP_SET_TIMES_USAGE = 
+      "-op " + OP_SET_TIMES_NAME + OP_USAGE_ARGS;
+
+    SetTimesStats(List<String> args) {
+      super(args);
+    }
+
+    @Override
+    String getOpName() {
+      return OP_SET_TIMES_NAME;
+    }
+
+    @Override
+    long executeOp(int daemonId, int inputIdx, String ignore) 
+    throws IOException {
+      long start = Time.now();
+      nameNodeProto.setTimes(fileNames[daemonId][inputIdx], start, -1L);
+      long end = Time.now();
+      return end-start;
+    }
+  }
+
   /**
    * Minimal data-node simulator.
    */
@@ -1373,6 +1406,7 @@ static void printUsage() {
         + " | \n\t" + DeleteFileStats.OP_DELETE_USAGE
         + " | \n\t" + FileStatusStats.OP_FILE_STATUS_USAGE
         + " | \n\t" + RenameFileStats.OP_RENAME_USAGE
+        + " | \n\t" + SetTimesStats.OP_SET_TIMES_USAGE
         + " | \n\t" + BlockReportStats.OP_BLOCK_REPORT_USAGE
         + " | \n\t" + ReplicationStats.OP_REPLICATION_USAGE
         + " | \n\t" + CleanAllStats.OP_CLEAN_USAGE
@@ -1438,6 +1472,10 @@ public int run(String[] aArgs) throws Exception {
         opStat = new RenameFileStats(args);
         ops.add(opStat);
       }
+      if(runAll || SetTimesStats.OP_SET_TIMES_NAME.equals(type)) {
+        opStat = new SetTimesStats(args);
+        ops.add(opStat);
+      }
       if(runAll || BlockReportStats.OP_BLOCK_REPORT_NAME.equals(type)) {
         opStat = new BlockReportStats(args);
         ops.add(opStat);
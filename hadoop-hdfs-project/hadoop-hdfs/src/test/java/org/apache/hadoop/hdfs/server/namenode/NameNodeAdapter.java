@@ -177,6 +177,14 @@ public static ReentrantReadWriteLock spyOnFsLock(FSNamesystem fsn) {
     return spy;
   }
 
+  public static ReentrantReadWriteLock spyOnDirLock(FSNamesystem fsn) {
+    FSDirectory fsd = fsn.getFSDirectory();
+    ReentrantReadWriteLock spy = Mockito.spy(
+        (ReentrantReadWriteLock) Whitebox.getInternalState(fsd, "dirLock"));
+    Whitebox.setInternalState(fsd, "dirLock", spy);
+    return spy;
+  }
+
   public static FSImage spyOnFsImage(NameNode nn1) {
     FSNamesystem fsn = nn1.getNamesystem();
     FSImage spy = Mockito.spy(fsn.getFSImage());
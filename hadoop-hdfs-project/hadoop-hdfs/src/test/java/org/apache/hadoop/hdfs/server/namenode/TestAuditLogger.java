@@ -19,6 +19,8 @@
 package org.apache.hadoop.hdfs.server.namenode;
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOGGERS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCKING_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -85,6 +87,41 @@ public void testAuditLogger() throws IOException {
     }
   }
 
+  /**
+   * Tests that audit events are delivered by the background dispatcher when
+   * the async audit event queue is enabled.
+   */
+  @Test
+  public void testAsyncAuditDispatch() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFS_NAMENODE_AUDIT_LOGGERS_KEY,
+        DummyAuditLogger.class.getName());
+    conf.setInt(DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY, 100);
+    conf.setBoolean(DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCKING_KEY, true);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+
+    try {
+      cluster.waitClusterUp();
+      assertTrue(DummyAuditLogger.initialized);
+      DummyAuditLogger.resetLogCount();
+
+      FileSystem fs = cluster.getFileSystem();
+      long time = System.currentTimeMillis();
+      for (int i = 0; i < 10; i++) {
+        fs.setTimes(new Path("/"), time, time);
+      }
+      for (int i = 0; i < 100 && DummyAuditLogger.logCount < 10; i++) {
+        Thread.sleep(100);
+      }
+      assertEquals(10, DummyAuditLogger.logCount);
+      FSNamesystem fsn = cluster.getNamesystem();
+      assertEquals(0, fsn.getAuditEventQueueSize());
+      assertEquals(0, fsn.getAuditEventsDropped());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   @Test
   public void testWebHdfsAuditLogger() throws IOException, URISyntaxException {
     Configuration conf = new HdfsConfiguration();
@@ -190,10 +227,43 @@ public void testBrokenLogger() throws IOException {
     }
   }
 
+  /**
+   * Tests that with the async audit event queue a broken logger does not
+   * fail the request, unlike the synchronous case in testBrokenLogger, and
+   * does not stop the dispatcher from serving the other loggers.
+   */
+  @Test
+  public void testBrokenLoggerWithAsyncAudit() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFS_NAMENODE_AUDIT_LOGGERS_KEY,
+        DummyAuditLogger.class.getName() + ","
+        + BrokenAuditLogger.class.getName());
+    conf.setInt(DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY, 100);
+    conf.setBoolean(DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCKING_KEY, true);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+
+    try {
+      cluster.waitClusterUp();
+      DummyAuditLogger.resetLogCount();
+
+      FileSystem fs = cluster.getFileSystem();
+      long time = System.currentTimeMillis();
+      for (int i = 0; i < 10; i++) {
+        fs.setTimes(new Path("/"), time, time);
+      }
+      for (int i = 0; i < 100 && DummyAuditLogger.logCount < 10; i++) {
+        Thread.sleep(100);
+      }
+      assertEquals(10, DummyAuditLogger.logCount);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   public static class DummyAuditLogger implements AuditLogger {
 
     static boolean initialized;
-    static int logCount;
+    static volatile int logCount;
     static short foundPermission;
     static String remoteAddr;
     
@@ -21,6 +21,7 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CACHEREPORT_INTERVAL_MSEC_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_MAX_LOCK_HOLD_MS;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS;
 import static org.apache.hadoop.hdfs.protocol.CachePoolInfo.RELATIVE_EXPIRY_NEVER;
 import static org.apache.hadoop.test.GenericTestUtils.assertExceptionContains;
@@ -919,6 +920,37 @@ public Boolean get() {
     }
   }
 
+  /**
+   * Tests that directives are still fully cached when the monitor yields the
+   * namesystem lock between directives during a rescan.
+   */
+  @Test(timeout=120000)
+  public void testRescanWithBoundedLockHold() throws Exception {
+    cluster.shutdown();
+    conf.setLong(DFS_NAMENODE_PATH_BASED_CACHE_MAX_LOCK_HOLD_MS, 1);
+    cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATANODES).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    namenode = cluster.getNameNode();
+
+    final String pool = "friendlyPool";
+    dfs.addCachePool(new CachePoolInfo(pool));
+    final int numFiles = 4;
+    final int numBlocksPerFile = 2;
+    for (int i = 0; i < numFiles; i++) {
+      Path p = new Path("/testRescanWithBoundedLockHold-" + i);
+      DFSTestUtil.createFile(dfs, p, numBlocksPerFile * (int)BLOCK_SIZE,
+          (short)1, 0xBEEF);
+      dfs.addCacheDirective(new CacheDirectiveInfo.Builder().
+          setPath(p).
+          setPool(pool).
+          build());
+    }
+    waitForCachedBlocks(namenode, numFiles * numBlocksPerFile,
+        numFiles * numBlocksPerFile, "testRescanWithBoundedLockHold");
+  }
+
   @Test(timeout=120000)
   public void testWaitForCachedReplicasInDirectory() throws Exception {
     // Create the pool
@@ -18,8 +18,10 @@
 package org.apache.hadoop.hdfs.server.namenode;
 
 import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
 import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -45,6 +47,7 @@
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -60,11 +63,14 @@
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
 import org.apache.hadoop.hdfs.server.common.Storage.StorageDirectory;
 import org.apache.hadoop.hdfs.server.namenode.NNStorage.NameNodeDirType;
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
@@ -79,6 +85,9 @@
 import org.apache.log4j.Level;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.internal.util.reflection.Whitebox;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
@@ -568,6 +577,110 @@ public void testBatchedSyncWithClosedLogs() throws Exception {
     }
   }
   
+  /**
+   * With asynchronous logging, edits made by concurrent clients are synced
+   * by the syncer thread, and survive a restart of the NameNode.
+   */
+  @Test
+  public void testAsyncLoggingGroupCommit() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING, true);
+    MiniDFSCluster cluster = null;
+    ExecutorService clients = Executors.newFixedThreadPool(8);
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+      cluster.waitActive();
+      final FileSystem fs = cluster.getFileSystem();
+
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (int i = 0; i < 8; i++) {
+        final int client = i;
+        results.add(clients.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = 0; j < 20; j++) {
+              assertTrue(fs.mkdirs(new Path("/async/" + client + "/" + j)));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+
+      FSEditLog editLog = cluster.getNamesystem().getEditLog();
+      assertEquals("all edits should be synced once acknowledged",
+          editLog.getLastWrittenTxId(), editLog.getSyncTxId());
+      assertTrue("responses should have been released by the syncer",
+          getLongCounter("SyncBatchSizeNumOps",
+              getMetrics("NameNodeActivity")) > 0);
+
+      cluster.restartNameNode();
+      for (int i = 0; i < 8; i++) {
+        for (int j = 0; j < 20; j++) {
+          assertTrue(cluster.getFileSystem().exists(
+              new Path("/async/" + i + "/" + j)));
+        }
+      }
+    } finally {
+      clients.shutdown();
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  /**
+   * With asynchronous logging, the blocks of a deleted file are only removed
+   * once the delete is durable, and shutting down the NameNode stops the
+   * syncer thread.
+   */
+  @Test
+  public void testAsyncLoggingSyncsDeleteBeforeRemovingBlocks()
+      throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING, true);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      final FileSystem fs = cluster.getFileSystem();
+      final Path file = new Path("/async/file");
+      DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+
+      final FSNamesystem fsn = cluster.getNamesystem();
+      final FSEditLog editLog = fsn.getEditLog();
+      final BlockManager bm = Mockito.spy(fsn.getBlockManager());
+      Whitebox.setInternalState(fsn, "blockManager", bm);
+      final List<Long> unsyncedTxns =
+          Collections.synchronizedList(new ArrayList<Long>());
+      Mockito.doAnswer(new Answer<Void>() {
+        @Override
+        public Void answer(InvocationOnMock invocation) throws Throwable {
+          unsyncedTxns.add(
+              editLog.getLastWrittenTxId() - editLog.getSyncTxId());
+          invocation.callRealMethod();
+          return null;
+        }
+      }).when(bm).removeBlock(Mockito.any(Block.class));
+
+      assertTrue(fs.delete(file, false));
+      assertEquals("the delete should be durable before its block is removed",
+          Collections.singletonList(0L), unsyncedTxns);
+
+      cluster.shutdownNameNode(0);
+      for (Thread t : Thread.getAllStackTraces().keySet()) {
+        assertFalse("the syncer should have exited: " + t,
+            t.isAlive() && "FSEditLogSyncer".equals(t.getName()));
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   @Test
   public void testEditChecksum() throws Exception {
     // start a cluster 
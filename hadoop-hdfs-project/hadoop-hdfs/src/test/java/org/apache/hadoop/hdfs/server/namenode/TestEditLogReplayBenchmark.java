@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.Test;
+
+public class TestEditLogReplayBenchmark {
+
+  /**
+   * This test runs {@link EditLogReplayBenchmark} on a small edit log.
+   */
+  @Test(timeout=60000)
+  public void testEditLogReplay() throws Exception {
+    EditLogReplayBenchmark bench =
+        new EditLogReplayBenchmark(new HdfsConfiguration());
+    File dir = new File(MiniDFSCluster.getBaseDirectory(),
+        "TestEditLogReplayBenchmark");
+    assertEquals(0, bench.run(new String[] { "-files", "1000",
+        "-prefetchOps", "16", "-iterations", "2",
+        "-dir", dir.getAbsolutePath() }));
+    long numOps = bench.getResultWithoutPrefetch().numOps;
+    // each file is opened and closed, and every 100 files share a directory
+    assertTrue(numOps >= 2 * 2000);
+    assertEquals(numOps, bench.getResultWithPrefetch().numOps);
+    assertFalse(dir.exists());
+  }
+}
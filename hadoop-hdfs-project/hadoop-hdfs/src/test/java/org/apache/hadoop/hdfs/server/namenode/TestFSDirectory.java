@@ -30,6 +30,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Options.Rename;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.XAttr;
 import org.apache.hadoop.fs.XAttrSetFlag;
@@ -48,6 +49,7 @@
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -88,6 +90,8 @@ public class TestFSDirectory {
   public void setUp() throws Exception {
     conf = new Configuration();
     conf.setInt(DFSConfigKeys.DFS_NAMENODE_MAX_XATTRS_PER_INODE_KEY, 2);
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_RUNTIME_TRACKING_SIZE_KEY, 1024);
     cluster = new MiniDFSCluster.Builder(conf)
       .numDataNodes(REPLICATION)
       .build();
@@ -138,6 +142,34 @@ public void testDumpTree() throws Exception {
     }
   }
   
+  /**
+   * Directories created and inodes renamed after startup reuse the name
+   * byte[] of the other inodes with the same name.
+   */
+  @Test
+  public void testMkdirAndRenameShareNames() throws Exception {
+    // mkdir
+    final Path dir1 = new Path(sub1, "shared");
+    final Path dir2 = new Path(sub2, "shared");
+    hdfs.mkdirs(dir1);
+    hdfs.mkdirs(dir2);
+    assertSame(getLocalNameBytes(dir1), getLocalNameBytes(dir2));
+
+    // rename
+    final Path renamed = new Path(sub2, file1.getName());
+    assertTrue(hdfs.rename(file2, renamed));
+    assertSame(getLocalNameBytes(file1), getLocalNameBytes(renamed));
+
+    // rename with options
+    final Path renamed2 = new Path(dir2, file3.getName());
+    hdfs.rename(file5, renamed2, Rename.NONE);
+    assertSame(getLocalNameBytes(file3), getLocalNameBytes(renamed2));
+  }
+
+  private byte[] getLocalNameBytes(Path path) throws IOException {
+    return fsdir.getINode(path.toString()).getLocalNameBytes();
+  }
+
   @Test
   public void testSkipQuotaCheck() throws Exception {
     try {
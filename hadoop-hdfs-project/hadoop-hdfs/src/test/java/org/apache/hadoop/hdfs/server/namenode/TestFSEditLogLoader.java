@@ -19,10 +19,14 @@
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
 
 import java.io.BufferedInputStream;
 import java.io.File;
@@ -31,12 +35,16 @@
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 
 import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
@@ -51,6 +59,8 @@
 import org.apache.hadoop.test.PathUtils;
 import org.apache.log4j.Level;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
@@ -68,8 +78,20 @@ public class TestFSEditLogLoader {
   
   @Test
   public void testDisplayRecentEditLogOpCodes() throws IOException {
-    // start a cluster 
+    checkDisplayRecentEditLogOpCodes(new HdfsConfiguration());
+  }
+
+  @Test
+  public void testDisplayRecentEditLogOpCodesWithPrefetch()
+      throws IOException {
     Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_EDITS_LOAD_PREFETCH_OPS_KEY, 4);
+    checkDisplayRecentEditLogOpCodes(conf);
+  }
+
+  private void checkDisplayRecentEditLogOpCodes(Configuration conf)
+      throws IOException {
+    // start a cluster 
     MiniDFSCluster cluster = null;
     FileSystem fileSys = null;
     cluster = new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATA_NODES)
@@ -111,6 +133,167 @@ public void testDisplayRecentEditLogOpCodes() throws IOException {
     }
   }
   
+  /**
+   * Replay a synthetic edit log with and without prefetching and check that
+   * both produce the same namespace.
+   */
+  @Test
+  public void testReplayWithPrefetch() throws Exception {
+    final int numDirs = 50;
+    final int filesPerDir = 20;
+    Configuration conf = new HdfsConfiguration();
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATA_NODES)
+          .enableManagedDfsDirsRedundancy(false).build();
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < numDirs; i++) {
+        Path dir = new Path("/replay/dir" + i);
+        fs.mkdirs(dir);
+        for (int j = 0; j < filesPerDir; j++) {
+          Path file = new Path(dir, "file" + j);
+          DFSTestUtil.createFile(fs, file, 0, (short)1, 0L);
+          if (j % 3 == 0) {
+            fs.rename(file, new Path(dir, "renamed" + j));
+          } else if (j % 3 == 1) {
+            fs.delete(file, false);
+          } else {
+            fs.setTimes(file, j, j);
+          }
+        }
+      }
+      final String expected = listRecursively(fs, new Path("/replay"));
+      cluster.shutdown();
+      cluster = null;
+
+      for (int prefetchOps : new int[] { 0, 1, 64 }) {
+        conf.setInt(DFSConfigKeys.DFS_NAMENODE_EDITS_LOAD_PREFETCH_OPS_KEY,
+            prefetchOps);
+        cluster = new MiniDFSCluster.Builder(conf)
+            .numDataNodes(NUM_DATA_NODES)
+            .enableManagedDfsDirsRedundancy(false).format(false).build();
+        cluster.waitActive();
+        assertEquals(expected,
+            listRecursively(cluster.getFileSystem(), new Path("/replay")));
+        cluster.shutdown();
+        cluster = null;
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  /**
+   * The maximum op size set on a prefetching stream is applied to the
+   * underlying stream by the thread which decodes its ops.
+   */
+  @Test(timeout = 10000)
+  public void testPrefetchingStreamSetsMaxOpSize() throws Exception {
+    EditLogInputStream in = mock(EditLogInputStream.class);
+    FSEditLogOp op = mock(FSEditLogOp.class);
+    when(in.getName()).thenReturn("mock");
+    when(in.readOp()).thenReturn(op, op, op, op, null);
+    final List<String> setters =
+        Collections.synchronizedList(new ArrayList<String>());
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        setters.add(Thread.currentThread().getName());
+        return null;
+      }
+    }).when(in).setMaxOpSize(100);
+
+    // with one buffered op, the prefetcher has read at most two ops before
+    // the first one is consumed, so the limit applies to the later ones
+    PrefetchingEditLogInputStream prefetching =
+        new PrefetchingEditLogInputStream(in, 1);
+    try {
+      prefetching.setMaxOpSize(100);
+      int numOps = 0;
+      while (prefetching.readOp() != null) {
+        numOps++;
+      }
+      assertEquals(4, numOps);
+      assertEquals(1, setters.size());
+      assertEquals("Edit log prefetcher for mock", setters.get(0));
+    } finally {
+      prefetching.close();
+    }
+  }
+
+  /**
+   * A prefetching stream skips a damaged section of the log on resync the
+   * same way as the stream it reads.
+   */
+  @Test(timeout = 10000)
+  public void testPrefetchingStreamResync() throws Exception {
+    File testDir = new File(TEST_DIR, "testPrefetchingStreamResync");
+    SortedMap<Long, Long> offsetToTxId = Maps.newTreeMap();
+    final int NUM_TXNS = 20;
+    File logFile = prepareUnfinalizedTestEditLog(testDir, NUM_TXNS,
+        offsetToTxId);
+    // corrupt the opcode of a transaction in the middle of the log
+    for (Map.Entry<Long, Long> entry : offsetToTxId.entrySet()) {
+      if (entry.getValue() == NUM_TXNS / 2) {
+        corruptByteInFile(logFile, entry.getKey());
+      }
+    }
+
+    EditLogInputStream in = new EditLogFileInputStream(logFile);
+    List<Long> expected;
+    try {
+      expected = readTxIdsWithResync(in);
+    } finally {
+      in.close();
+    }
+    assertFalse(expected.contains((long)NUM_TXNS / 2));
+    assertTrue(expected.contains((long)NUM_TXNS));
+
+    in = new EditLogFileInputStream(logFile);
+    PrefetchingEditLogInputStream prefetching =
+        new PrefetchingEditLogInputStream(in, 4);
+    try {
+      assertEquals(expected, readTxIdsWithResync(prefetching));
+    } finally {
+      prefetching.close();
+      in.close();
+    }
+  }
+
+  /** Read all ops as validateEditLog does, resyncing after read errors. */
+  private static List<Long> readTxIdsWithResync(EditLogInputStream in) {
+    List<Long> txIds = new ArrayList<Long>();
+    while (true) {
+      FSEditLogOp op;
+      try {
+        op = in.readOp();
+      } catch (Throwable t) {
+        in.resync();
+        continue;
+      }
+      if (op == null) {
+        return txIds;
+      }
+      txIds.add(op.getTransactionId());
+    }
+  }
+
+  private static String listRecursively(FileSystem fs, Path dir)
+      throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (FileStatus stat : fs.listStatus(dir)) {
+      sb.append(stat.getPath().toUri().getPath()).append(' ')
+          .append(stat.getModificationTime()).append('\n');
+      if (stat.isDirectory()) {
+        sb.append(listRecursively(fs, stat.getPath()));
+      }
+    }
+    return sb.toString();
+  }
+
   /**
    * Test that, if the NN restarts with a new minimum replication,
    * any files created with the old replication count will get
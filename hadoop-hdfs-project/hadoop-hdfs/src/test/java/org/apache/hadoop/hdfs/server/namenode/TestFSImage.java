@@ -22,12 +22,18 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Assert;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSOutputStream;
@@ -38,6 +44,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary;
 import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
 import org.apache.hadoop.hdfs.util.MD5FileUtils;
 import org.junit.Test;
@@ -183,4 +190,129 @@ public void testLoadMtimeAtime() throws Exception {
       }
     }
   }
+
+  /**
+   * Ensure that an image saved with sub-sections can be loaded both in
+   * parallel and serially.
+   */
+  @Test(timeout=120000)
+  public void testParallelLoad() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 3);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      final int numDirs = 10, filesPerDir = 10;
+      for (int i = 0; i < numDirs; i++) {
+        for (int j = 0; j < filesPerDir; j++) {
+          fs.create(new Path("/parallel/d" + i + "/f" + j)).close();
+        }
+      }
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+
+      File currentDir = FSImageTestUtil.getNameNodeCurrentDirs(cluster, 0).get(
+          0);
+      File fsimage = FSImageTestUtil.findNewestImageFile(currentDir
+          .getAbsolutePath());
+      RandomAccessFile raFile = new RandomAccessFile(fsimage, "r");
+      int inodeSubSections = 0, dirSubSections = 0;
+      try {
+        FileSummary summary = FSImageUtil.loadSummary(raFile);
+        for (FileSummary.Section s : summary.getSectionsList()) {
+          FSImageFormatProtobuf.SectionName n =
+              FSImageFormatProtobuf.SectionName.fromString(s.getName());
+          if (n == FSImageFormatProtobuf.SectionName.INODE_SUB) {
+            inodeSubSections++;
+          } else if (n == FSImageFormatProtobuf.SectionName.INODE_DIR_SUB) {
+            dirSubSections++;
+          }
+        }
+      } finally {
+        raFile.close();
+      }
+      assertTrue(inodeSubSections > 1);
+      assertTrue(dirSubSections > 1);
+
+      for (boolean parallel : new boolean[] { true, false }) {
+        cluster.getConfiguration(0).setBoolean(
+            DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, parallel);
+        cluster.restartNameNode();
+        cluster.waitActive();
+        fs = cluster.getFileSystem();
+        FileStatus[] dirs = fs.listStatus(new Path("/parallel"));
+        assertEquals(numDirs, dirs.length);
+        for (FileStatus d : dirs) {
+          assertEquals(filesPerDir, fs.listStatus(d.getPath()).length);
+        }
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Quota usage recomputed in parallel must match the usage maintained by
+   * the NameNode while the namespace was built.
+   */
+  @Test(timeout=60000)
+  public void testParallelUpdateCountForQuota() throws Exception {
+    Configuration conf = new Configuration();
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      List<Path> quotaDirs = new ArrayList<Path>();
+      quotaDirs.add(new Path("/quota"));
+      for (int i = 0; i < 6; i++) {
+        Path a = new Path("/quota/a" + i);
+        quotaDirs.add(a);
+        for (int j = 0; j < 5; j++) {
+          Path b = new Path(a, "b" + j);
+          fs.mkdirs(b);
+          for (int k = 0; k < j; k++) {
+            fs.create(new Path(b, "f" + k)).close();
+          }
+          if (j % 2 == 0) {
+            quotaDirs.add(b);
+          }
+        }
+      }
+      for (Path p : quotaDirs) {
+        fs.setQuota(p, 1000, HdfsConstants.QUOTA_DONT_SET);
+      }
+
+      FSNamesystem fsn = cluster.getNamesystem();
+      FSDirectory fsdir = fsn.getFSDirectory();
+      Map<Path, Quota.Counts> expected = new HashMap<Path, Quota.Counts>();
+      fsn.writeLock();
+      try {
+        for (Path p : quotaDirs) {
+          DirectoryWithQuotaFeature q = fsdir.getINode(p.toString())
+              .asDirectory().getDirectoryWithQuotaFeature();
+          expected.put(p, q.getSpaceConsumed());
+          q.setSpaceConsumed(0, 0);
+        }
+        FSImage.updateCountForQuota(fsdir.rootDir, 4);
+        for (Path p : quotaDirs) {
+          Quota.Counts actual = fsdir.getINode(p.toString()).asDirectory()
+              .getDirectoryWithQuotaFeature().getSpaceConsumed();
+          assertEquals(p.toString(), expected.get(p), actual);
+        }
+      } finally {
+        fsn.writeUnlock();
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
 }
@@ -26,6 +26,7 @@
 import java.io.IOException;
 import java.net.URI;
 import java.util.Collection;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
@@ -196,6 +197,59 @@ public void testFSNamesystemLockCompatibility() {
     assertEquals(0, rwLock.getWriteHoldCount());
   }
 
+  @Test
+  public void testFSNamesystemLockPartitions() throws Exception {
+    assertFalse(new FSNamesystemLock(true).isPartitioned());
+
+    assertEquals("/user/alice",
+        FSNamesystemLock.getPartitionKey("/user/alice/dir/file", 2));
+    assertEquals("/user/alice",
+        FSNamesystemLock.getPartitionKey("/user/alice", 2));
+    assertEquals("/user", FSNamesystemLock.getPartitionKey("/user", 2));
+    assertEquals("/", FSNamesystemLock.getPartitionKey("/", 2));
+    assertEquals("/user", FSNamesystemLock.getPartitionKey("/user/alice", 1));
+
+    final FSNamesystemLock rwLock = new FSNamesystemLock(true, 16, 2);
+    assertTrue(rwLock.isPartitioned());
+    assertSame(rwLock.partitionLock("/user/alice/a"),
+        rwLock.partitionLock("/user/alice/b/c"));
+
+    // A partition lock held by one thread must not block another partition,
+    // but must block the same one.
+    final String busy = "/user/alice/a";
+    String other = null;
+    for (int i = 0; other == null; i++) {
+      String candidate = "/user/u" + i + "/f";
+      if (rwLock.partitionLock(candidate) != rwLock.partitionLock(busy)) {
+        other = candidate;
+      }
+    }
+    rwLock.partitionLock(busy).lock();
+    try {
+      assertTrue(rwLock.hasPartitionLock());
+      final String otherPath = other;
+      final boolean[] acquired = new boolean[2];
+      Thread t = new Thread() {
+        @Override
+        public void run() {
+          Lock l = rwLock.partitionLock(otherPath);
+          acquired[0] = l.tryLock();
+          if (acquired[0]) {
+            l.unlock();
+          }
+          acquired[1] = rwLock.partitionLock(busy).tryLock();
+        }
+      };
+      t.start();
+      t.join();
+      assertTrue(acquired[0]);
+      assertFalse(acquired[1]);
+    } finally {
+      rwLock.partitionLock(busy).unlock();
+    }
+    assertFalse(rwLock.hasPartitionLock());
+  }
+
   @Test
   public void testReset() throws Exception {
     Configuration conf = new Configuration();
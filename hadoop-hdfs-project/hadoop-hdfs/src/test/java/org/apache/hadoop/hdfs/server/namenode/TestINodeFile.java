@@ -62,6 +62,7 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.hdfs.util.ReadOnlyList;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Time;
 import org.junit.Test;
@@ -182,6 +183,33 @@ public void testGetFullPathName() {
     assertEquals(Path.SEPARATOR, root.getFullPathName());
   }
   
+  @Test
+  public void testAllocateChildren() {
+    INodeDirectory dir = new INodeDirectory(INodeId.GRANDFATHER_INODE_ID,
+        DFSUtil.string2Bytes("d"), perm, 0L);
+    dir.allocateChildren(3);
+    for (String name : new String[] { "c", "a", "b", "d" }) {
+      INodeFile f = createINodeFile((short) 3, preferredBlockSize);
+      f.setLocalName(DFSUtil.string2Bytes(name));
+      assertTrue(dir.addChild(f));
+    }
+    // allocating again must not drop the existing children
+    dir.allocateChildren(1);
+    ReadOnlyList<INode> children = dir.getChildrenList(
+        Snapshot.CURRENT_STATE_ID);
+    assertEquals(4, children.size());
+    assertEquals("a", children.get(0).getLocalName());
+    assertEquals("d", children.get(3).getLocalName());
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testInvalidINodeMapCapacity() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setFloat(DFSConfigKeys.DFS_NAMENODE_INODE_MAP_CAPACITY_PERCENT_KEY,
+        0.0f);
+    new FSDirectory(Mockito.mock(FSNamesystem.class), conf);
+  }
+
   /**
    * FSDirectory#unprotectedSetQuota creates a new INodeDirectoryWithQuota to
    * replace the original INodeDirectory. Before HDFS-4243, the parent field of
@@ -17,14 +17,20 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 
 public class TestLeaseManager {
@@ -54,4 +60,47 @@ public void testRemoveLeaseWithPrefixPath() throws Exception {
     assertNull(lm.getLeaseByPath("/a/b"));
     assertNull(lm.getLeaseByPath("/a/c"));
   }
+
+  /** A renewal racing with the removal of a lease must not resurrect it. */
+  @Test
+  public void testRenewRemovedLease() {
+    LeaseManager lm = new LeaseManager(Mockito.mock(FSNamesystem.class));
+    lm.addLease("holder", "/a");
+    Lease lease = lm.getLease("holder");
+    lm.removeLease(lease, "/a");
+    lm.renewLease(lease);
+    assertEquals(0, lm.countLease());
+    assertTrue(lm.getSortedLeases().isEmpty());
+  }
+
+  /** checkLeases() gives up the lock once the time limit is reached. */
+  @Test
+  public void testCheckLeasesYieldsLock() throws Exception {
+    FSNamesystem fsn = Mockito.mock(FSNamesystem.class);
+    final LeaseManager lm = new LeaseManager(fsn);
+    Mockito.doReturn(true).when(fsn).hasWriteLock();
+    Mockito.doReturn(1L).when(fsn).getMaxLockHoldToReleaseLeaseMs();
+    Mockito.doAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) throws Throwable {
+        Thread.sleep(5);
+        lm.removeLease((Lease) invocation.getArguments()[0],
+            (String) invocation.getArguments()[1]);
+        return true;
+      }
+    }).when(fsn).internalReleaseLease(Mockito.any(Lease.class),
+        Mockito.anyString(), Mockito.anyString());
+
+    lm.setLeasePeriod(0, 0);
+    lm.addLease("holder1", "/a");
+    lm.addLease("holder2", "/b");
+    lm.addLease("holder3", "/c");
+    Thread.sleep(10);
+
+    assertFalse(lm.checkLeases());
+    assertEquals(2, lm.countLease());
+    assertFalse(lm.checkLeases());
+    assertFalse(lm.checkLeases());
+    assertEquals(0, lm.countLease());
+  }
 }
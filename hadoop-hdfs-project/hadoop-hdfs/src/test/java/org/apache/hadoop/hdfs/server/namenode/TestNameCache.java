@@ -71,6 +71,51 @@ public void testDictionary() throws Exception {
     }
   }
 
+  @Test
+  public void testRuntimeTracking() throws Exception {
+    // Track up to 2 names after initialization, with useThreshold 2
+    NameCache<String> cache = new NameCache<String>(2, 2);
+    cache.initialized();
+
+    // A name added useThreshold times after initialization is promoted
+    String name = new String("part-00000");
+    assertNull(cache.put(name));
+    assertTrue(name == cache.put(new String("part-00000")));
+    assertTrue(name == cache.put(new String("part-00000")));
+    assertEquals(1, cache.size());
+
+    // Names evicted from the tracked set start counting from scratch
+    cache.put("a");
+    cache.put("b");
+    cache.put("c");
+    assertNull(cache.put("a"));
+    assertEquals(1, cache.size());
+
+    // Names promoted after initialization are bounded too, and the least
+    // recently used one is dropped first
+    NameCache<String> bounded = new NameCache<String>(2, 2);
+    bounded.initialized();
+    for (String s : new String[] {"x", "y"}) {
+      bounded.put(s);
+      bounded.put(s);
+    }
+    assertEquals(2, bounded.size());
+    assertNotNull(bounded.put("x"));
+    bounded.put("z");
+    bounded.put("z");
+    assertEquals(2, bounded.size());
+    assertNotNull(bounded.put("x"));
+    assertNotNull(bounded.put("z"));
+    assertNull(bounded.put("y"));
+
+    // Without runtime tracking, names are not promoted after initialization
+    NameCache<String> untracked = new NameCache<String>(2);
+    untracked.initialized();
+    untracked.put(name);
+    assertNull(untracked.put(name));
+    assertEquals(0, untracked.size());
+  }
+
   private void verifyNameReuse(NameCache<String> cache, String s, boolean reused) {
     cache.put(s);
     int lookupCount = cache.getLookupCount();
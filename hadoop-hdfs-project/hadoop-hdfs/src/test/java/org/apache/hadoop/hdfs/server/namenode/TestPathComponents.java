@@ -43,6 +43,17 @@ public void testBytes2ByteArray() throws Exception {
     testString("/dir/dir1//");
   }
 
+  @Test
+  public void testGetPathComponentsMatchesPathNames() throws Exception {
+    for (String path : new String[] { "/", "//", "/file", "/directory/",
+        "/dir//file", "/dir/dir1//", "/d\u00e9j\u00e0/vu",
+        "/\u4e2d\u6587//x/" }) {
+      byte[][] expected = INode.getPathComponents(INode.getPathNames(path));
+      assertTrue("Path components do not match for " + path,
+          Arrays.deepEquals(expected, INode.getPathComponents(path)));
+    }
+  }
+
   public void testString(String str) throws Exception {
     String pathString = str;
     byte[][] oldPathComponents = INode.getPathComponents(pathString);
@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs.server.namenode.ha;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.FileNotFoundException;
@@ -27,10 +28,12 @@
 import java.lang.reflect.Proxy;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -59,6 +62,8 @@
 import org.apache.hadoop.hdfs.NameNodeProxies;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream.SyncFlag;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOp;
+import org.apache.hadoop.hdfs.protocol.BatchedMetadataOpResult;
 import org.apache.hadoop.hdfs.protocol.CachePoolEntry;
 import org.apache.hadoop.hdfs.protocol.CachePoolInfo;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
@@ -1159,6 +1164,78 @@ public void testDelete() throws Exception {
     testClientRetryWithFailover(op);
   }
   
+  /**
+   * batchMetadataOps is not at-most-once. A batch that fails partway and is
+   * retried across a failover is executed again on the new active NN, and
+   * the client gets the real results of that execution instead of results
+   * recovered from the retry cache.
+   */
+  @Test (timeout=60000)
+  public void testBatchMetadataOpsRetriedAfterFailover() throws Exception {
+    final DFSClient client = genClientWithDummyHandler();
+    final String dir = "/testbatch";
+    final Path created = new Path(dir + "/newdir");
+    final Path skipped = new Path(dir + "/skipped");
+    final List<BatchedMetadataOp> ops = Arrays.asList(
+        BatchedMetadataOp.mkdirs(created.toString(), null, true),
+        BatchedMetadataOp.rename(dir + "/missing", dir + "/dst"),
+        BatchedMetadataOp.mkdirs(skipped.toString(), null, true));
+    final Map<String, Object> results = new HashMap<String, Object>();
+
+    DummyRetryInvocationHandler.block.set(true);
+    new Thread() {
+      @Override
+      public void run() {
+        try {
+          List<BatchedMetadataOpResult> result = client.batchMetadataOps(ops);
+          synchronized (TestRetryCacheWithHA.this) {
+            results.put("batchMetadataOps", result);
+            TestRetryCacheWithHA.this.notifyAll();
+          }
+        } catch (Exception e) {
+          LOG.info("Got Exception while calling batchMetadataOps", e);
+        } finally {
+          IOUtils.cleanup(null, client);
+        }
+      }
+    }.start();
+
+    // the batch has been applied on NN0 up to the failed rename
+    boolean applied = dfs.exists(created);
+    for (int i = 0; i < CHECKTIMES && !applied; i++) {
+      Thread.sleep(1000);
+      applied = dfs.exists(created);
+    }
+    assertTrue(applied);
+
+    cluster.transitionToStandby(0);
+    cluster.transitionToActive(1);
+    DummyRetryInvocationHandler.block.set(false);
+
+    List<BatchedMetadataOpResult> batchResults;
+    synchronized (this) {
+      while (!results.containsKey("batchMetadataOps")) {
+        this.wait();
+      }
+      @SuppressWarnings("unchecked")
+      List<BatchedMetadataOpResult> r =
+          (List<BatchedMetadataOpResult>) results.get("batchMetadataOps");
+      batchResults = r;
+    }
+
+    // The retry ran the batch again: the mkdirs succeeded and the rename
+    // failed again, instead of every operation being reported as successful.
+    assertEquals(2, batchResults.size());
+    assertTrue(batchResults.get(0).isSuccess());
+    assertTrue(batchResults.get(0).getResult());
+    assertFalse(batchResults.get(1).isSuccess());
+    assertTrue(batchResults.get(1).getException().getMessage(),
+        batchResults.get(1).getException().getMessage().contains("missing"));
+    assertFalse(dfs.exists(skipped));
+    assertEquals(0, cluster.getNamesystem(1).getRetryCache()
+        .getMetricsForTests().getCacheHit());
+  }
+
   @Test (timeout=60000)
   public void testCreateSymlink() throws Exception {
     final DFSClient client = genClientWithDummyHandler();
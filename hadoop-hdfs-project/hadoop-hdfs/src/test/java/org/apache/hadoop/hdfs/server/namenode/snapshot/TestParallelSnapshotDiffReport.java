@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.protocol.SnapshotException;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
+import org.junit.Test;
+
+/**
+ * Runs the snapshot diff report tests with the subtrees of the snapshottable
+ * directories compared in parallel.
+ */
+public class TestParallelSnapshotDiffReport extends TestSnapshotDiffReport {
+  @Override
+  protected Configuration createConfiguration() {
+    Configuration conf = super.createConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_DIFF_THREADS_KEY, 4);
+    return conf;
+  }
+
+  /**
+   * When one subtree fails, the diff must fail without leaving the walks of
+   * the other subtrees to read the namespace after it has returned.
+   */
+  @Test(timeout = 60000)
+  public void testFailedSubtreeStopsOtherSubtrees() throws Exception {
+    final Path root = new Path("/TestFailedSubtree");
+    for (String sub : new String[] { "a", "b", "c" }) {
+      DFSTestUtil.createFile(hdfs, new Path(root, sub + "/file"), BLOCKSIZE,
+          REPLICATION, seed);
+    }
+    hdfs.allowSnapshot(root);
+    hdfs.createSnapshot(root, "s0");
+    for (String sub : new String[] { "a", "b", "c" }) {
+      hdfs.delete(new Path(root, sub + "/file"), true);
+    }
+    hdfs.createSnapshot(root, "s1");
+
+    // the first subtree fails, the others are held back until the diff is
+    // over and then record what their walk returned
+    final AtomicInteger submitted = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Object> lateResults =
+        Collections.synchronizedList(new ArrayList<Object>());
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 0,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()) {
+      @Override
+      protected <T> RunnableFuture<T> newTaskFor(final Callable<T> task) {
+        final boolean failing = submitted.getAndIncrement() == 0;
+        return super.newTaskFor(new Callable<T>() {
+          @Override
+          public T call() throws Exception {
+            if (failing) {
+              throw new IOException("injected subtree failure");
+            }
+            release.await();
+            T result = task.call();
+            lateResults.add(result);
+            return result;
+          }
+        });
+      }
+    };
+
+    FSNamesystem fsn = cluster.getNamesystem();
+    INodeDirectory rootDir = fsn.getFSDirectory().getINode(root.toString())
+        .asDirectory();
+    fsn.readLock();
+    try {
+      rootDir.getDirectorySnapshottableFeature().computeDiff(rootDir, "s0",
+          "s1", executor);
+      fail("the diff should fail with its failed subtree");
+    } catch (SnapshotException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    } finally {
+      fsn.readUnlock();
+      release.countDown();
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    }
+
+    // the subtrees released after the failure did not walk the namespace
+    assertEquals(3, submitted.get());
+    assertEquals(2, lateResults.size());
+    for (Object result : lateResults) {
+      assertNull(result);
+    }
+  }
+}
@@ -58,9 +58,14 @@ public class TestSnapshotDiffReport {
   
   private final HashMap<Path, Integer> snapshotNumberMap = new HashMap<Path, Integer>();
 
+  /** @return the configuration the cluster is started with. */
+  protected Configuration createConfiguration() {
+    return new Configuration();
+  }
+
   @Before
   public void setUp() throws Exception {
-    conf = new Configuration();
+    conf = createConfiguration();
     cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
         .format(true).build();
     cluster.waitActive();